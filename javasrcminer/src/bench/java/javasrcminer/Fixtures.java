@@ -0,0 +1,71 @@
+package javasrcminer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fixtures
+ *
+ * The fixed sources the JMH benchmarks run on, bundled under
+ * src/bench/resources/fixtures so results are comparable across commits.
+ * "Small" and "Medium" are files as found; "Huge" is Medium's class body
+ * repeated HUGE_COPIES times in one class, standing in for generated code.
+ */
+final class Fixtures {
+
+    static final int HUGE_COPIES = 60;
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+
+    private Fixtures() {
+    }
+
+    /** The source of fixture name: Small, Medium or Huge. */
+    static String source(String name) throws IOException {
+        if (!name.equals("Huge"))
+            return resource(name + ".java");
+
+        final String medium = resource("Medium.java");
+        final int bodyStart = medium.indexOf('{', medium.indexOf("public class")) + 1;
+        final int bodyEnd = medium.lastIndexOf('}');
+        final StringBuilder huge = new StringBuilder(medium.length() * HUGE_COPIES);
+        huge.append(medium, 0, bodyStart);
+        for (int i = 0; i < HUGE_COPIES; i++)
+            huge.append(medium, bodyStart, bodyEnd);
+        return huge.append(medium, bodyEnd, medium.length()).toString();
+    }
+
+    static byte[] bytes(String name) throws IOException {
+        return source(name).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Every identifier-like token of the Small and Medium fixtures, in order. */
+    static List<String> identifiers() throws IOException {
+        final List<String> identifiers = new ArrayList<>();
+        for (String name : new String[] { "Small", "Medium" }) {
+            final Matcher m = IDENTIFIER.matcher(source(name));
+            while (m.find())
+                identifiers.add(m.group());
+        }
+        return identifiers;
+    }
+
+    private static String resource(String fileName) throws IOException {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + fileName)) {
+            if (in == null)
+                throw new IOException("missing bench fixture " + fileName);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
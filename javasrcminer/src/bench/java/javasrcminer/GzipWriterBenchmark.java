@@ -0,0 +1,100 @@
+package javasrcminer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * GzipWriterBenchmark
+ *
+ * Writes DOCUMENTS documents to a fresh .tar.gz per call with the
+ * single-stream gzip writer (the old behaviour) or the parallel block
+ * writer on every core. Each document is WORDS identifiers of the Small and
+ * Medium fixtures in a seeded random order, so documents share a realistic
+ * vocabulary without gzip finding one document repeated in the next. Each
+ * iteration's last tarball is read back to check no document was lost.
+ *
+ * Usage: gradle jmh '-Dexec.args=GzipWriterBenchmark'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GzipWriterBenchmark {
+
+    static final int DOCUMENTS = 2000;
+    static final int WORDS = 1000;
+
+    @Param({ "single", "parallel" })
+    public String writer;
+
+    private byte[][] documents;
+    private CompressionOptions compression;
+    private Path dir;
+    private Path written;
+    private int run = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        final List<String> identifiers = Fixtures.identifiers();
+        final Random random = new Random(42);
+        this.documents = new byte[DOCUMENTS][];
+        for (int i = 0; i < DOCUMENTS; i++) {
+            final StringBuilder doc = new StringBuilder();
+            for (int w = 0; w < WORDS; w++)
+                doc.append(identifiers.get(random.nextInt(identifiers.size()))).append(' ');
+            this.documents[i] = doc.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        final int threads = this.writer.equals("parallel") ? Runtime.getRuntime().availableProcessors() : 1;
+        this.compression = new CompressionOptions(CompressionOptions.DEFAULT.level, CompressionOptions.DEFAULT.blockSize, threads);
+    }
+
+    @Setup(Level.Iteration)
+    public void createDirectory() throws IOException {
+        this.dir = Files.createTempDirectory("gzipbench");
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkAndDeleteDirectory() throws Exception {
+        if (this.written != null) {
+            final AtomicInteger readBack = new AtomicInteger(0);
+            try (VFS in = new GzipTarballVFS(this.written)) {
+                in.forEachFile(".txt", file -> readBack.getAndIncrement());
+            }
+            if (readBack.get() != DOCUMENTS)
+                throw new AssertionError("read back " + readBack.get() + " of " + DOCUMENTS + " documents");
+            this.written = null;
+        }
+        try (Stream<Path> paths = Files.walk(this.dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        final Path path = this.dir.resolve(String.format("out%d.tar.gz", this.run++));
+        try (VFS out = new GzipTarballVFS(path, this.compression)) {
+            for (int i = 0; i < DOCUMENTS; i++)
+                out.writeFile(String.format("%08d.txt", i), this.documents[i]);
+        }
+        this.written = path;
+    }
+}
@@ -0,0 +1,46 @@
+package javasrcminer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import polyglot.visit.NodeVisitor;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParseBenchmark
+ *
+ * ParseHelper.parseAndVisit on each fixture with a visitor that does
+ * nothing, so this is the cost of parsing (and walking) alone. The file is
+ * served from memory to keep disk speed out of it.
+ *
+ * Usage: gradle jmh '-Dexec.args=ParseBenchmark'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBenchmark {
+
+    @Param({ "Small", "Medium", "Huge" })
+    public String fixture;
+
+    private InputFile file;
+    private final ParseHelper parseHelper = ParseHelper.getInstance();
+    private final NodeVisitorFactory noop = lang -> new NodeVisitor(lang) {};
+
+    @Setup
+    public void setUp() throws IOException {
+        this.file = new MemoryInputFile("fixtures", this.fixture + ".java", Fixtures.bytes(this.fixture));
+    }
+
+    @Benchmark
+    public void parseAndVisit() throws Exception {
+        this.parseHelper.parseAndVisit(this.file, this.noop);
+    }
+}
@@ -0,0 +1,60 @@
+package javasrcminer;
+
+import javasrcminer.ParseHelper.ParserContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import polyglot.visit.NodeVisitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParseHelperBenchmark
+ *
+ * Parses each fixture with a freshly built polyglot context per file (the
+ * old behaviour) or with one context reused for every file, as ParseHelper
+ * now keeps per thread. The gap is the setup cost saved per file, which
+ * matters most for the small files that dominate a GitHub corpus.
+ *
+ * Usage: gradle jmh '-Dexec.args=ParseHelperBenchmark'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseHelperBenchmark {
+
+    @Param({ "Small", "Medium" })
+    public String fixture;
+
+    @Param({ "fresh", "reused" })
+    public String context;
+
+    private byte[] source;
+    private ParserContext reused;
+    private final ParseHelper parseHelper = ParseHelper.getInstance();
+    private final NodeVisitorFactory noop = lang -> new NodeVisitor(lang) {};
+
+    @Setup
+    public void setUp() throws IOException {
+        this.source = Fixtures.bytes(this.fixture);
+        this.reused = new ParserContext();
+    }
+
+    @Benchmark
+    public void parseAndVisit() throws Exception {
+        final ParserContext context = this.context.equals("fresh") ? new ParserContext() : this.reused;
+        try (InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(this.source), StandardCharsets.UTF_8)) {
+            this.parseHelper.parseAndVisit(context, reader,
+                    new MemoryFileObject("fixtures", this.fixture + ".java", this.source), false, this.noop);
+        }
+    }
+}
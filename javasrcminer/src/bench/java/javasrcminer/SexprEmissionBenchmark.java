@@ -0,0 +1,64 @@
+package javasrcminer;
+
+import javasrcminer.ParseHelper.ParserContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import polyglot.ast.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SexprEmissionBenchmark
+ *
+ * Writes each fixture's S-expression tree (as java2tree does) from an AST
+ * parsed once up front, so parsing isn't part of the measurement. The
+ * subtoken cache is warm after the first call, as it is in a long run.
+ *
+ * Usage: gradle jmh '-Dexec.args=SexprEmissionBenchmark'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SexprEmissionBenchmark {
+
+    @Param({ "Small", "Medium", "Huge" })
+    public String fixture;
+
+    @Param({ "false", "true" })
+    public boolean includeSyntax;
+
+    private ParserContext context;
+    private AstWalker walker;
+    private Node root;
+    private final Utf8Buffer out = new Utf8Buffer(1 << 16);
+    private final SubtokenCache subtokenCache = new SubtokenCache(OldSubtokenizer::subtokenize, 64L << 20);
+
+    @Setup
+    public void setUp() throws Exception {
+        this.context = new ParserContext();
+        this.walker = new AstWalker(this.context.lang);
+        final byte[] source = Fixtures.bytes(this.fixture);
+        try (InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(source), StandardCharsets.UTF_8)) {
+            this.root = this.context.extInfo.parser(reader,
+                    new MemoryFileObject("fixtures", this.fixture + ".java", source), this.context.newErrorQueue()).parse();
+        }
+        if (this.root == null)
+            throw new IllegalStateException("fixture " + this.fixture + " didn't parse");
+    }
+
+    @Benchmark
+    public int emit() {
+        this.out.clear();
+        this.walker.visit(this.root, new SexprTreeVisitor(this.context.lang, this.out, this.includeSyntax, this.subtokenCache));
+        return this.out.length();
+    }
+}
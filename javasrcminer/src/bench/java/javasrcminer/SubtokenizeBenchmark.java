@@ -0,0 +1,66 @@
+package javasrcminer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SubtokenizeBenchmark
+ *
+ * Splits every identifier of the Small and Medium fixtures, with each
+ * subtokenizer entry point. Reported per identifier list, not per call.
+ *
+ * Usage: gradle jmh '-Dexec.args=SubtokenizeBenchmark'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SubtokenizeBenchmark {
+
+    private String[] identifiers;
+    private final SubtokenBuffer buffer = new SubtokenBuffer();
+
+    @Setup
+    public void setUp() throws IOException {
+        final List<String> all = Fixtures.identifiers();
+        this.identifiers = all.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void subtokenizer(Blackhole blackhole) {
+        for (String identifier : this.identifiers)
+            blackhole.consume(Subtokenizer.subtokenize(identifier));
+    }
+
+    @Benchmark
+    public void subtokenizerIntoBuffer(Blackhole blackhole) {
+        for (String identifier : this.identifiers) {
+            this.buffer.clear();
+            blackhole.consume(Subtokenizer.subtokenize(identifier, this.buffer));
+        }
+    }
+
+    @Benchmark
+    public void oldSubtokenizer(Blackhole blackhole) {
+        for (String identifier : this.identifiers)
+            blackhole.consume(OldSubtokenizer.subtokenize(identifier));
+    }
+
+    @Benchmark
+    public void oldSubtokenizerIntoBuffer(Blackhole blackhole) {
+        for (String identifier : this.identifiers) {
+            this.buffer.clear();
+            OldSubtokenizer.subtokenize(identifier, this.buffer);
+            blackhole.consume(this.buffer.size());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package javasrcminer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * VfsWriteBenchmark
+ *
+ * Writes DOCUMENTS copies of the Medium fixture through a fresh output VFS
+ * (a directory or a .tar.gz) per call, half with writeFile and half
+ * streamed through openFile, and closes it.
+ *
+ * Usage: gradle jmh '-Dexec.args=VfsWriteBenchmark'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VfsWriteBenchmark {
+
+    static final int DOCUMENTS = 500;
+
+    @Param({ "directory", "tarball" })
+    public String output;
+
+    @Param({ "1" })
+    public int threads;
+
+    private byte[] document;
+    private Path dir;
+    private int run = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.document = Fixtures.bytes("Medium");
+    }
+
+    @Setup(Level.Iteration)
+    public void createDirectory() throws IOException {
+        this.dir = Files.createTempDirectory("vfsbench");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        final String name = String.format("out%d%s", this.run++, this.output.equals("tarball") ? ".tar.gz" : "");
+        final CompressionOptions compression = new CompressionOptions(CompressionOptions.DEFAULT.level,
+                CompressionOptions.DEFAULT.blockSize, this.threads);
+        try (VFS vfs = VFS.createVFSForPath(this.dir.resolve(name), compression)) {
+            vfs.prepareOutputDirectory();
+            for (int i = 0; i < DOCUMENTS; i++) {
+                final String path = String.format("%08d.txt", i);
+                if (i % 2 == 0) {
+                    vfs.writeFile(path, this.document);
+                } else {
+                    try (OutputStream out = vfs.openFile(path, this.document.length)) {
+                        out.write(this.document);
+                    }
+                }
+            }
+        }
+    }
+}
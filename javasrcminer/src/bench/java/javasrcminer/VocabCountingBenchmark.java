@@ -0,0 +1,113 @@
+package javasrcminer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VocabCountingBenchmark
+ *
+ * Counts and sorts a vocabulary the way makeVocabMain used to (a
+ * HashMap<String, Integer> and a comparator calling counts.get) or the way
+ * it does now (per-thread StringIntCounter shards, merged, pruned and
+ * sorted on primitives). The subtokens are those of the Small and Medium
+ * fixtures' identifiers, repeated COPIES times with the copy number
+ * appended, standing in for many projects with mostly their own names.
+ * Add '-prof gc' to compare the allocation too.
+ *
+ * Usage: gradle jmh '-Dexec.args=VocabCountingBenchmark'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VocabCountingBenchmark {
+
+    static final int COPIES = 200;
+    private static final int MIN_COUNT = 2;
+
+    @Param({ "HashMap", "StringIntCounter" })
+    public String counter;
+
+    // Only the StringIntCounter shards count in parallel
+    @Param({ "1" })
+    public int threads;
+
+    private String[] subtokens;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws IOException {
+        final List<String> fixtureSubtokens = new ArrayList<>();
+        for (String identifier : Fixtures.identifiers())
+            fixtureSubtokens.addAll(Subtokenizer.subtokenize(identifier));
+        this.subtokens = new String[fixtureSubtokens.size() * COPIES];
+        int i = 0;
+        for (int copy = 0; copy < COPIES; copy++) {
+            for (String subtoken : fixtureSubtokens)
+                this.subtokens[i++] = subtoken + copy;
+        }
+        this.executor = Executors.newFixedThreadPool(this.threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.executor.shutdown();
+    }
+
+    @Benchmark
+    public int countAndSort() throws Exception {
+        return this.counter.equals("HashMap") ? this.countWithHashMap() : this.countWithShards();
+    }
+
+    // The old makeVocabMain path; returns the number of words kept
+    private int countWithHashMap() {
+        final Map<String, Integer> counts = new HashMap<>(5000);
+        for (String subtoken : this.subtokens)
+            counts.put(subtoken, 1 + counts.getOrDefault(subtoken, 0));
+        final List<String> words = new ArrayList<>(counts.keySet());
+        words.sort((o1, o2) -> counts.get(o2) - counts.get(o1));
+        int kept = 0;
+        for (String word : words) {
+            if (counts.get(word) < MIN_COUNT)
+                break;
+            kept++;
+        }
+        return kept;
+    }
+
+    private int countWithShards() throws Exception {
+        final String[] subtokens = this.subtokens;
+        final List<Future<StringIntCounter>> futures = new ArrayList<>();
+        final int chunk = (subtokens.length + this.threads - 1) / this.threads;
+        for (int t = 0; t < this.threads; t++) {
+            final int from = Math.min(subtokens.length, t * chunk);
+            final int to = Math.min(subtokens.length, from + chunk);
+            futures.add(this.executor.submit(() -> {
+                final StringIntCounter counter = new StringIntCounter(5000);
+                for (int i = from; i < to; i++)
+                    counter.increment(subtokens[i]);
+                return counter;
+            }));
+        }
+        final StringIntCounter merged = futures.get(0).get();
+        for (int t = 1; t < futures.size(); t++)
+            merged.addAll(futures.get(t).get());
+        return merged.sortedByCount(MIN_COUNT).words.length;
+    }
+}
@@ -0,0 +1,80 @@
+package javasrcminer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VocabLoadBenchmark
+ *
+ * Loads a vocab in each format. The vocab is built the same way every time:
+ * the fixtures' subtokens, each suffixed with a running number until there
+ * are size words, with falling counts.
+ *
+ * Usage: gradle jmh '-Dexec.args=VocabLoadBenchmark'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VocabLoadBenchmark {
+
+    @Param({ "100000" })
+    public int size;
+
+    private Path dir;
+    private Path textPath;
+    private Path binaryPath;
+
+    @Setup
+    public void setUp() throws Exception {
+        final List<String> subtokens = Fixtures.identifiers();
+        this.dir = Files.createTempDirectory("vocabbench");
+        this.textPath = this.dir.resolve("vocab.txt");
+        this.binaryPath = this.dir.resolve("vocab.bin");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(this.textPath, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < this.size; i++)
+                writer.printf("%d\t%s%d\n", this.size - i + 1, subtokens.get(i % subtokens.size()).toLowerCase(), i);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(this.textPath, StandardCharsets.UTF_8);
+             OutputStream out = Files.newOutputStream(this.binaryPath)) {
+            BinaryVocabFile.write(new VocabFile(reader), out);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.textPath);
+        Files.deleteIfExists(this.binaryPath);
+        Files.deleteIfExists(this.dir);
+    }
+
+    @Benchmark
+    public int text() throws Exception {
+        try (BufferedReader reader = Files.newBufferedReader(this.textPath, StandardCharsets.UTF_8)) {
+            return new VocabFile(reader).size();
+        }
+    }
+
+    @Benchmark
+    public int binary() throws Exception {
+        // Opening maps the file; look a word up so the index is really touched
+        final Vocab vocab = BinaryVocabFile.open(this.binaryPath);
+        return vocab.getWordIndex(vocab.getWord(vocab.size() / 2));
+    }
+}
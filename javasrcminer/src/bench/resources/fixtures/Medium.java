@@ -0,0 +1,276 @@
+package com.example.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small HTTP client with retries, a response cache and request statistics.
+ */
+public class SimpleHttpClient implements AutoCloseable {
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
+    private static final int DEFAULT_READ_TIMEOUT_MS = 15000;
+    private static final int MAX_CACHE_ENTRIES = 256;
+
+    private final String userAgent;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final Map<String, CachedResponse> cache;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private volatile boolean closed;
+
+    public SimpleHttpClient(String userAgent, int maxRetries, long retryBackoffMillis) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative: " + maxRetries);
+        }
+        this.userAgent = userAgent;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > MAX_CACHE_ENTRIES;
+            }
+        });
+    }
+
+    public static SimpleHttpClient withDefaults() {
+        return new SimpleHttpClient("SimpleHttpClient/1.0", 3, 250);
+    }
+
+    public Response get(String url) throws IOException {
+        return execute(new Request("GET", url, Collections.<String, String>emptyMap(), null));
+    }
+
+    public Response post(String url, String contentType, byte[] body) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", contentType);
+        return execute(new Request("POST", url, headers, body));
+    }
+
+    public Response execute(Request request) throws IOException {
+        ensureOpen();
+        requestCount.incrementAndGet();
+        if (request.isCacheable()) {
+            CachedResponse cached = cache.get(request.url);
+            if (cached != null && !cached.isExpired()) {
+                cacheHits.incrementAndGet();
+                return cached.response;
+            }
+        }
+
+        IOException lastFailure = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                sleepQuietly(retryBackoffMillis * (1L << (attempt - 1)));
+            }
+            try {
+                Response response = executeOnce(request);
+                if (response.status >= 500 && attempt < maxRetries) {
+                    lastFailure = new IOException("server error " + response.status + " for " + request.url);
+                    continue;
+                }
+                if (request.isCacheable() && response.status == 200) {
+                    long maxAge = parseMaxAge(response.header("Cache-Control"));
+                    if (maxAge > 0) {
+                        cache.put(request.url, new CachedResponse(response, System.nanoTime() + TimeUnit.SECONDS.toNanos(maxAge)));
+                    }
+                }
+                return response;
+            } catch (IOException e) {
+                lastFailure = e;
+            }
+        }
+        throw lastFailure;
+    }
+
+    private Response executeOnce(Request request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(request.url).openConnection();
+        try {
+            connection.setRequestMethod(request.method);
+            connection.setConnectTimeout(DEFAULT_CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(DEFAULT_READ_TIMEOUT_MS);
+            connection.setRequestProperty("User-Agent", userAgent);
+            for (Map.Entry<String, String> header : request.headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            if (request.body != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(request.body);
+                }
+            }
+
+            int status = connection.getResponseCode();
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            byte[] body = in == null ? new byte[0] : readFully(in);
+            bytesReceived.addAndGet(body.length);
+
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                if (header.getKey() != null) {
+                    headers.put(header.getKey().toLowerCase(Locale.ROOT), new ArrayList<>(header.getValue()));
+                }
+            }
+            return new Response(status, headers, body);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    static long parseMaxAge(String cacheControl) {
+        if (cacheControl == null) {
+            return 0;
+        }
+        for (String directive : cacheControl.split(",")) {
+            String trimmed = directive.trim().toLowerCase(Locale.ROOT);
+            if (trimmed.equals("no-store") || trimmed.equals("no-cache")) {
+                return 0;
+            }
+            if (trimmed.startsWith("max-age=")) {
+                try {
+                    return Long.parseLong(trimmed.substring("max-age=".length()));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = input.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("client is closed");
+        }
+    }
+
+    public Statistics statistics() {
+        return new Statistics(requestCount.get(), cacheHits.get(), bytesReceived.get(), cache.size());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        cache.clear();
+    }
+
+    public static final class Request {
+        final String method;
+        final String url;
+        final Map<String, String> headers;
+        final byte[] body;
+
+        public Request(String method, String url, Map<String, String> headers, byte[] body) {
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        boolean isCacheable() {
+            return "GET".equals(method) && body == null;
+        }
+    }
+
+    public static final class Response {
+        public final int status;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+
+        Response(int status, Map<String, List<String>> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public String header(String name) {
+            List<String> values = headers.get(name.toLowerCase(Locale.ROOT));
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        public byte[] body() {
+            return body.clone();
+        }
+
+        public String bodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+
+        public boolean isSuccessful() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    private static final class CachedResponse {
+        final Response response;
+        final long expiresAtNanos;
+
+        CachedResponse(Response response, long expiresAtNanos) {
+            this.response = response;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAtNanos > 0;
+        }
+    }
+
+    public static final class Statistics {
+        public final long requests;
+        public final long cacheHits;
+        public final long bytesReceived;
+        public final int cachedEntries;
+
+        Statistics(long requests, long cacheHits, long bytesReceived, int cachedEntries) {
+            this.requests = requests;
+            this.cacheHits = cacheHits;
+            this.bytesReceived = bytesReceived;
+            this.cachedEntries = cachedEntries;
+        }
+
+        public double hitRate() {
+            return requests == 0 ? 0.0 : (double) cacheHits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d hits=%d (%.1f%%) bytes=%d cached=%d",
+                    requests, cacheHits, 100 * hitRate(), bytesReceived, cachedEntries);
+        }
+    }
+}
@@ -3,45 +3,119 @@ package javasrcminer;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.MissingCommandException;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
 import com.beust.jcommander.converters.PathConverter;
-import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.compress.utils.IOUtils;
 
 import javasrcminer.ParseHelper.ParseException;
-import polyglot.ast.Id;
-import polyglot.ast.LocalDecl;
-import polyglot.ast.Node;
-import polyglot.ast.NumLit;
-import polyglot.ast.Prefix;
-import polyglot.ast.Receiver;
-import polyglot.ast.Return;
-import polyglot.ast.StringLit;
-import polyglot.ast.TypeNode;
 import polyglot.ast.TypeNode_c;
-import polyglot.ext.jl5.ast.AnnotationElem;
 import polyglot.ext.jl5.ast.JL5AnnotatedElementExt;
-import polyglot.visit.HaltingVisitor;
-import polyglot.visit.NodeVisitor;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
 
 
 final class Args {
 }
 
+// Which input files a command processes, and how many at once
+@SuppressWarnings("CanBeFinal")
+final class CorpusArgs {
+    @Parameter(names = "--threads", description = "Number of files to process concurrently")
+    int threads = 1;
+
+    @Parameter(names = "--shard", description = "Process only slice i/n (0 <= i < n) of the input files, chosen by a hash of their paths", converter = CorpusShard.Converter.class)
+    CorpusShard shard = CorpusShard.ALL;
+
+    @Parameter(names = "--crawl-threads", description = "Number of directory listings to run ahead of the crawl at once, for slow (say, network) filesystems")
+    int crawlThreads = 1;
+}
+
+// Budgets for pathological sources, for commands that parse them
+@SuppressWarnings("CanBeFinal")
+final class ParseLimitArgs {
+    @Parameter(names = "--max-file-bytes", description = "Sources larger than this aren't parsed (and are quarantined); 0 for no limit")
+    long maxFileBytes = 8 << 20;
+
+    @Parameter(names = "--parse-timeout-ms", description = "Parses running longer are abandoned (and the source quarantined); 0 for no limit")
+    long parseTimeoutMillis = 60000;
+
+    @Parameter(names = "--quarantine", description = "File listing sources over budget: listed sources are skipped, new offenders appended", converter = PathConverter.class)
+    Path quarantinePath = null;
+
+    // Sets the parse budgets for this run; close the result when done to lift them and close any quarantine
+    ParseHelper.Limits apply() throws IOException {
+        final Quarantine quarantine = this.quarantinePath == null ? null : Quarantine.open(this.quarantinePath);
+        return ParseHelper.getInstance().setLimits(this.maxFileBytes, this.parseTimeoutMillis, quarantine);
+    }
+}
+
+// Progress and throughput reporting, for commands that parse sources
+@SuppressWarnings("CanBeFinal")
+final class MetricsArgs {
+    @Parameter(names = "--progress-every", description = "Seconds between progress lines on stderr; 0 disables")
+    int progressSeconds = 30;
+
+    @Parameter(names = "--metrics-json", description = "Path to write a JSON summary of throughput, stage latencies and failures to at the end", converter = PathConverter.class)
+    Path jsonPath = null;
+}
+
+// Duplicate-source filtering, for commands that parse sources
+@SuppressWarnings("CanBeFinal")
+final class DedupArgs {
+    @Parameter(names = "--dedup", description = "Skip duplicate sources before parsing: none, exact, or near (exact and near duplicates). Not with --shard, as a slice can't see the others' files")
+    String mode = "none";
+
+    @Parameter(names = "--near-dup-threshold", description = "With --dedup near, estimated token-shingle similarity from which a file is a duplicate")
+    double nearDuplicateThreshold = 0.85;
+
+    @Parameter(names = "--dedup-memory-mb", description = "Memory cap (MiB) for remembering sources seen by --dedup")
+    int memoryMB = 256;
+
+    // The filter for the chosen mode (null for none), to share across a run's inputs; exits on bad options
+    DuplicateFilter create(CorpusShard shard) {
+        // Each slice would keep its copies of files in other slices, so merged outputs wouldn't match one run's
+        if (!this.mode.equals("none") && !shard.isAll()) {
+            System.err.println("--dedup can't be combined with --shard: duplicates in different slices would be kept");
+            System.exit(1);
+            return null;
+        }
+        switch (this.mode) {
+            case "none": return null;
+            case "exact": return new DuplicateFilter(this.memoryMB * (1L << 20), 0);
+            case "near": return new DuplicateFilter(this.memoryMB * (1L << 20), this.nearDuplicateThreshold);
+            default: {
+                System.err.println("Unrecognized dedup mode: " + this.mode);
+                System.exit(5);
+                return null;
+            }
+        }
+    }
+}
+
 @SuppressWarnings("CanBeFinal")
 final class VocabArgs {
     @Parameter
@@ -49,6 +123,21 @@ final class VocabArgs {
 
     @Parameter(names = "--min-count", description = "Subtokens occurring fewer times are dropped")
     int minimumCount = 2;
+
+    @Parameter(names = "--partial-out", description = "Path (nonexist.) to write all counts to, for vocab-merge, instead of vocab.txt", converter = PathConverter.class)
+    Path partialOutPath = null;
+
+    @ParametersDelegate
+    CorpusArgs corpus = new CorpusArgs();
+
+    @Parameter(names = "--subtoken-cache-mb", description = "Memory cap (MiB) for memoized identifier subtokens; 0 disables")
+    int subtokenCacheMB = 64;
+
+    @ParametersDelegate
+    ParseLimitArgs parseLimits = new ParseLimitArgs();
+
+    @ParametersDelegate
+    MetricsArgs metrics = new MetricsArgs();
 }
 
 @SuppressWarnings("CanBeFinal")
@@ -56,11 +145,29 @@ final class Dft2DocArgs {
     @Parameter
     List<String> paths = new ArrayList<>();
 
-    @Parameter(names = "--vocab", description = "Write indices instead of tokens with given vocab file")
+    @Parameter(names = "--vocab", description = "Write packed int32 token ids (see TokenIdStream) instead of tokens with given vocab file")
     String vocabPath = null;
 
     @Parameter(names = "--outdir", description = "Path to directory (nonexist.) for output documents", required = true, converter = PathConverter.class)
     Path outDirPath = null;
+
+    @ParametersDelegate
+    CorpusArgs corpus = new CorpusArgs();
+
+    @Parameter(names = "--gzip-level", description = "Compression level (-1 for default, 0-9) when writing a .tar.gz")
+    int gzipLevel = CompressionOptions.DEFAULT.level;
+
+    @Parameter(names = "--gzip-block-size", description = "Bytes per independently compressed gzip member when writing a .tar.gz with --threads")
+    int gzipBlockSize = CompressionOptions.DEFAULT.blockSize;
+
+    @Parameter(names = "--subtoken-cache-mb", description = "Memory cap (MiB) for memoized identifier subtokens; 0 disables")
+    int subtokenCacheMB = 64;
+
+    @ParametersDelegate
+    ParseLimitArgs parseLimits = new ParseLimitArgs();
+
+    @ParametersDelegate
+    MetricsArgs metrics = new MetricsArgs();
 }
 
 @SuppressWarnings("CanBeFinal")
@@ -73,6 +180,84 @@ final class Java2TreeArgs {
 
     @Parameter(names = "--include-syntax", description = "Include more than just subtokens and graph shape")
     Boolean includeSyntax = false;
+
+    @Parameter(names = "--format", description = "Output format: text (S-expressions) or binary")
+    String format = "text";
+
+    @Parameter(names = "--resume", description = "Keep a manifest in the output directory and skip files it shows were already mined")
+    boolean resume = false;
+
+    @Parameter(names = "--checkpoint-every", description = "With --resume, files mined between manifest checkpoints")
+    int checkpointInterval = 1000;
+
+    @ParametersDelegate
+    DedupArgs dedup = new DedupArgs();
+
+    @ParametersDelegate
+    CorpusArgs corpus = new CorpusArgs();
+
+    @Parameter(names = "--gzip-level", description = "Compression level (-1 for default, 0-9) when writing a .tar.gz")
+    int gzipLevel = CompressionOptions.DEFAULT.level;
+
+    @Parameter(names = "--gzip-block-size", description = "Bytes per independently compressed gzip member when writing a .tar.gz with --threads")
+    int gzipBlockSize = CompressionOptions.DEFAULT.blockSize;
+
+    @Parameter(names = "--subtoken-cache-mb", description = "Memory cap (MiB) for memoized identifier subtokens; 0 disables")
+    int subtokenCacheMB = 64;
+
+    @ParametersDelegate
+    ParseLimitArgs parseLimits = new ParseLimitArgs();
+
+    @ParametersDelegate
+    MetricsArgs metrics = new MetricsArgs();
+}
+
+@SuppressWarnings("CanBeFinal")
+final class MineArgs {
+    @Parameter
+    List<String> paths = new ArrayList<>();
+
+    @Parameter(names = "--tree-out", description = "Path to directory (nonexist.) for trees, as java2tree", converter = PathConverter.class)
+    Path treeOutPath = null;
+
+    @Parameter(names = "--tree-format", description = "Tree format: text (S-expressions) or binary")
+    String treeFormat = "text";
+
+    @Parameter(names = "--include-syntax", description = "Include more than just subtokens and graph shape in trees")
+    Boolean includeSyntax = false;
+
+    @Parameter(names = "--doc-out", description = "Path to directory (nonexist.) for preorder subtoken documents, as dft2doc", converter = PathConverter.class)
+    Path docOutPath = null;
+
+    @Parameter(names = "--vocab-out", description = "Path (nonexist.) for the vocab, as vocab", converter = PathConverter.class)
+    Path vocabOutPath = null;
+
+    @Parameter(names = "--min-count", description = "Subtokens occurring fewer times are dropped from the vocab")
+    int minimumCount = 2;
+
+    @Parameter(names = "--partial-vocab-out", description = "Path (nonexist.) for all subtoken counts, for vocab-merge", converter = PathConverter.class)
+    Path partialVocabOutPath = null;
+
+    @ParametersDelegate
+    DedupArgs dedup = new DedupArgs();
+
+    @ParametersDelegate
+    CorpusArgs corpus = new CorpusArgs();
+
+    @Parameter(names = "--gzip-level", description = "Compression level (-1 for default, 0-9) when writing a .tar.gz")
+    int gzipLevel = CompressionOptions.DEFAULT.level;
+
+    @Parameter(names = "--gzip-block-size", description = "Bytes per independently compressed gzip member when writing a .tar.gz with --threads")
+    int gzipBlockSize = CompressionOptions.DEFAULT.blockSize;
+
+    @Parameter(names = "--subtoken-cache-mb", description = "Memory cap (MiB) for memoized identifier subtokens; 0 disables")
+    int subtokenCacheMB = 64;
+
+    @ParametersDelegate
+    ParseLimitArgs parseLimits = new ParseLimitArgs();
+
+    @ParametersDelegate
+    MetricsArgs metrics = new MetricsArgs();
 }
 
 @SuppressWarnings("CanBeFinal")
@@ -80,8 +265,11 @@ final class Token2SubtokenDocArgs {
     @Parameter(converter = PathConverter.class)
     List<Path> paths = new ArrayList<>();
 
-    @Parameter(names = "--outdir", description = "Path to directory (nonexist.) for output documents", required = true, converter = PathConverter.class)
-    Path outDirPath = null;
+    @Parameter(names = "--outdir", description = "Path to directory (nonexist.) for output documents; repeat to give one per path, in order", required = true, converter = PathConverter.class)
+    List<Path> outDirPaths = new ArrayList<>();
+
+    @ParametersDelegate
+    CorpusArgs corpus = new CorpusArgs();
 }
 
 @SuppressWarnings("CanBeFinal")
@@ -91,6 +279,108 @@ final class TokTree2SubtokTreeArgs {
 
     @Parameter(names = "--outdir", description = "Path to directory (nonexist.) for output documents", required = true, converter = PathConverter.class)
     Path outDirPath = null;
+
+    @ParametersDelegate
+    CorpusArgs corpus = new CorpusArgs();
+}
+
+@SuppressWarnings("CanBeFinal")
+final class Tree2BinArgs {
+    @Parameter
+    List<String> paths = new ArrayList<>();
+
+    @Parameter(names = "--outdir", description = "Path to directory (nonexist.) for output trees", required = true, converter = PathConverter.class)
+    Path outDirPath = null;
+
+    @Parameter(names = "--include-syntax", description = "Input was written with --include-syntax; read each node's first word as its kind")
+    Boolean includeSyntax = false;
+
+    @ParametersDelegate
+    CorpusArgs corpus = new CorpusArgs();
+}
+
+@SuppressWarnings("CanBeFinal")
+final class WalksArgs {
+    @Parameter
+    List<String> paths = new ArrayList<>();
+
+    @Parameter(names = "--outdir", description = "Path to directory (nonexist.) for output walks", required = true, converter = PathConverter.class)
+    Path outDirPath = null;
+
+    @Parameter(names = "--count", description = "Walks per tree root")
+    int count = 20;
+
+    @Parameter(names = "--size", description = "Maximum nodes per walk (odd), or 0 for unbounded")
+    int size = 0;
+
+    @Parameter(names = "--seed", description = "Seed for the random walks; output depends only on it and the inputs")
+    long seed = 0;
+
+    @Parameter(names = "--input-format", description = "Input trees: text (S-expressions) or binary")
+    String inputFormat = "text";
+
+    @ParametersDelegate
+    CorpusArgs corpus = new CorpusArgs();
+
+    @Parameter(names = "--gzip-level", description = "Compression level (-1 for default, 0-9) when writing a .tar.gz")
+    int gzipLevel = CompressionOptions.DEFAULT.level;
+
+    @Parameter(names = "--gzip-block-size", description = "Bytes per independently compressed gzip member when writing a .tar.gz with --threads")
+    int gzipBlockSize = CompressionOptions.DEFAULT.blockSize;
+}
+
+@SuppressWarnings("CanBeFinal")
+final class CooccArgs {
+    @Parameter
+    List<String> paths = new ArrayList<>();
+
+    @Parameter(names = "--vocab", description = "Vocab file (text or binary); other subtokens are ignored", required = true)
+    String vocabPath = null;
+
+    @Parameter(names = "--window", description = "Subtokens either side of each subtoken that co-occur with it", required = true)
+    int windowSize = 0;
+
+    @Parameter(names = "--limit", description = "Only count the most frequent this-many vocab words")
+    Integer limit = null;
+
+    @Parameter(names = "--out", description = "Path (nonexist.) for the co-occurrence matrix", required = true, converter = PathConverter.class)
+    Path outPath = null;
+
+    @Parameter(names = "--ext", description = "Extension of the subtoken documents to read")
+    String extension = ".txt";
+
+    @ParametersDelegate
+    CorpusArgs corpus = new CorpusArgs();
+
+    @Parameter(names = "--memory-mb", description = "Memory (MiB), shared by all threads, for pair counts before spilling to disk")
+    int memoryMB = 512;
+
+    @Parameter(names = "--spill-dir", description = "Directory for spilled runs; defaults to the output's directory", converter = PathConverter.class)
+    Path spillDirectory = null;
+}
+
+@SuppressWarnings("CanBeFinal")
+final class VocabConvertArgs {
+    @Parameter(description = "Vocab file to convert (text or binary)", required = true, converter = PathConverter.class)
+    List<Path> paths = new ArrayList<>();
+
+    @Parameter(names = "--out", description = "Path (nonexist.) for the converted vocab file", required = true, converter = PathConverter.class)
+    Path outPath = null;
+
+    @Parameter(names = "--to", description = "Output format: binary or text")
+    String format = "binary";
+}
+
+@SuppressWarnings("CanBeFinal")
+final class VocabMergeArgs {
+    @Parameter(description = "Partial vocab files, one per shard", required = true, converter = PathConverter.class)
+    List<Path> paths = new ArrayList<>();
+
+    @Parameter(names = "--out", description = "Path (nonexist.) for the merged vocab", converter = PathConverter.class)
+    Path outPath = Paths.get("vocab.txt");
+
+    @Parameter(names = "--min-count", description = "Subtokens occurring fewer times (in all shards together) are dropped")
+    int minimumCount = 2;
 }
 
 /**
@@ -106,12 +396,24 @@ public final class App {
         Java2TreeArgs java2TreeArgs = new Java2TreeArgs();
         Token2SubtokenDocArgs t2StDocArgs = new Token2SubtokenDocArgs();
         TokTree2SubtokTreeArgs tokTree2SubtokTreeArgs = new TokTree2SubtokTreeArgs();
+        VocabConvertArgs vocabConvertArgs = new VocabConvertArgs();
+        VocabMergeArgs vocabMergeArgs = new VocabMergeArgs();
+        Tree2BinArgs tree2BinArgs = new Tree2BinArgs();
+        WalksArgs walksArgs = new WalksArgs();
+        CooccArgs cooccArgs = new CooccArgs();
+        MineArgs mineArgs = new MineArgs();
         JCommander jc = new JCommander(args);
         jc.addCommand("vocab", vocabArgs);
         jc.addCommand("dft2doc", dft2DocArgs);
         jc.addCommand("java2tree", java2TreeArgs);
         jc.addCommand("t2st", t2StDocArgs);
         jc.addCommand("toktree2subtoktree", tokTree2SubtokTreeArgs);
+        jc.addCommand("vocab-convert", vocabConvertArgs);
+        jc.addCommand("vocab-merge", vocabMergeArgs);
+        jc.addCommand("tree2bin", tree2BinArgs);
+        jc.addCommand("walks", walksArgs);
+        jc.addCommand("coocc", cooccArgs);
+        jc.addCommand("mine", mineArgs);
         try {
             jc.parse(argv);
         } catch (MissingCommandException e) {
@@ -142,6 +444,30 @@ public final class App {
                 tokTree2SubtokTreeMain(tokTree2SubtokTreeArgs);
                 break;
             }
+            case "vocab-convert": {
+                vocabConvertMain(vocabConvertArgs);
+                break;
+            }
+            case "vocab-merge": {
+                vocabMergeMain(vocabMergeArgs);
+                break;
+            }
+            case "tree2bin": {
+                tree2BinMain(tree2BinArgs);
+                break;
+            }
+            case "walks": {
+                walksMain(walksArgs);
+                break;
+            }
+            case "coocc": {
+                cooccMain(cooccArgs);
+                break;
+            }
+            case "mine": {
+                mineMain(mineArgs);
+                break;
+            }
             default: {
                 System.err.println("Unrecognized command: " + jc.getParsedCommand());
                 System.exit(5);
@@ -149,339 +475,965 @@ public final class App {
         }
     }
 
-    // Map to S-expressions, either the full AST or simply shape+subtokens
+    // Map to S-expressions (or binary trees), either the full AST or simply shape+subtokens
     private static void java2SexprTreeMain(Java2TreeArgs args) throws Exception {
-        
+        final SubtokenCache subtokenCache = new SubtokenCache(OldSubtokenizer::subtokenize, args.subtokenCacheMB * (1L << 20));
+        final TreeEncoder<?> encoder;
+        switch (args.format) {
+            case "text": encoder = textTreeEncoder(args.includeSyntax, subtokenCache); break;
+            case "binary": encoder = binaryTreeEncoder(args.includeSyntax, subtokenCache); break;
+            default: {
+                System.err.println("Unrecognized tree format: " + args.format);
+                System.exit(5);
+                return;
+            }
+        }
+        final DuplicateFilter duplicates = args.dedup.create(args.corpus.shard);
+
+        if (args.resume && (args.outDirPath.getFileName().toString().toLowerCase().endsWith(".tar.gz")
+                || ShardVFS.isShardPath(args.outDirPath))) {
+            System.err.println("--resume needs an output directory, not an archive or shards");
+            System.exit(1);
+            return;
+        }
+
+        java2SexprTree(args, duplicates, subtokenCache, encoder);
+    }
+
+    private static <T> void java2SexprTree(Java2TreeArgs args, DuplicateFilter duplicates, SubtokenCache subtokenCache,
+                                           TreeEncoder<T> encoder) throws Exception {
         // Create a VFS for the output directory/file and check/create output directory
-        try (VFS outVFS = VFS.createVFSForPath(args.outDirPath)) {
-            if (!outVFS.prepareOutputDirectory())
+        final CompressionOptions compression = new CompressionOptions(args.gzipLevel, args.gzipBlockSize, args.corpus.threads);
+        try (VFS outVFS = VFS.createVFSForPath(args.outDirPath, compression);
+             ParseHelper.Limits limits = args.parseLimits.apply();
+             PipelineMetrics metrics = startMetrics("java2tree", args.metrics.progressSeconds);
+             ParallelFileProcessor processor = new ParallelFileProcessor(args.corpus.threads)) {
+            final boolean resuming = args.resume && MiningManifest.existsIn(args.outDirPath);
+            if (!resuming && !outVFS.prepareOutputDirectory())
                 return;
 
             final AtomicInteger filesParsed = new AtomicInteger(0);
             final AtomicInteger filesFailed = new AtomicInteger(0);
-            final ParseHelper parseHelper = ParseHelper.getInstance();
+            final AtomicInteger filesSkipped = new AtomicInteger(0);
+
+            // With --resume, files whose contents were already mined are skipped, and
+            // new outputs are numbered after those of earlier runs
+            final MiningManifest manifest = args.resume ? MiningManifest.open(args.outDirPath, args.checkpointInterval) : null;
+            final long outputBase = manifest == null ? 0 : manifest.firstOutputNumber();
+            final Map<Long, String> pendingHashes = new ConcurrentHashMap<>();
+
+            final ParallelFileProcessor.Task<T> task = (index, file) -> {
+                final String hash;
+                try {
+                    hash = manifest == null ? null : MiningManifest.hash(file);
+                    if (hash != null && manifest.isUpToDate(file.getCanonicalPath(), hash)) {
+                        filesSkipped.getAndIncrement();
+                        return null;
+                    }
+                } catch (IOException e) {
+                    filesFailed.getAndIncrement();
+                    metrics.failed(e);
+                    reportSkippedFile(file, e);
+                    return null;
+                }
+
+                filesParsed.getAndIncrement();
+                try {
+                    final T tree = encoder.encode(file);
+                    if (tree != null) {
+                        if (hash != null)
+                            pendingHashes.put(index, hash);
+                        return tree;
+                    }
+                } catch (Exception e) {
+                    filesFailed.getAndIncrement();
+                    metrics.failed(e);
+                    reportSkippedFile(file, e);
+                }
+                // Nothing to write; don't parse it again next time either
+                if (hash != null)
+                    manifest.record(file.getCanonicalPath(), hash, null);
+                return null;
+            };
 
+            // Files are named by crawl position, not completion order, so output
+            // is identical whatever the thread count.
+            final ParallelFileProcessor.Sink<T> write = (index, file, tree) -> {
+                final String name = String.format("%08d.%s", outputBase + index, encoder.extension());
+                final String hash = pendingHashes.remove(index);
+                final long writeStart = System.nanoTime();
+                try (OutputStream out = outVFS.openFile(name, encoder.length(tree))) {
+                    encoder.writeTo(tree, out);
+                    metrics.wrote(encoder.length(tree));
+                } catch (IOException e) {
+                    filesFailed.getAndIncrement();
+                    metrics.failed(e);
+                    System.err.printf("Caught [%s]; skipping %s\n%s\n", e.toString(), file.getPath(), e.getLocalizedMessage());
+                    return;
+                } finally {
+                    metrics.record(PipelineMetrics.Stage.WRITE, System.nanoTime() - writeStart);
+                    encoder.release(tree);
+                }
+                if (hash != null)
+                    manifest.record(file.getCanonicalPath(), hash, name);
+            };
+
+            try {
+                for (String topPath : args.paths) {
+                    try (VFS inVFS = deduplicated(openInput(Paths.get(topPath), args.corpus), duplicates)) {
+                        processor.forEachFile(inVFS, ".java", task, write);
+                    }
+                }
+            } finally {
+                if (manifest != null)
+                    manifest.close();
+            }
+            System.err.println(subtokenCache);
+            if (duplicates != null)
+                System.err.println(duplicates.report(metrics.parsingNanos()));
+            if (manifest != null)
+                System.err.printf("FILES SKIPPED (already mined): %d\n", filesSkipped.get());
+            System.err.println(metrics);
+            System.err.println(limits);
+            if (args.metrics.jsonPath != null)
+                metrics.writeJson(args.metrics.jsonPath);
+            System.out.printf("FILES FAILED: %d (of %d)\n", filesFailed.get(), filesParsed.get());
+        }
+    }
+
+    // How java2tree encodes each file's tree for output
+    private interface TreeEncoder<T> {
+        /** Output file extension, without the dot. */
+        String extension();
+
+        /** Parses file and encodes its tree, or returns null if it has none. */
+        T encode(InputFile file) throws Exception;
+
+        int length(T tree);
+
+        void writeTo(T tree, OutputStream out) throws IOException;
+
+        /** Called once tree is written, or failed to be. */
+        void release(T tree);
+    }
+
+    // S-expressions, encoded into pooled buffers after a "; path" header
+    private static TreeEncoder<Utf8Buffer> textTreeEncoder(boolean includeSyntax, SubtokenCache subtokenCache) {
+        final ParseHelper parseHelper = ParseHelper.getInstance();
+        final Queue<Utf8Buffer> docBuffers = new ConcurrentLinkedQueue<>();
+        return new TreeEncoder<Utf8Buffer>() {
+            public String extension() {
+                return "txt";
+            }
+
+            public Utf8Buffer encode(InputFile file) throws Exception {
+                // The header goes first so the document is never copied to prepend it
+                final Utf8Buffer doc = borrowBuffer(docBuffers);
+                doc.append("; ").append(file.getCanonicalPath()).append('\n');
+                final int headerLength = doc.length();
+                try {
+                    parseHelper.parseAndVisit(file, lang ->
+                            new SexprTreeVisitor(lang, doc, includeSyntax, subtokenCache));
+                } catch (Exception e) {
+                    releaseBuffer(docBuffers, doc);
+                    throw e;
+                }
+                if (doc.length() > headerLength)
+                    return doc;
+                releaseBuffer(docBuffers, doc);
+                return null;
+            }
+
+            public int length(Utf8Buffer doc) {
+                return doc.length();
+            }
+
+            public void writeTo(Utf8Buffer doc, OutputStream out) throws IOException {
+                doc.writeTo(out);
+            }
+
+            public void release(Utf8Buffer doc) {
+                releaseBuffer(docBuffers, doc);
+            }
+        };
+    }
+
+    // The binary trees tree2bin would make of the text
+    private static TreeEncoder<byte[]> binaryTreeEncoder(boolean includeSyntax, SubtokenCache subtokenCache) {
+        final ParseHelper parseHelper = ParseHelper.getInstance();
+        return new TreeEncoder<byte[]>() {
+            public String extension() {
+                return "tree";
+            }
+
+            public byte[] encode(InputFile file) throws Exception {
+                final BinaryTree.SexprReader tree = new BinaryTree.SexprReader(includeSyntax);
+                parseHelper.parseAndVisit(file, lang ->
+                        new SexprTreeVisitor(lang, tree, includeSyntax, subtokenCache));
+                return tree.nodeCount() > 0 ? tree.finish().toBytes() : null;
+            }
+
+            public int length(byte[] tree) {
+                return tree.length;
+            }
+
+            public void writeTo(byte[] tree, OutputStream out) throws IOException {
+                out.write(tree);
+            }
+
+            public void release(byte[] tree) {
+            }
+        };
+    }
+
+    // Convert java2tree's S-expression output to the binary tree format
+    private static void tree2BinMain(Tree2BinArgs args) throws Exception {
+        try (VFS outVFS = VFS.createVFSForPath(args.outDirPath);
+             ParallelFileProcessor processor = new ParallelFileProcessor(args.corpus.threads)) {
+            if (!outVFS.prepareOutputDirectory())
+                return;
+
+            final AtomicInteger filesFailed = new AtomicInteger(0);
             for (String topPath : args.paths) {
-                try (VFS inVFS = VFS.createVFSForPath(Paths.get(topPath))) {
-                    inVFS.forEachFile(".java", file -> {
+                try (VFS inVFS = openInput(Paths.get(topPath), args.corpus)) {
+                    processor.forEachFile(inVFS, ".txt", (index, file) -> {
+                        try {
+                            return BinaryTree.fromSexpr(readAll(file), args.includeSyntax).toBytes();
+                        } catch (IOException | BinaryTree.InvalidTreeException e) {
+                            filesFailed.getAndIncrement();
+                            System.err.printf("Caught [%s]; skipping %s\n", e.toString(), file.getPath());
+                        }
+                        return null;
+                    }, (index, file, treeBytes) -> {
+                        outVFS.writeFile(String.format("%08d.tree", index), treeBytes);
+                    });
+                }
+            }
+            System.out.printf("FILES FAILED: %d\n", filesFailed.get());
+        }
+    }
 
-                        assert file != null : "file was null";
+    // Random walks over trees, as treeconvs.py walks, but in parallel and reproducibly
+    private static void walksMain(WalksArgs args) throws Exception {
+        final boolean binary;
+        switch (args.inputFormat) {
+            case "text": binary = false; break;
+            case "binary": binary = true; break;
+            default: {
+                System.err.println("Unrecognized tree format: " + args.inputFormat);
+                System.exit(5);
+                return;
+            }
+        }
 
+        final CompressionOptions compression = new CompressionOptions(args.gzipLevel, args.gzipBlockSize, args.corpus.threads);
+        try (VFS outVFS = VFS.createVFSForPath(args.outDirPath, compression);
+             ParallelFileProcessor processor = new ParallelFileProcessor(args.corpus.threads)) {
+            if (!outVFS.prepareOutputDirectory())
+                return;
+
+            final AtomicInteger filesFailed = new AtomicInteger(0);
+            final AtomicLong walksWritten = new AtomicLong(0);
+            final ThreadLocal<RandomWalks> walkers = ThreadLocal.withInitial(() -> new RandomWalks(args.count, args.size));
+            for (String topPath : args.paths) {
+                try (VFS inVFS = openInput(Paths.get(topPath), args.corpus)) {
+                    processor.forEachFile(inVFS, binary ? ".tree" : ".txt", (index, file) -> {
                         try {
-                            // Build in memory first for easier IOException control. Fast enough.
-                            StringBuilder docBuilder = new StringBuilder();
-                            final AtomicInteger openParens = new AtomicInteger(0);
-                            parseHelper.parseAndVisit(file, lang -> new HaltingVisitor(lang) {
-
-                                @Override
-                                public NodeVisitor enter(Node parent, Node n) {
-                                    assert openParens.addAndGet(1) >= 1;
-                                    if (n instanceof Id) {
-                                        final String idStr = ((Id)n).id();
-                                        docBuilder.append(args.includeSyntax ? "(id [\"" : "[");
-                                        List<String> subtokens = OldSubtokenizer.subtokenize(idStr);
-                                        docBuilder.append(String.join((args.includeSyntax ? "\" \"" : " "), subtokens));
-                                        docBuilder.append(args.includeSyntax ? "\"]" : "]");
-                                        return bypassChildren(n);
-                                    } else if (!args.includeSyntax) {
-                                        docBuilder.append('(');
-                                    } else if (n instanceof polyglot.ast.Assign) {
-                                        docBuilder.append('(');
-                                        docBuilder.append(((polyglot.ast.Assign) n).operator());
-                                        docBuilder.append(' ');
-                                    } else if (n instanceof polyglot.ast.Eval) {
-                                        docBuilder.append("(e ");
-                                    } else if (n instanceof polyglot.ast.Call) {
-                                        docBuilder.append("(call ");
-                                    } else if (n instanceof TypeNode) {
-                                        String typeName = ((TypeNode) n).name();
-                                        docBuilder.append("(type ");
-                                        if (typeName == null) {
-                                            docBuilder.append("'unnamed");
-                                        } else {
-                                            List<String> subtokens = OldSubtokenizer.subtokenize(typeName);
-                                            docBuilder.append('[');
-                                            docBuilder.append(String.join(" ", subtokens));
-                                            docBuilder.append(']');
-                                        }
-                                        // docBuilder.append(")");
-                                        return bypassChildren(n);
-                                    } else if (n instanceof Prefix) {
-                                        docBuilder.append("(prefix ");
-                                    } else if (n instanceof polyglot.ast.While) {
-                                        docBuilder.append("(while ");
-                                    } else if (n instanceof polyglot.ast.New) {
-                                        docBuilder.append("(new ");
-                                    } else if (n instanceof LocalDecl) {
-                                        docBuilder.append("(decl ");
-                                    } else if (n instanceof Return) {
-                                        docBuilder.append("(return ");
-                                    } else if (n instanceof AnnotationElem) {
-                                        docBuilder.append("(anno ");
-                                    } else if (n instanceof Receiver) {
-                                        docBuilder.append("(. ");
-                                    } else if (n instanceof NumLit) {
-                                        docBuilder.append(((NumLit) n).longValue());
-                                    } else if (n instanceof StringLit) {
-                                        docBuilder.append('"');
-                                        // Should be a similar enough escape to avoid introducing
-                                        // any systematic or frequent problems into the dataset.
-                                        docBuilder.append(StringEscapeUtils.escapeJava(((StringLit) n).value()));
-                                        docBuilder.append('"');
-                                    } else {
-                                        final String DROP_PREFIX = "polyglot.ast.";
-                                        String fallbackName = n.getClass().getName();
-                                        if (fallbackName.startsWith(DROP_PREFIX))
-                                            fallbackName = fallbackName.substring(DROP_PREFIX.length());
-                                        docBuilder.append('(');
-                                        docBuilder.append(fallbackName);
-                                        docBuilder.append(' ');
-                                    }
-                                    return this;
-                                }
+                            final BinaryTree tree = binary
+                                    ? BinaryTree.wrap(ByteBuffer.wrap(readAllBytes(file)))
+                                    : BinaryTree.wrap(ByteBuffer.wrap(BinaryTree.fromSexpr(readAll(file), false).toBytes()));
 
-                                @Override
-                                public Node leave(Node old, Node n, NodeVisitor v) {
-                                    assert !(n instanceof Id);
-                                    assert openParens.addAndGet(-1) >= 0;
-                                    docBuilder.append(')');
-                                    return n;
-                                }
-                            });
-
-                            if (docBuilder.length() > 0) {
-                                docBuilder.insert(0, "; " + file.getCanonicalPath() + "\n");
-                                final String outFileName = String.format("%08d.txt", filesParsed.get());
-                                outVFS.writeFile(outFileName, docBuilder.toString().getBytes());
-                                // System.out.println(docBuilder.toString());
-                                // System.out.println("");
+                            // Seeded per file, not per thread, so output is the same whatever the thread count
+                            final SplittableRandom rng = new SplittableRandom(mix64(args.seed ^ mix64(index)));
+                            final Utf8Buffer walks = new Utf8Buffer();
+                            walksWritten.addAndGet(walkers.get().walk(tree, rng, walks));
+                            if (walks.length() > 0)
+                                return walks;
+                        } catch (IOException | BinaryTree.InvalidTreeException e) {
+                            filesFailed.getAndIncrement();
+                            System.err.printf("Caught [%s]; skipping %s\n", e.toString(), file.getPath());
+                        }
+                        return null;
+                    }, (index, file, walks) -> {
+                        try (OutputStream out = outVFS.openFile(String.format("%08d.txt", index), walks.length())) {
+                            walks.writeTo(out);
+                        }
+                    });
+                }
+            }
+            System.out.printf("WALKS WRITTEN: %d\n", walksWritten.get());
+            System.out.printf("FILES FAILED: %d\n", filesFailed.get());
+        }
+    }
+
+    // Windowed subtoken co-occurrence counts, as scripts/coocc.py, but out of core
+    private static void cooccMain(CooccArgs args) throws Exception {
+        if (Files.exists(args.outPath)) {
+            System.err.printf("%s exists\n", args.outPath.toAbsolutePath());
+            System.exit(1);
+            return;
+        }
+        if (args.windowSize < 1 || args.corpus.threads < 1 || args.memoryMB < 1) {
+            System.err.println("--window, --threads and --memory-mb must be positive");
+            System.exit(1);
+            return;
+        }
+
+        final Vocab vocab = Vocab.open(Paths.get(args.vocabPath));
+        final int vocabSize = args.limit == null ? vocab.size() : Math.min(args.limit, vocab.size());
+        final ToIntFunction<String> vocabIndex = word -> {
+            final int index = vocab.getWordIndex(word);
+            return index < vocabSize ? index : Vocab.UNKNOWN_INDEX;
+        };
+        final Path spillDirectory = args.spillDirectory != null ? args.spillDirectory
+                : args.outPath.toAbsolutePath().getParent();
+
+        // Each thread counts into its own fixed-size table, spilling sorted runs as it fills
+        final long bytesPerShard = (args.memoryMB * (1L << 20)) / args.corpus.threads;
+        final List<PairCounter> shards = new ArrayList<>();
+        final ThreadLocal<PairCounter> shard = ThreadLocal.withInitial(() -> {
+            PairCounter counter = new PairCounter(bytesPerShard, spillDirectory);
+            synchronized (shards) {
+                shards.add(counter);
+            }
+            return counter;
+        });
+
+        final AtomicInteger filesRead = new AtomicInteger(0);
+        final AtomicInteger filesFailed = new AtomicInteger(0);
+        try (ParallelFileProcessor processor = new ParallelFileProcessor(args.corpus.threads)) {
+            for (String topPath : args.paths) {
+                try (VFS inVFS = openInput(Paths.get(topPath), args.corpus)) {
+                    processor.forEachFile(inVFS, args.extension, (index, file) -> {
+                        filesRead.getAndIncrement();
+                        final String doc;
+                        try {
+                            doc = readAll(file);
+                        } catch (IOException e) {
+                            filesFailed.getAndIncrement();
+                            System.err.printf("Caught [%s]; skipping %s\n", e.toString(), file.getPath());
+                            return null;
+                        }
+                        // Spill failures aren't per-file; let them abort the run
+                        CooccurrenceMatrix.countDocument(doc, vocabIndex, args.windowSize, shard.get());
+                        return null;
+                    }, (index, file, nothing) -> {});
+                }
+            }
+        }
+
+        final List<Path> runs = new ArrayList<>();
+        for (PairCounter counter : shards) {
+            counter.spill();
+            runs.addAll(counter.runs());
+        }
+        final long entries = CooccurrenceMatrix.merge(runs, args.outPath, vocabSize, args.windowSize, spillDirectory);
+        System.out.printf("FILES FAILED: %d (of %d)\n", filesFailed.get(), filesRead.get());
+        System.out.printf("Wrote %d pairs from %d runs to %s\n", entries, runs.size(), args.outPath);
+    }
+
+    // Stafford's mix13 finalizer, to decorrelate nearby seeds
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static String readAll(InputFile file) throws IOException {
+        try (Reader reader = file.openReader()) {
+            final StringBuilder text = new StringBuilder();
+            final char[] chunk = new char[8192];
+            int read;
+            while ((read = reader.read(chunk)) != -1)
+                text.append(chunk, 0, read);
+            return text.toString();
+        }
+    }
+
+    private static byte[] readAllBytes(InputFile file) throws IOException {
+        try (InputStream in = file.openStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static void reportSkippedFile(InputFile file, Exception e) {
+        String excDesc = e.toString();
+        if (e instanceof ParseException) {
+            Throwable cause = ((ParseException) e).getCause();
+            if (cause != null) {
+                excDesc = cause.toString();
+            }
+        }
+        System.err.printf("Caught [%s]; skipping %s\n%s\n", excDesc, file.getPath(), e.getLocalizedMessage());
+    }
+
+    // java2tree, dft2doc and vocab in one pass, parsing each file only once
+    private static void mineMain(MineArgs args) throws Exception {
+        final boolean countVocab = args.vocabOutPath != null || args.partialVocabOutPath != null;
+        if (args.treeOutPath == null && args.docOutPath == null && !countVocab) {
+            System.err.println("Nothing to do: give at least one of --tree-out, --doc-out, --vocab-out and --partial-vocab-out");
+            System.exit(1);
+            return;
+        }
+        final boolean binaryTrees;
+        switch (args.treeFormat) {
+            case "text": binaryTrees = false; break;
+            case "binary": binaryTrees = true; break;
+            default: {
+                System.err.println("Unrecognized tree format: " + args.treeFormat);
+                System.exit(5);
+                return;
+            }
+        }
+        final DuplicateFilter duplicates = args.dedup.create(args.corpus.shard);
+        for (Path vocabPath : new Path[] {args.vocabOutPath, args.partialVocabOutPath}) {
+            if (vocabPath != null && Files.exists(vocabPath)) {
+                System.err.printf("%s already exists\n", vocabPath.toAbsolutePath());
+                System.exit(2);
+                return;
+            }
+        }
+
+        final CompressionOptions compression = new CompressionOptions(args.gzipLevel, args.gzipBlockSize, args.corpus.threads);
+        try (VFS treeVFS = args.treeOutPath == null ? null : VFS.createVFSForPath(args.treeOutPath, compression);
+             VFS docVFS = args.docOutPath == null ? null : VFS.createVFSForPath(args.docOutPath, compression);
+             ParseHelper.Limits limits = args.parseLimits.apply();
+             PipelineMetrics metrics = startMetrics("mine", args.metrics.progressSeconds);
+             ParallelFileProcessor processor = new ParallelFileProcessor(args.corpus.threads)) {
+            if (treeVFS != null && !treeVFS.prepareOutputDirectory())
+                return;
+            if (docVFS != null && !docVFS.prepareOutputDirectory())
+                return;
+
+            final AtomicInteger filesParsed = new AtomicInteger(0);
+            final AtomicInteger filesFailed = new AtomicInteger(0);
+            final ParseHelper parseHelper = ParseHelper.getInstance();
+            final SubtokenCache subtokenCache = new SubtokenCache(OldSubtokenizer::subtokenize, args.subtokenCacheMB * (1L << 20));
+            final Queue<Utf8Buffer> docBuffers = new ConcurrentLinkedQueue<>();
+
+            final List<StringIntCounter> shards = new ArrayList<>();
+            final ThreadLocal<StringIntCounter> shard = ThreadLocal.withInitial(() -> {
+                StringIntCounter counter = new StringIntCounter(5000);
+                synchronized (shards) {
+                    shards.add(counter);
+                }
+                return counter;
+            });
+            // A file's subtokens, held back until every pass over it has succeeded
+            final ThreadLocal<List<String>> fileSubtokens = ThreadLocal.withInitial(ArrayList::new);
+
+            for (String topPath : args.paths) {
+                try (VFS inVFS = deduplicated(openInput(Paths.get(topPath), args.corpus), duplicates)) {
+                    processor.forEachFile(inVFS, ".java", (index, file) -> {
+                        filesParsed.getAndIncrement();
+                        final MinedFile mined = new MinedFile();
+                        final List<NodeVisitorFactory> visitors = new ArrayList<>();
+                        try {
+                            // Docs and vocab see the same subtokens, so one walk serves both
+                            if (docVFS != null || countVocab) {
+                                final Utf8Buffer doc = docVFS == null ? null : (mined.doc = borrowBuffer(docBuffers));
+                                final List<String> subtokens = countVocab ? fileSubtokens.get() : null;
+                                visitors.add(lang -> new PreorderSubtokenVisitor(lang, subtokenCache, subtoken -> {
+                                    if (doc != null)
+                                        doc.append(subtoken).append(' ');
+                                    if (subtokens != null)
+                                        subtokens.add(subtoken);
+                                }));
+                            }
+                            BinaryTree.SexprReader binaryTree = null;
+                            if (treeVFS != null && binaryTrees) {
+                                final BinaryTree.SexprReader tree = binaryTree = new BinaryTree.SexprReader(args.includeSyntax);
+                                visitors.add(lang -> new SexprTreeVisitor(lang, tree, args.includeSyntax, subtokenCache));
+                            } else if (treeVFS != null) {
+                                final Utf8Buffer tree = mined.tree = borrowBuffer(docBuffers);
+                                tree.append("; ").append(file.getCanonicalPath()).append('\n');
+                                mined.treeHeaderLength = tree.length();
+                                visitors.add(lang -> new SexprTreeVisitor(lang, tree, args.includeSyntax, subtokenCache));
+                            }
+
+                            parseHelper.parseAndVisitAll(file, visitors.toArray(new NodeVisitorFactory[0]));
+                            if (binaryTree != null && binaryTree.nodeCount() > 0)
+                                mined.binaryTree = binaryTree.finish();
+                            // Only now is the file mined in full, so only now does it count towards the vocab
+                            if (countVocab) {
+                                final StringIntCounter counts = shard.get();
+                                for (String subtoken : fileSubtokens.get())
+                                    counts.increment(subtoken);
                             }
+                            if (mined.hasOutput())
+                                return mined;
                         } catch (Exception e) {
                             filesFailed.getAndIncrement();
-                            String excDesc = e.toString();
-                            if (e instanceof ParseException) {
-                                Throwable cause = ((ParseException) e).getCause();
-                                if (cause != null) {
-                                    excDesc = cause.toString();
+                            metrics.failed(e);
+                            reportSkippedFile(file, e);
+                        } finally {
+                            if (countVocab)
+                                fileSubtokens.get().clear();
+                        }
+                        mined.release(docBuffers);
+                        return null;
+                    }, (index, file, mined) -> {
+                        final long writeStart = System.nanoTime();
+                        try {
+                            if (mined.tree != null && mined.tree.length() > mined.treeHeaderLength) {
+                                try (OutputStream out = treeVFS.openFile(String.format("%08d.txt", index), mined.tree.length())) {
+                                    mined.tree.writeTo(out);
                                 }
+                                metrics.wrote(mined.tree.length());
                             }
-                            System.err.printf("Caught [%s]; skipping %s\n%s\n", excDesc, file.getPath(), e.getLocalizedMessage());
+                            if (mined.binaryTree != null && mined.binaryTree.nodeCount() > 0) {
+                                final byte[] treeBytes = mined.binaryTree.toBytes();
+                                treeVFS.writeFile(String.format("%08d.tree", index), treeBytes);
+                                metrics.wrote(treeBytes.length);
+                            }
+                            if (mined.doc != null && mined.doc.length() > 0) {
+                                try (OutputStream out = docVFS.openFile(String.format("%08d.txt", index), mined.doc.length())) {
+                                    mined.doc.writeTo(out);
+                                }
+                                metrics.wrote(mined.doc.length());
+                            }
+                        } catch (IOException e) {
+                            filesFailed.getAndIncrement();
+                            metrics.failed(e);
+                            System.err.printf("Caught [%s]; skipping %s\n%s\n", e.toString(), file.getPath(), e.getLocalizedMessage());
+                        } finally {
+                            metrics.record(PipelineMetrics.Stage.WRITE, System.nanoTime() - writeStart);
+                            mined.release(docBuffers);
                         }
-
-                        filesParsed.getAndIncrement();
                     });
                 }
             }
+            System.err.println(subtokenCache);
+            if (duplicates != null)
+                System.err.println(duplicates.report(metrics.parsingNanos()));
+
+            StringIntCounter counts = shards.isEmpty() ? new StringIntCounter() : shards.get(0);
+            for (int i = 1; i < shards.size(); i++)
+                counts.addAll(shards.get(i));
+            if (args.partialVocabOutPath != null) {
+                PartialVocab.write(args.partialVocabOutPath, args.corpus.shard, counts);
+                System.out.printf("Wrote counts for shard %s to %s\n", args.corpus.shard, args.partialVocabOutPath);
+            }
+            if (args.vocabOutPath != null) {
+                final StringIntCounter.Sorted sorted = counts.sortedByCount(args.minimumCount);
+                try (PrintWriter vocabWriter = new PrintWriter(Files.newBufferedWriter(args.vocabOutPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW))) {
+                    for (int i = 0; i < sorted.words.length; i++)
+                        vocabWriter.printf("%d\t%s\n", sorted.counts[i], sorted.words[i]);
+                }
+                System.out.println("Wrote vocab to " + args.vocabOutPath);
+            }
+            System.err.println(metrics);
+            System.err.println(limits);
+            if (args.metrics.jsonPath != null)
+                metrics.writeJson(args.metrics.jsonPath);
+            System.out.printf("FILES FAILED: %d (of %d)\n", filesFailed.get(), filesParsed.get());
         }
     }
 
+    // Everything mined from one file, until the sink writes it out
+    private static final class MinedFile {
+        Utf8Buffer tree = null;
+        int treeHeaderLength = 0;
+        BinaryTree.Builder binaryTree = null;
+        Utf8Buffer doc = null;
+
+        boolean hasOutput() {
+            return (this.tree != null && this.tree.length() > this.treeHeaderLength)
+                    || (this.binaryTree != null && this.binaryTree.nodeCount() > 0)
+                    || (this.doc != null && this.doc.length() > 0);
+        }
+
+        void release(Queue<Utf8Buffer> pool) {
+            if (this.tree != null)
+                releaseBuffer(pool, this.tree);
+            if (this.doc != null)
+                releaseBuffer(pool, this.doc);
+            this.tree = this.doc = null;
+        }
+    }
+
+    // Metrics for a parsing run, with ParseHelper timing its stages into them
+    private static PipelineMetrics startMetrics(String command, int progressSeconds) {
+        final PipelineMetrics metrics = new PipelineMetrics(command);
+        ParseHelper.getInstance().setMetrics(metrics);
+        metrics.startProgress(progressSeconds, System.err);
+        return metrics;
+    }
+
+    // The VFS to crawl an input path with, narrowed to this run's shard of the corpus. Archive
+    // entries over the parse size limit are skipped unread, for ParseHelper to quarantine.
+    private static VFS openInput(Path path, CorpusArgs corpus) throws IOException {
+        final long maxEntryBytes = ParseHelper.getInstance().maxFileBytes();
+        return corpus.shard.select(VFS.createVFSForReading(path, corpus.crawlThreads, maxEntryBytes), path);
+    }
+
+    private static VFS deduplicated(VFS vfs, DuplicateFilter duplicates) {
+        return duplicates == null ? vfs : new DeduplicatingVFS(vfs, duplicates);
+    }
+
+    // Buffers that grew past this for some huge file are left to the GC
+    private static final int MAX_POOLED_BUFFER_BYTES = 16 << 20;
+
+    private static Utf8Buffer borrowBuffer(Queue<Utf8Buffer> pool) {
+        final Utf8Buffer buffer = pool.poll();
+        return buffer != null ? buffer : new Utf8Buffer(64 << 10);
+    }
+
+    private static void releaseBuffer(Queue<Utf8Buffer> pool, Utf8Buffer buffer) {
+        if (buffer.capacity() > MAX_POOLED_BUFFER_BYTES)
+            return;
+        buffer.clear();
+        pool.offer(buffer);
+    }
+
+    // Disk files are mapped; archive entries are already in memory
+    private static void convertTokTree(SubtokTreeConverter converter, InputFile file, OutputStream out) throws IOException {
+        if (file instanceof DiskInputFile)
+            converter.convert(((DiskInputFile) file).getFile().toPath(), out);
+        else
+            converter.convert(ByteBuffer.wrap(readAllBytes(file)), out);
+    }
+
     private static void tokTree2SubtokTreeMain(TokTree2SubtokTreeArgs args) throws Exception {
-        
-        try (VFS filesystemVFS = VFS.createVFSForPath(args.outDirPath)) {
-            if (!filesystemVFS.prepareOutputDirectory())
+        final ThreadLocal<SubtokTreeConverter> converters = ThreadLocal.withInitial(SubtokTreeConverter::new);
+        try (VFS outVFS = VFS.createVFSForPath(args.outDirPath);
+             ParallelFileProcessor processor = new ParallelFileProcessor(args.corpus.threads)) {
+            if (!outVFS.prepareOutputDirectory())
                 return;
 
-            // Gather file paths
-            Stream<Path> allPaths = args.paths.stream()
-                    .flatMap(path -> {
+            // A directory is written straight from the workers; an archive takes whole files, in crawl order
+            final boolean direct = outVFS instanceof FilesystemVFS;
+            final AtomicInteger filesRead = new AtomicInteger(0);
+            final AtomicInteger filesFailed = new AtomicInteger(0);
+            for (Path path : args.paths) {
+                try (VFS inVFS = openInput(path, args.corpus)) {
+                    processor.forEachFile(inVFS, ".txt", (index, file) -> {
+                        filesRead.getAndIncrement();
+                        final Path outPath = args.outDirPath.resolve(Paths.get(file.getPath()).getFileName());
                         try {
-                            return Files.walk(path);
+                            if (!direct) {
+                                final ByteArrayOutputStream converted = new ByteArrayOutputStream();
+                                convertTokTree(converters.get(), file, converted);
+                                return converted;
+                            }
+                            try (OutputStream out = Files.newOutputStream(outPath)) {
+                                convertTokTree(converters.get(), file, out);
+                            } catch (IOException e) {
+                                Files.deleteIfExists(outPath);
+                                throw e;
+                            }
                         } catch (IOException e) {
-                            System.err.println(e.toString());
-                            System.exit(3);
-                            return Stream.empty();
+                            filesFailed.getAndIncrement();
+                            reportSkippedFile(file, e);
                         }
-                    })
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.getFileName().toString().toLowerCase().endsWith(".txt"));
-
-            // Start converting
-            final Pattern pattern = Pattern.compile("([\\(\\)\\]\\s]*)([^\\(\\)\\[\\]\\s]*)", Pattern.CASE_INSENSITIVE);
-            allPaths.forEach(inPath -> {
-                try {
-                    StringBuilder writer = new StringBuilder();
-                    String inContents = new String(Files.readAllBytes(inPath), "UTF-8");
-                    Matcher m = pattern.matcher(inContents);
-                    while (m.find()) {
-                        writer.append(m.group(1));
-                        if (m.group(2).length() > 0)
-                            writer.append("[" + String.join(" ", OldSubtokenizer.subtokenize(m.group(2))) + "]");
-                    }
-                    filesystemVFS.writeFile(inPath.getFileName().toString(), writer.toString().getBytes());
-                } catch (IOException e) {
-                    System.err.println(e.toString());
-                    System.exit(4);
+                        return null;
+                    }, (index, file, converted) -> {
+                        final String name = Paths.get(file.getPath()).getFileName().toString();
+                        try (OutputStream out = outVFS.openFile(name, converted.size())) {
+                            converted.writeTo(out);
+                        }
+                    });
                 }
-            });
+            }
+            System.out.printf("FILES FAILED: %d (of %d)\n", filesFailed.get(), filesRead.get());
         }
     }
 
     // Pre-order DFT
-    private static void dft2DocMain(Dft2DocArgs args) throws IOException, VocabFile.InvalidVocabFileException, IOException {
-       
-        // Create a VFS for the output directory/file
-        FilesystemVFS outVFS = new FilesystemVFS(args.outDirPath);
-
-        // Check/create output directory
-        if (!outVFS.prepareOutputDirectory()) {
-            outVFS.close();
-            return;
-        }
-
-        int filesParsed = 0;
-        int filesFailed = 0;
+    private static void dft2DocMain(Dft2DocArgs args) throws Exception {
+        final AtomicInteger filesFailed = new AtomicInteger(0);
         final ParseHelper parseHelper = ParseHelper.getInstance();
+        final SubtokenCache subtokenCache = new SubtokenCache(OldSubtokenizer::subtokenize, args.subtokenCacheMB * (1L << 20));
 
-        for (String topPath : args.paths) {
-            // TODO: Make recursion a CLI arg
-
-            final FilesystemVFS inVFS = new FilesystemVFS(Paths.get(topPath));
-            final List<File> files = inVFS.crawlJavaPathsFromDirectory(Paths.get(topPath), ".java");
+        // Create a VFS for the output directory/file and check/create output directory
+        final CompressionOptions compression = new CompressionOptions(args.gzipLevel, args.gzipBlockSize, args.corpus.threads);
+        try (VFS outVFS = VFS.createVFSForPath(args.outDirPath, compression);
+             ParseHelper.Limits limits = args.parseLimits.apply();
+             PipelineMetrics metrics = startMetrics("dft2doc", args.metrics.progressSeconds);
+             ParallelFileProcessor processor = new ParallelFileProcessor(args.corpus.threads)) {
+            if (!outVFS.prepareOutputDirectory())
+                return;
 
-            for (File file : files) {
-                assert file != null : "file was null";
+            final Vocab vocab = args.vocabPath == null ? null : Vocab.open(Paths.get(args.vocabPath));
+            final String outExtension = vocab == null ? ".txt" : ".ids";
+            for (String topPath : args.paths) {
+                // TODO: Make recursion a CLI arg
+                try (VFS inVFS = openInput(Paths.get(topPath), args.corpus)) {
+                    processor.forEachFile(inVFS, ".java", (index, file) -> {
+                        try {
+                            // Build in memory first for easier IOException control. Fast enough.
+                            if (vocab != null) {
+                                final TokenIdStream.Builder idsBuilder = new TokenIdStream.Builder();
+                                parseHelper.parseAndVisit(file, lang -> new PreorderSubtokenVisitor(lang, subtokenCache,
+                                        subtoken -> idsBuilder.addVocabIndex(vocab.getWordIndex(subtoken))));
 
-                try {
-                    // Build in memory first for easier IOException control. Fast enough.
-                    StringBuilder docBuilder = new StringBuilder();
-                    parseHelper.parseAndVisit(file, lang -> new NodeVisitor(lang) {
-                        @Override
-                        public NodeVisitor enter(Node parent, Node n) {
-                            if (n instanceof Id) {
-                                final String idStr = ((Id)n).id();
-                                for (String subtoken : OldSubtokenizer.subtokenize(idStr))
-                                    docBuilder.append(subtoken + " ");
+                                if (idsBuilder.size() > 0)
+                                    return idsBuilder.toBytes();
+                                return null;
                             }
-                            return super.enter(n);
+
+                            StringBuilder docBuilder = new StringBuilder();
+                            parseHelper.parseAndVisit(file, lang -> new PreorderSubtokenVisitor(lang, subtokenCache,
+                                    subtoken -> docBuilder.append(subtoken).append(' ')));
+
+                            if (docBuilder.length() > 0)
+                                return docBuilder.toString().getBytes();
+                        } catch (Exception e) {
+                            filesFailed.getAndIncrement();
+                            metrics.failed(e);
+                            System.err.printf("Caught exception; skipping %s\n%s\n", file.getPath(), e.getLocalizedMessage());
+                        }
+                        return null;
+                    }, (index, file, docBytes) -> {
+                        final long writeStart = System.nanoTime();
+                        try {
+                            outVFS.writeFile(String.format("%08d", index) + outExtension, docBytes);
+                            metrics.wrote(docBytes.length);
+                        } catch (IOException e) {
+                            filesFailed.getAndIncrement();
+                            metrics.failed(e);
+                            System.err.printf("Caught exception; skipping %s\n%s\n", file.getPath(), e.getLocalizedMessage());
+                        } finally {
+                            metrics.record(PipelineMetrics.Stage.WRITE, System.nanoTime() - writeStart);
                         }
                     });
-
-                    if (docBuilder.length() > 0) {
-                        final String outFileName = String.format("%08d.txt", filesParsed);
-                        Files.write(args.outDirPath.resolve(outFileName),
-                                docBuilder.toString().getBytes());
-                    }
-                } catch (Exception e) {
-                    filesFailed++;
-                    System.err.printf("Caught exception; skipping %s\n%s\n", file.getPath(), e.getLocalizedMessage());
                 }
-
-                filesParsed++;
             }
-
-            inVFS.close();
+            System.err.println(metrics);
+            System.err.println(limits);
+            if (args.metrics.jsonPath != null)
+                metrics.writeJson(args.metrics.jsonPath);
         }
-
-        outVFS.close();
+        System.err.println(subtokenCache);
     }
 
-    private static void makeVocabMain(VocabArgs args) throws IOException {
+    private static void makeVocabMain(VocabArgs args) throws Exception {
 
         // Fail fast on filesystem problems
         final String outFileName = "vocab.txt";
-        PrintWriter vocabWriter = new PrintWriter(outFileName, "utf-8");  // TODO: Make name a CLI arg
+        PrintWriter vocabWriter = null;
+        if (args.partialOutPath == null) {
+            vocabWriter = new PrintWriter(outFileName, "utf-8");  // TODO: Make name a CLI arg
+        } else if (Files.exists(args.partialOutPath)) {
+            System.err.printf("%s already exists\n", args.partialOutPath.toAbsolutePath());
+            System.exit(2);
+            return;
+        }
 
-        int filesParsed = 0;
-        int filesFailed = 0;
-        Map<String, Integer> counts = new HashMap<>(5000);
+        final AtomicInteger filesParsed = new AtomicInteger(0);
+        final AtomicInteger filesFailed = new AtomicInteger(0);
         ParseHelper parseHelper = ParseHelper.getInstance();
+        final SubtokenCache subtokenCache = new SubtokenCache(OldSubtokenizer::subtokenize, args.subtokenCacheMB * (1L << 20));
 
-        final NodeVisitorFactory visitorFactory = lang -> new NodeVisitor(lang) {
-            @Override
-            public NodeVisitor enter(Node parent, Node n) {
-                if (n instanceof Id) {
-                    final String idStr = ((Id)n).id();
-                    for (String subtoken : OldSubtokenizer.subtokenize(idStr)) {
-                        counts.put(subtoken, 1 + counts.getOrDefault(subtoken, 0));
-                    }
-                }
-                return super.enter(n);
+        // Each parse thread counts into its own shard; shards are merged at the end
+        final List<StringIntCounter> shards = new ArrayList<>();
+        final ThreadLocal<StringIntCounter> shard = ThreadLocal.withInitial(() -> {
+            StringIntCounter counter = new StringIntCounter(5000);
+            synchronized (shards) {
+                shards.add(counter);
             }
-        };
+            return counter;
+        });
 
-        for (String topPath : args.paths) {
-            List<File> files = (new FilesystemVFS(Paths.get(topPath))).crawlJavaPathsFromDirectory(Paths.get(topPath), ".java");
+        final NodeVisitorFactory visitorFactory = lang -> new PreorderSubtokenVisitor(lang, subtokenCache,
+                shard.get()::increment);
 
-            for (File file : files) {
-                assert file != null : "file was null";
-                filesParsed++;
-                try {
-                    parseHelper.parseAndVisit(file, visitorFactory);
-                } catch (Exception e) {
-                    filesFailed++;
-                    System.err.printf("Caught exception; skipping %s\n%s\n", file.getPath(), e.getLocalizedMessage());
+        try (ParseHelper.Limits limits = args.parseLimits.apply();
+             PipelineMetrics metrics = startMetrics("vocab", args.metrics.progressSeconds);
+             ParallelFileProcessor processor = new ParallelFileProcessor(args.corpus.threads)) {
+            for (String topPath : args.paths) {
+                try (VFS inVFS = openInput(Paths.get(topPath), args.corpus)) {
+                    processor.forEachFile(inVFS, ".java", (index, file) -> {
+                        filesParsed.getAndIncrement();
+                        try {
+                            parseHelper.parseAndVisit(file, visitorFactory);
+                        } catch (Exception e) {
+                            filesFailed.getAndIncrement();
+                            metrics.failed(e);
+                            System.err.printf("Caught exception; skipping %s\n%s\n", file.getPath(), e.getLocalizedMessage());
+                        }
+                        return null;
+                    }, (index, file, nothing) -> {});
                 }
             }
+            System.err.println(metrics);
+            System.err.println(limits);
+            if (args.metrics.jsonPath != null)
+                metrics.writeJson(args.metrics.jsonPath);
+        }
+        System.err.println(subtokenCache);
+
+        StringIntCounter counts = shards.isEmpty() ? new StringIntCounter() : shards.get(0);
+        for (int i = 1; i < shards.size(); i++)
+            counts.addAll(shards.get(i));
+
+        if (args.partialOutPath != null) {
+            PartialVocab.write(args.partialOutPath, args.corpus.shard, counts);
+            System.out.printf("FILES FAILED: %d (of %d)\n", filesFailed.get(), filesParsed.get());
+            System.out.printf("Wrote counts of %d words in shard %s to %s\n", counts.size(), args.corpus.shard, args.partialOutPath);
+            return;
         }
 
-        // Sort in descending occurrence and print/write all 2+ occurs
+        // Sort in descending occurrence (ties by subtoken) and print/write all 2+ occurs
         System.err.flush();
-        List<String> tokens = new ArrayList<>(counts.keySet());
-        tokens.sort((o1, o2) -> counts.get(o2) - counts.get(o1));
-        for (String token : tokens) {
-            if (counts.get(token) < args.minimumCount)
-                break;
-            System.out.printf("%d\t%s\n", counts.get(token), token);
-            vocabWriter.printf("%d\t%s\n", counts.get(token), token);
+        final StringIntCounter.Sorted sorted = counts.sortedByCount(args.minimumCount);
+        for (int i = 0; i < sorted.words.length; i++) {
+            System.out.printf("%d\t%s\n", sorted.counts[i], sorted.words[i]);
+            vocabWriter.printf("%d\t%s\n", sorted.counts[i], sorted.words[i]);
         }
-        System.out.printf("FILES FAILED: %d (of %d)\n", filesFailed, filesParsed);
+        System.out.printf("FILES FAILED: %d (of %d)\n", filesFailed.get(), filesParsed.get());
         vocabWriter.close();
         System.out.println("Wrote to " + outFileName);
     }
 
-    private static void token2SubtokenDocMain(Token2SubtokenDocArgs args) throws IOException {
+    // Sum the partial vocabs of every shard of a corpus into its vocab
+    private static void vocabMergeMain(VocabMergeArgs args) throws Exception {
+        if (Files.exists(args.outPath)) {
+            System.err.printf("%s already exists\n", args.outPath.toAbsolutePath());
+            System.exit(2);
+            return;
+        }
 
-        // Check/create output directory
-        FilesystemVFS outVFS = new FilesystemVFS(args.outDirPath);
-        if (!outVFS.prepareOutputDirectory())
+        final StringIntCounter counts = new StringIntCounter();
+        final Map<Integer, Path> shardPaths = new TreeMap<>();
+        int shardCount = -1;
+        for (Path path : args.paths) {
+            final CorpusShard shard = PartialVocab.addTo(path, counts);
+            if (shardCount != -1 && shard.count != shardCount) {
+                System.err.printf("%s is shard %s, but others are out of %d\n", path, shard, shardCount);
+                System.exit(1);
+                return;
+            }
+            shardCount = shard.count;
+            final Path previous = shardPaths.put(shard.index, path);
+            if (previous != null) {
+                System.err.printf("%s and %s are both shard %s\n", previous, path, shard);
+                System.exit(1);
+                return;
+            }
+        }
+        if (shardPaths.size() != shardCount) {
+            final List<String> missing = new ArrayList<>();
+            for (int i = 0; i < shardCount; i++) {
+                if (!shardPaths.containsKey(i))
+                    missing.add(i + "/" + shardCount);
+            }
+            System.err.println("Missing partial vocabs for shards " + String.join(", ", missing));
+            System.exit(1);
             return;
-        assert Files.isDirectory(args.outDirPath);
+        }
 
-        // Gather file paths
-        Stream<Path> allPaths = args.paths.stream()
-            .flatMap(path -> {
-                try {
-                    return Files.walk(path);
-                } catch (IOException e) {
-                    System.err.println(e.toString());
-                    System.exit(3);
-                    return Stream.empty();
+        // Exactly as vocab writes it: by descending count, ties by subtoken
+        final StringIntCounter.Sorted sorted = counts.sortedByCount(args.minimumCount);
+        try (PrintWriter vocabWriter = new PrintWriter(Files.newBufferedWriter(args.outPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW))) {
+            for (int i = 0; i < sorted.words.length; i++)
+                vocabWriter.printf("%d\t%s\n", sorted.counts[i], sorted.words[i]);
+        }
+        System.out.printf("Wrote %d words from %d shards to %s\n", sorted.words.length, shardCount, args.outPath);
+    }
+
+    // Convert a vocab between the text and binary formats
+    private static void vocabConvertMain(VocabConvertArgs args) throws Exception {
+        if (args.paths.size() != 1) {
+            System.err.println("Expected exactly one vocab file to convert");
+            System.exit(1);
+            return;
+        }
+        if (Files.exists(args.outPath)) {
+            System.err.printf("%s already exists", args.outPath.toAbsolutePath());
+            System.exit(2);
+            return;
+        }
+
+        final Vocab vocab = Vocab.open(args.paths.get(0));
+        switch (args.format) {
+            case "binary": {
+                try (OutputStream out = Files.newOutputStream(args.outPath, StandardOpenOption.CREATE_NEW)) {
+                    BinaryVocabFile.write(vocab, out);
+                }
+                break;
+            }
+            case "text": {
+                try (Writer writer = Files.newBufferedWriter(args.outPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW)) {
+                    VocabFile.write(vocab, writer);
                 }
-            })
-            .filter(Files::isRegularFile)
-            .filter(path -> path.getFileName().toString().toLowerCase().endsWith(".txt"));
+                break;
+            }
+            default: {
+                System.err.println("Unrecognized vocab format: " + args.format);
+                System.exit(5);
+                return;
+            }
+        }
+        System.out.printf("Wrote %d words to %s\n", vocab.size(), args.outPath);
+    }
 
-        // Start converting
-        allPaths.forEach(inPath -> {
-            Path outPath = args.outDirPath.resolve(inPath.getFileName());
-            try {
-                PrintWriter writer = new PrintWriter(Files.newBufferedWriter(outPath, StandardOpenOption.CREATE_NEW));
-                try (Stream<String> lines = Files.lines(inPath)) {
-                    lines
-                        .map(line -> line.split("\\s+"))
-                        .filter(toks -> toks.length > 0 && !toks[0].isEmpty())
-                        .map(tokens -> {
-                            StringBuilder b = new StringBuilder(2056);
-                            int i = 0;
-                            for (String token : tokens) {
-                                for (String subtoken : OldSubtokenizer.subtokenize(token)) {
-                                    if (i > 0)
-                                        b.append(' ');
-                                    b.append(subtoken);
-                                    i++;
+    private static void token2SubtokenDocMain(Token2SubtokenDocArgs args) throws Exception {
+
+        // One output directory for everything, or one per input path (say, one per language)
+        if (args.outDirPaths.size() != 1 && args.outDirPaths.size() != args.paths.size()) {
+            System.err.printf("Given %d --outdir for %d paths; give one, or one per path\n",
+                    args.outDirPaths.size(), args.paths.size());
+            System.exit(1);
+            return;
+        }
+
+        // Check/create output directories (or archives, or shard sets)
+        final Map<Path, VFS> outVFSs = new LinkedHashMap<>();
+        try {
+            for (Path outDirPath : args.outDirPaths) {
+                if (outVFSs.containsKey(outDirPath))
+                    continue;
+                final VFS outVFS = VFS.createVFSForPath(outDirPath);
+                outVFSs.put(outDirPath, outVFS);
+                if (!outVFS.prepareOutputDirectory())
+                    return;
+            }
+
+            // Start converting: files in parallel, each one's lines in order
+            final ThreadLocal<SubtokenDocConverter> converters = ThreadLocal.withInitial(SubtokenDocConverter::new);
+            try (ParallelFileProcessor processor = new ParallelFileProcessor(args.corpus.threads)) {
+                for (int i = 0; i < args.paths.size(); i++) {
+                    final Path outDirPath = args.outDirPaths.get(args.outDirPaths.size() == 1 ? 0 : i);
+                    final VFS outVFS = outVFSs.get(outDirPath);
+                    // A directory is written straight from the workers; anything else takes whole files, in crawl order
+                    final boolean direct = outVFS instanceof FilesystemVFS;
+                    try (VFS inVFS = openInput(args.paths.get(i), args.corpus)) {
+                        processor.forEachFile(inVFS, ".txt", (index, file) -> {
+                            try (InputStream in = file.openStream()) {
+                                if (!direct) {
+                                    final ByteArrayOutputStream converted = new ByteArrayOutputStream();
+                                    converters.get().convert(in, converted);
+                                    return converted;
                                 }
+                                final Path outPath = outDirPath.resolve(Paths.get(file.getPath()).getFileName());
+                                try (OutputStream out = Files.newOutputStream(outPath, StandardOpenOption.CREATE_NEW)) {
+                                    converters.get().convert(in, out);
+                                }
+                            } catch (IOException e) {
+                                System.err.println(e.toString());
+                                System.exit(4);
+                            }
+                            return null;
+                        }, (index, file, converted) -> {
+                            final String name = Paths.get(file.getPath()).getFileName().toString();
+                            try (OutputStream out = outVFS.openFile(name, converted.size())) {
+                                converted.writeTo(out);
+                            } catch (IOException e) {
+                                System.err.println(e.toString());
+                                System.exit(4);
                             }
-                            return b.toString();
-                        })
-                        .forEachOrdered(writer::println);
-                    writer.close();
+                        });
+                    } catch (IOException e) {
+                        System.err.println(e.toString());
+                        System.exit(3);
+                        return;
+                    }
                 }
-            } catch (IOException e) {
-                System.err.println(e.toString());
-                System.exit(4);
             }
-        });
-
-        outVFS.close();
+        } finally {
+            for (VFS outVFS : outVFSs.values())
+                outVFS.close();
+        }
     }
 }
\ No newline at end of file
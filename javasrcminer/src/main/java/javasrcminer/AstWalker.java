@@ -0,0 +1,130 @@
+package javasrcminer;
+
+import polyglot.ast.Lang;
+import polyglot.ast.Node;
+import polyglot.visit.NodeVisitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AstWalker
+ *
+ * Runs a NodeVisitor over an AST with an explicit stack on the heap, so
+ * however deeply the AST nests (say a long chain of + concatenations in
+ * generated code) the walk can't overflow the thread stack. It calls the
+ * visitor exactly as Node.visit would: override(parent, n), then, if that
+ * returns null, enter(parent, n), each child with the visitor enter
+ * returned, and leave(parent, old, n, v) on the visitor that entered. So
+ * HaltingVisitor.bypassChildren works unchanged.
+ *
+ * Only for visitors that don't rewrite the tree: leave's result is ignored
+ * and the original root returned. A node's children are found by visiting
+ * it with a visitor that records each child and goes no deeper, so they
+ * come in the order (and with the extension dispatch) polyglot uses.
+ * Holds scratch space, so use one per thread. Given a deadline, the walk
+ * checks it every CHECK_INTERVAL nodes and fails with ParseWatchdog.Expired
+ * once it has passed.
+ */
+final class AstWalker {
+
+    // Nodes entered between deadline checks
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final ChildCollector collector;
+    private Frame[] frames = new Frame[64];
+
+    public AstWalker(Lang lang) {
+        this.collector = new ChildCollector(lang);
+    }
+
+    public Node visit(Node root, NodeVisitor visitor) {
+        return visit(root, visitor, null);
+    }
+
+    public Node visit(Node root, NodeVisitor visitor, ParseWatchdog.Deadline deadline) {
+        if (visitor.override(null, root) != null)
+            return root;
+        int depth = 0;
+        int untilCheck = CHECK_INTERVAL;
+        push(depth++, null, root, visitor);
+        try {
+            while (depth > 0) {
+                final Frame top = this.frames[depth - 1];
+                if (top.next < top.children.size()) {
+                    final Node child = top.children.get(top.next++);
+                    if (top.childVisitor.override(top.node, child) == null) {
+                        if (deadline != null && --untilCheck == 0) {
+                            deadline.check();
+                            untilCheck = CHECK_INTERVAL;
+                        }
+                        push(depth++, top.node, child, top.childVisitor);
+                    }
+                } else {
+                    top.visitor.leave(top.parent, top.node, top.node, top.childVisitor);
+                    top.clear();
+                    depth--;
+                }
+            }
+        } finally {
+            // Don't pin a failed walk's nodes in the scratch frames
+            while (depth > 0)
+                this.frames[--depth].clear();
+        }
+        return root;
+    }
+
+    private void push(int depth, Node parent, Node node, NodeVisitor visitor) {
+        if (depth == this.frames.length)
+            this.frames = Arrays.copyOf(this.frames, depth * 2);
+        Frame frame = this.frames[depth];
+        if (frame == null)
+            frame = this.frames[depth] = new Frame();
+        frame.parent = parent;
+        frame.node = node;
+        frame.visitor = visitor;
+        frame.childVisitor = visitor.enter(parent, node);
+        frame.next = 0;
+        this.collector.collect(node, frame.children);
+    }
+
+    private static final class Frame {
+        Node parent;
+        Node node;
+        NodeVisitor visitor;
+        NodeVisitor childVisitor;
+        final List<Node> children = new ArrayList<>();
+        int next;
+
+        void clear() {
+            this.parent = this.node = null;
+            this.visitor = this.childVisitor = null;
+            this.children.clear();
+        }
+    }
+
+    // Overrides every child, so visiting a node records its children and stops
+    private static final class ChildCollector extends NodeVisitor {
+        private List<Node> children;
+
+        ChildCollector(Lang lang) {
+            super(lang);
+        }
+
+        void collect(Node node, List<Node> into) {
+            this.children = into;
+            try {
+                lang().visitChildren(node, this);
+            } finally {
+                this.children = null;
+            }
+        }
+
+        @Override
+        public Node override(Node parent, Node n) {
+            this.children.add(n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package javasrcminer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BinaryTree
+ *
+ * The binary alternative to java2tree's S-expressions: a forest of nodes in
+ * preorder, stored as parallel arrays so it can be memory-mapped (or
+ * numpy.frombuffer'd) and walked without parsing. Kinds and subtokens are
+ * ids into per-file string tables. All integers are little-endian int32:
+ *
+ * <pre>
+ *   magic            "CTRE"
+ *   nodeCount        n
+ *   refCount         m, total subtokens over all nodes
+ *   kindCount        k
+ *   kindBytes        total UTF-8 bytes of the kind table
+ *   subtokenCount    s
+ *   subtokenBytes    total UTF-8 bytes of the subtoken table
+ *   kinds            n ints, kind id of each node
+ *   childCounts      n ints
+ *   subtokenStarts   n + 1 ints, each node's first entry in subtokens
+ *   subtokens        m ints, subtoken ids
+ *   kindOffsets      k + 1 ints, start of each kind in its blob
+ *   subtokenOffsets  s + 1 ints, start of each subtoken in its blob
+ *   kind blob, then subtoken blob
+ * </pre>
+ *
+ * Kind 0 is always "", for nodes that don't record one.
+ */
+final class BinaryTree {
+
+    static final byte[] MAGIC = { 'C', 'T', 'R', 'E' };
+    private static final int HEADER_BYTES = MAGIC.length + 6 * 4;
+
+    public static final int NO_KIND = 0;
+
+    private final int nodeCount;
+    private final IntBuffer kinds;
+    private final IntBuffer childCounts;
+    private final IntBuffer subtokenStarts;
+    private final IntBuffer subtokens;
+    private final StringTable kindTable;
+    private final StringTable subtokenTable;
+
+    // Derived from childCounts on load
+    private final int[] parents;
+    private final int[] subtreeEnds;
+
+    private BinaryTree(ByteBuffer buffer) throws InvalidTreeException {
+        buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES)
+            throw new InvalidTreeException("Truncated binary tree header");
+        final byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new InvalidTreeException("Not a binary tree file");
+        this.nodeCount = buffer.getInt();
+        final int refCount = buffer.getInt();
+        final int kindCount = buffer.getInt();
+        final int kindBytes = buffer.getInt();
+        final int subtokenCount = buffer.getInt();
+        final int subtokenBytes = buffer.getInt();
+        if (this.nodeCount < 0 || refCount < 0 || kindCount < 1 || kindBytes < 0 || subtokenCount < 0 || subtokenBytes < 0
+                || buffer.remaining() != 4L * (3L * this.nodeCount + 1 + refCount + kindCount + 1 + subtokenCount + 1)
+                        + kindBytes + subtokenBytes)
+            throw new InvalidTreeException("Binary tree file has the wrong length");
+
+        this.kinds = slice(buffer, 4 * this.nodeCount).asIntBuffer();
+        this.childCounts = slice(buffer, 4 * this.nodeCount).asIntBuffer();
+        this.subtokenStarts = slice(buffer, 4 * (this.nodeCount + 1)).asIntBuffer();
+        this.subtokens = slice(buffer, 4 * refCount).asIntBuffer();
+        final IntBuffer kindOffsets = slice(buffer, 4 * (kindCount + 1)).asIntBuffer();
+        final IntBuffer subtokenOffsets = slice(buffer, 4 * (subtokenCount + 1)).asIntBuffer();
+        this.kindTable = new StringTable(kindOffsets, slice(buffer, kindBytes));
+        this.subtokenTable = new StringTable(subtokenOffsets, slice(buffer, subtokenBytes));
+
+        this.parents = new int[this.nodeCount];
+        this.subtreeEnds = new int[this.nodeCount];
+        link();
+    }
+
+    /** Memory-maps a binary tree file. */
+    public static BinaryTree open(Path path) throws IOException, InvalidTreeException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new BinaryTree(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static BinaryTree wrap(ByteBuffer buffer) throws InvalidTreeException {
+        return new BinaryTree(buffer);
+    }
+
+    public int nodeCount() {
+        return this.nodeCount;
+    }
+
+    public int kindId(int node) {
+        return this.kinds.get(node);
+    }
+
+    public String kind(int node) {
+        return this.kindTable.get(kindId(node));
+    }
+
+    public int childCount(int node) {
+        return this.childCounts.get(node);
+    }
+
+    /** Returns node's parent, or -1 for a root. */
+    public int parent(int node) {
+        return this.parents[node];
+    }
+
+    /** Returns the node after node's subtree: its next sibling, if it has one. */
+    public int subtreeEnd(int node) {
+        return this.subtreeEnds[node];
+    }
+
+    /** Returns node's first child, or -1 for a leaf. */
+    public int firstChild(int node) {
+        return childCount(node) > 0 ? node + 1 : -1;
+    }
+
+    /** Returns the next child of node's parent (or the next root), or -1. */
+    public int nextSibling(int node) {
+        final int next = this.subtreeEnds[node];
+        final int parent = this.parents[node];
+        if (next >= (parent < 0 ? this.nodeCount : this.subtreeEnds[parent]))
+            return -1;
+        return next;
+    }
+
+    public int subtokenCount(int node) {
+        return this.subtokenStarts.get(node + 1) - this.subtokenStarts.get(node);
+    }
+
+    /** Returns the j-th subtoken id of node; see subtokenName. */
+    public int subtokenId(int node, int j) {
+        return this.subtokens.get(this.subtokenStarts.get(node) + j);
+    }
+
+    public String subtoken(int node, int j) {
+        return this.subtokenTable.get(subtokenId(node, j));
+    }
+
+    public int kindTableSize() {
+        return this.kindTable.size();
+    }
+
+    public String kindName(int kindId) {
+        return this.kindTable.get(kindId);
+    }
+
+    public int subtokenTableSize() {
+        return this.subtokenTable.size();
+    }
+
+    public String subtokenName(int subtokenId) {
+        return this.subtokenTable.get(subtokenId);
+    }
+
+    // Fills parents and subtreeEnds, checking the child counts describe whole trees
+    private void link() throws InvalidTreeException {
+        final int[] stack = new int[this.nodeCount];
+        final int[] remaining = new int[this.nodeCount];
+        int depth = 0;
+        for (int node = 0; node < this.nodeCount; node++) {
+            final int kind = this.kinds.get(node);
+            final int children = this.childCounts.get(node);
+            if (kind < 0 || kind >= this.kindTable.size() || children < 0)
+                throw new InvalidTreeException("Bad kind or child count at node " + node);
+            final int start = this.subtokenStarts.get(node), end = this.subtokenStarts.get(node + 1);
+            if (start < 0 || end < start || end > this.subtokens.limit())
+                throw new InvalidTreeException("Bad subtoken range at node " + node);
+            for (int j = start; j < end; j++) {
+                final int id = this.subtokens.get(j);
+                if (id < 0 || id >= this.subtokenTable.size())
+                    throw new InvalidTreeException("Bad subtoken id at node " + node);
+            }
+
+            this.parents[node] = depth == 0 ? -1 : stack[depth - 1];
+            if (depth > 0)
+                remaining[depth - 1]--;
+            stack[depth] = node;
+            remaining[depth] = children;
+            depth++;
+            // Close every subtree this node completes
+            while (depth > 0 && remaining[depth - 1] == 0) {
+                depth--;
+                this.subtreeEnds[stack[depth]] = node + 1;
+            }
+        }
+        if (depth != 0)
+            throw new InvalidTreeException("Binary tree ends inside a node");
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        final ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static final class StringTable {
+        private final IntBuffer offsets;
+        private final ByteBuffer blob;
+
+        StringTable(IntBuffer offsets, ByteBuffer blob) throws InvalidTreeException {
+            this.offsets = offsets;
+            this.blob = blob;
+            int previous = 0;
+            for (int i = 0; i < offsets.limit(); i++) {
+                final int offset = offsets.get(i);
+                if (offset < previous || offset > blob.limit())
+                    throw new InvalidTreeException("Bad string table offset");
+                previous = offset;
+            }
+        }
+
+        int size() {
+            return this.offsets.limit() - 1;
+        }
+
+        String get(int id) {
+            final int start = this.offsets.get(id);
+            final byte[] utf8 = new byte[this.offsets.get(id + 1) - start];
+            final ByteBuffer bytes = this.blob.duplicate();
+            bytes.position(start);
+            bytes.get(utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Accumulates one file's forest in preorder: startNode, then its
+     * subtokens and children, then endNode.
+     */
+    public static final class Builder {
+        private int[] kinds = new int[256];
+        private int[] childCounts = new int[256];
+        private int[] subtokens = new int[256];
+        private int[] subtokenNodes = new int[256];
+        private int nodeCount = 0;
+        private int refCount = 0;
+
+        private int[] open = new int[64];
+        private int depth = 0;
+
+        private final Interner kindInterner = new Interner();
+        private final Interner subtokenInterner = new Interner();
+
+        public Builder() {
+            this.kindInterner.intern("");
+        }
+
+        public Builder startNode(String kind) {
+            if (this.nodeCount == this.kinds.length) {
+                this.kinds = Arrays.copyOf(this.kinds, this.nodeCount * 2);
+                this.childCounts = Arrays.copyOf(this.childCounts, this.nodeCount * 2);
+            }
+            if (this.depth > 0)
+                this.childCounts[this.open[this.depth - 1]]++;
+            if (this.depth == this.open.length)
+                this.open = Arrays.copyOf(this.open, this.depth * 2);
+            this.open[this.depth++] = this.nodeCount;
+
+            this.kinds[this.nodeCount] = this.kindInterner.intern(kind);
+            this.childCounts[this.nodeCount] = 0;
+            this.nodeCount++;
+            return this;
+        }
+
+        /** Adds a subtoken to the innermost node not yet ended, even after its children. */
+        public Builder addSubtoken(String subtoken) {
+            if (this.depth == 0)
+                throw new IllegalStateException("no open node to add a subtoken to");
+            if (this.refCount == this.subtokens.length) {
+                this.subtokens = Arrays.copyOf(this.subtokens, this.refCount * 2);
+                this.subtokenNodes = Arrays.copyOf(this.subtokenNodes, this.refCount * 2);
+            }
+            this.subtokens[this.refCount] = this.subtokenInterner.intern(subtoken);
+            this.subtokenNodes[this.refCount] = this.open[this.depth - 1];
+            this.refCount++;
+            return this;
+        }
+
+        /** Sets the kind of the innermost node not yet ended. */
+        public Builder setKind(String kind) {
+            if (this.depth == 0)
+                throw new IllegalStateException("no open node to set the kind of");
+            this.kinds[this.open[this.depth - 1]] = this.kindInterner.intern(kind);
+            return this;
+        }
+
+        public Builder endNode() {
+            if (this.depth == 0)
+                throw new IllegalStateException("endNode without a matching startNode");
+            this.depth--;
+            return this;
+        }
+
+        public int nodeCount() {
+            return this.nodeCount;
+        }
+
+        /** Number of nodes started but not yet ended. */
+        public int depth() {
+            return this.depth;
+        }
+
+        /** Serializes the forest; every node must have been ended. */
+        public byte[] toBytes() {
+            if (this.depth != 0)
+                throw new IllegalStateException(this.depth + " nodes were never ended");
+            final int n = this.nodeCount;
+            final byte[][] kindWords = this.kindInterner.toUtf8();
+            final byte[][] subtokenWords = this.subtokenInterner.toUtf8();
+            final int kindBytes = totalLength(kindWords);
+            final int subtokenBytes = totalLength(subtokenWords);
+
+            final ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES
+                    + 4 * (3 * n + 1 + this.refCount + kindWords.length + 1 + subtokenWords.length + 1)
+                    + kindBytes + subtokenBytes).order(ByteOrder.LITTLE_ENDIAN);
+            out.put(MAGIC);
+            out.putInt(n);
+            out.putInt(this.refCount);
+            out.putInt(kindWords.length);
+            out.putInt(kindBytes);
+            out.putInt(subtokenWords.length);
+            out.putInt(subtokenBytes);
+
+            // Group subtokens by node (stably), as they may arrive out of preorder
+            final int[] starts = new int[n + 1];
+            for (int i = 0; i < this.refCount; i++)
+                starts[this.subtokenNodes[i] + 1]++;
+            for (int node = 0; node < n; node++)
+                starts[node + 1] += starts[node];
+            final int[] grouped = new int[this.refCount];
+            final int[] next = Arrays.copyOf(starts, n);
+            for (int i = 0; i < this.refCount; i++)
+                grouped[next[this.subtokenNodes[i]]++] = this.subtokens[i];
+
+            final IntBuffer ints = out.asIntBuffer();
+            ints.put(this.kinds, 0, n);
+            ints.put(this.childCounts, 0, n);
+            ints.put(starts);
+            ints.put(grouped);
+            putOffsets(ints, kindWords);
+            putOffsets(ints, subtokenWords);
+            out.position(out.position() + 4 * ints.position());
+
+            for (byte[] word : kindWords)
+                out.put(word);
+            for (byte[] word : subtokenWords)
+                out.put(word);
+            return out.array();
+        }
+
+        private static int totalLength(byte[][] words) {
+            int total = 0;
+            for (byte[] word : words)
+                total += word.length;
+            return total;
+        }
+
+        private static void putOffsets(IntBuffer ints, byte[][] words) {
+            int offset = 0;
+            ints.put(offset);
+            for (byte[] word : words) {
+                offset += word.length;
+                ints.put(offset);
+            }
+        }
+    }
+
+    // Assigns ids to strings in order of first appearance
+    private static final class Interner {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int intern(String s) {
+            Integer id = this.ids.get(s);
+            if (id == null) {
+                id = this.strings.size();
+                this.ids.put(s, id);
+                this.strings.add(s);
+            }
+            return id;
+        }
+
+        byte[][] toUtf8() {
+            final byte[][] utf8 = new byte[this.strings.size()][];
+            for (int i = 0; i < utf8.length; i++)
+                utf8[i] = this.strings.get(i).getBytes(StandardCharsets.UTF_8);
+            return utf8;
+        }
+    }
+
+    /**
+     * Converts java2tree's S-expression text to a binary tree; see
+     * SexprReader.
+     */
+    public static Builder fromSexpr(CharSequence text, boolean firstWordIsKind) throws InvalidTreeException {
+        return new SexprReader(firstWordIsKind).append(text).finish();
+    }
+
+    /**
+     * Reads S-expression text into a Builder as it's appended, the way
+     * treeconvs.py's _parse_paren does: ';' lines are comments, '[' and ']'
+     * are ignored and words are split on whitespace. With firstWordIsKind
+     * (for --include-syntax output) a node's first word becomes its kind
+     * rather than a subtoken. Text may arrive in any pieces; a malformed
+     * tree is reported by finish.
+     */
+    public static final class SexprReader implements SexprSink {
+        private final Builder builder = new Builder();
+        private final boolean firstWordIsKind;
+        private final StringBuilder word = new StringBuilder();
+        private boolean kindPending = false;
+        private boolean lineStart = true;
+        private boolean inComment = false;
+        private long offset = 0;
+        private String error = null;
+
+        public SexprReader(boolean firstWordIsKind) {
+            this.firstWordIsKind = firstWordIsKind;
+        }
+
+        @Override
+        public SexprReader append(char ch) {
+            final long at = this.offset++;
+            if (this.error != null)
+                return this;
+            if (this.inComment) {
+                // The newline ending a comment leaves us at the start of a line
+                this.inComment = ch != '\n';
+                return this;
+            }
+            if (this.lineStart && ch == ';') {
+                this.inComment = true;
+                return this;
+            }
+            this.lineStart = ch == '\n';
+            if (ch == '(' || ch == ')' || Character.isWhitespace(ch)) {
+                if (this.word.length() > 0) {
+                    if (this.builder.depth() == 0) {
+                        this.error = "Word outside of any node at offset " + at;
+                        return this;
+                    }
+                    if (this.kindPending) {
+                        this.builder.setKind(this.word.toString());
+                        this.kindPending = false;
+                    } else {
+                        this.builder.addSubtoken(this.word.toString());
+                    }
+                    this.word.setLength(0);
+                }
+                if (ch == '(') {
+                    this.builder.startNode("");
+                    this.kindPending = this.firstWordIsKind;
+                } else if (ch == ')') {
+                    if (this.builder.depth() == 0) {
+                        this.error = "Unbalanced parens at offset " + at;
+                        return this;
+                    }
+                    this.builder.endNode();
+                    this.kindPending = false;
+                }
+            } else if (ch != '[' && ch != ']') {
+                this.word.append(ch);
+            }
+            return this;
+        }
+
+        @Override
+        public SexprReader append(CharSequence s) {
+            for (int i = 0; i < s.length(); i++)
+                append(s.charAt(i));
+            return this;
+        }
+
+        @Override
+        public SexprReader append(long value) {
+            return append(Long.toString(value));
+        }
+
+        /** Number of nodes read so far. */
+        public int nodeCount() {
+            return this.builder.nodeCount();
+        }
+
+        /** Returns the tree read, once the text is complete. */
+        public Builder finish() throws InvalidTreeException {
+            if (this.error != null)
+                throw new InvalidTreeException(this.error);
+            if (this.word.length() > 0 || this.builder.depth() != 0)
+                throw new InvalidTreeException("Unbalanced parens at end of input");
+            return this.builder;
+        }
+    }
+
+    public static class InvalidTreeException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public InvalidTreeException(String msg) {
+            super(msg);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package javasrcminer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * BinaryVocabFile
+ *
+ * A vocabulary in a compact binary layout that is memory-mapped and queried
+ * in place, without building a String or map entry per word. All integers
+ * are little-endian int32:
+ *
+ * <pre>
+ *   magic        "VCB1"
+ *   wordCount    n
+ *   blobLength   total UTF-8 bytes of all words
+ *   counts       n ints, by word index (descending frequency)
+ *   offsets      n + 1 ints, start of each word in the blob, by word index
+ *   sorted       n ints, word indices ordered by their UTF-8 bytes (unsigned)
+ *   blob         the UTF-8 words back to back, by word index
+ * </pre>
+ *
+ * Lookups binary-search the sorted index comparing raw bytes.
+ */
+public final class BinaryVocabFile implements Vocab {
+
+    static final byte[] MAGIC = { 'V', 'C', 'B', '1' };
+    private static final int HEADER_BYTES = MAGIC.length + 4 + 4;
+
+    private final int size;
+    private final IntBuffer counts;
+    private final IntBuffer offsets;
+    private final IntBuffer sorted;
+    private final ByteBuffer blob;
+
+    private BinaryVocabFile(ByteBuffer buffer) throws VocabFile.InvalidVocabFileException {
+        buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES)
+            throw new VocabFile.InvalidVocabFileException("Truncated binary vocab header");
+        final byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new VocabFile.InvalidVocabFileException("Not a binary vocab file");
+        this.size = buffer.getInt();
+        final int blobLength = buffer.getInt();
+        if (this.size < 0 || blobLength < 0
+                || buffer.remaining() != 4L * (3L * this.size + 1) + blobLength)
+            throw new VocabFile.InvalidVocabFileException("Binary vocab file has the wrong length");
+
+        this.counts = slice(buffer, 4 * this.size).asIntBuffer();
+        this.offsets = slice(buffer, 4 * (this.size + 1)).asIntBuffer();
+        this.sorted = slice(buffer, 4 * this.size).asIntBuffer();
+        this.blob = slice(buffer, blobLength);
+    }
+
+    /** Memory-maps a binary vocab file. */
+    public static BinaryVocabFile open(Path path) throws IOException, VocabFile.InvalidVocabFileException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new BinaryVocabFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static BinaryVocabFile wrap(ByteBuffer buffer) throws VocabFile.InvalidVocabFileException {
+        return new BinaryVocabFile(buffer);
+    }
+
+    /** Writes vocab in the binary format. */
+    public static void write(Vocab vocab, OutputStream out) throws IOException {
+        final int n = vocab.size();
+        final byte[][] words = new byte[n][];
+        final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        final int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            words[i] = vocab.getWord(i).getBytes(StandardCharsets.UTF_8);
+            offsets[i] = blob.size();
+            blob.write(words[i]);
+        }
+        offsets[n] = blob.size();
+
+        // On duplicate words the later index sorts first, so it wins, as in VocabFile
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.<Integer, byte[]>comparing(i -> words[i], BinaryVocabFile::compareUnsigned)
+                .thenComparing(Comparator.reverseOrder()));
+
+        final ByteBuffer ints = ByteBuffer.allocate(4 * (3 * n + 1) + 8).order(ByteOrder.LITTLE_ENDIAN);
+        ints.putInt(n);
+        ints.putInt(blob.size());
+        for (int i = 0; i < n; i++)
+            ints.putInt(vocab.getCount(i));
+        for (int offset : offsets)
+            ints.putInt(offset);
+        for (Integer index : order)
+            ints.putInt(index);
+
+        final DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        dataOut.write(MAGIC);
+        dataOut.write(ints.array());
+        blob.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getWordIndex(String word) {
+        final byte[] utf8 = word.getBytes(StandardCharsets.UTF_8);
+        return getWordIndex(utf8, 0, utf8.length);
+    }
+
+    /** Looks up a word given as UTF-8 bytes; allocates nothing. */
+    public int getWordIndex(byte[] utf8, int offset, int length) {
+        int lo = 0, hi = this.size;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (compareWord(this.sorted.get(mid), utf8, offset, length) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        if (lo < this.size) {
+            final int index = this.sorted.get(lo);
+            if (compareWord(index, utf8, offset, length) == 0)
+                return index;
+        }
+        return UNKNOWN_INDEX;
+    }
+
+    public String getWord(int index) {
+        checkIndex(index);
+        final int start = this.offsets.get(index);
+        final byte[] utf8 = new byte[this.offsets.get(index + 1) - start];
+        final ByteBuffer word = this.blob.duplicate();
+        word.position(start);
+        word.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    public int getCount(int index) {
+        checkIndex(index);
+        return this.counts.get(index);
+    }
+
+    // Unsigned lexicographic comparison of word `index` against utf8[offset, offset + length)
+    private int compareWord(int index, byte[] utf8, int offset, int length) {
+        final int start = this.offsets.get(index);
+        final int wordLength = this.offsets.get(index + 1) - start;
+        final int common = Math.min(wordLength, length);
+        for (int i = 0; i < common; i++) {
+            final int cmp = (this.blob.get(start + i) & 0xff) - (utf8[offset + i] & 0xff);
+            if (cmp != 0)
+                return cmp;
+        }
+        return wordLength - length;
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        final int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            final int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0)
+                return cmp;
+        }
+        return a.length - b.length;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException("word index " + index + " of " + this.size);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        final ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,30 @@
+package javasrcminer;
+
+import java.util.zip.Deflater;
+
+/**
+ * CompressionOptions
+ *
+ * How a VFS should compress what it writes. Only GzipTarballVFS uses these;
+ * with more than one thread it compresses blocks in parallel.
+ */
+final class CompressionOptions {
+    public static final CompressionOptions DEFAULT =
+            new CompressionOptions(Deflater.DEFAULT_COMPRESSION, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE, 1);
+
+    public final int level;
+    public final int blockSize;
+    public final int threads;
+
+    public CompressionOptions(int level, int blockSize, int threads) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("compression level must be in [-1, 9]; got " + level);
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("block size must be positive; got " + blockSize);
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive; got " + threads);
+        this.level = level;
+        this.blockSize = blockSize;
+        this.threads = threads;
+    }
+}
@@ -0,0 +1,276 @@
+package javasrcminer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToIntFunction;
+
+/**
+ * CooccurrenceMatrix
+ *
+ * A sparse, symmetric co-occurrence matrix on disk, holding only the upper
+ * triangle (row &lt;= column) in row-major order. Little-endian throughout:
+ *
+ * <pre>
+ *   magic        "COOC"
+ *   vocabSize    int32, rows and columns
+ *   windowSize   int32
+ *   reserved     int32, 0
+ *   entryCount   int64
+ *   entries      entryCount x (row int32, column int32, count int64)
+ * </pre>
+ *
+ * so numpy.fromfile(path, dtype=[('row', '&lt;i4'), ('col', '&lt;i4'),
+ * ('count', '&lt;i8')], offset=24) reads the entries as-is. Matrices are
+ * built by k-way merging PairCounter runs.
+ */
+final class CooccurrenceMatrix {
+
+    static final byte[] MAGIC = { 'C', 'O', 'O', 'C' };
+    static final int HEADER_BYTES = 24;
+    static final int ENTRY_BYTES = 16;
+
+    // Runs open at once while merging; more are merged in passes
+    private static final int MAX_MERGE_FAN_IN = 128;
+
+    private static final int RUN_BUFFER_BYTES = 1 << 16;
+
+    private CooccurrenceMatrix() {
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(int row, int column, long count) throws IOException;
+    }
+
+    /**
+     * Counts the windowed pairs of one subtoken document as coocc_fast's
+     * doc_to_pairs does: windows don't cross lines, and every in-vocab
+     * subtoken pairs with each other in-vocab subtoken within window
+     * positions of it, so each pair is counted once from either end. Pairs
+     * are counted as (smaller id, larger id).
+     */
+    public static void countDocument(CharSequence doc, ToIntFunction<String> vocabIndex, int window,
+                                     PairCounter counter) throws IOException {
+        int[] ids = new int[64];
+        int n = 0;
+        int tokenStart = -1;
+        for (int i = 0; i <= doc.length(); i++) {
+            final char ch = i < doc.length() ? doc.charAt(i) : '\n';
+            final boolean lineBreak = isLineBreak(ch);
+            if (lineBreak || isSpace(ch)) {
+                if (tokenStart >= 0) {
+                    if (n == ids.length)
+                        ids = Arrays.copyOf(ids, n * 2);
+                    ids[n++] = vocabIndex.applyAsInt(doc.subSequence(tokenStart, i).toString());
+                    tokenStart = -1;
+                }
+                if (lineBreak) {
+                    countLine(ids, n, window, counter);
+                    n = 0;
+                }
+            } else if (tokenStart < 0) {
+                tokenStart = i;
+            }
+        }
+    }
+
+    private static void countLine(int[] ids, int n, int window, PairCounter counter) throws IOException {
+        for (int pos = 0; pos < n; pos++) {
+            final int y = ids[pos];
+            if (y < 0)
+                continue;
+            final int end = (int) Math.min(n - 1, (long) pos + window);
+            for (int i = Math.max(0, pos - window); i <= end; i++) {
+                final int x = ids[i];
+                if (i != pos && x >= 0)
+                    counter.increment(Math.min(x, y), Math.max(x, y));
+            }
+        }
+    }
+
+    // Python's str.splitlines boundaries
+    private static boolean isLineBreak(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u000b' || ch == '\u000c' || (ch >= '\u001c' && ch <= '\u001e')
+                || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+    }
+
+    // Python's str.split whitespace, which also splits on no-break spaces
+    private static boolean isSpace(char ch) {
+        return Character.isWhitespace(ch) || ch == '\u0085' || ch == '\u00a0' || ch == '\u2007' || ch == '\u202f';
+    }
+
+    /**
+     * Merges sorted runs, summing counts of equal pairs, into a matrix at
+     * out and returns its entry count. The runs are deleted.
+     */
+    public static long merge(List<Path> runs, Path out, int vocabSize, int windowSize, Path scratchDirectory) throws IOException {
+        // Keep the fan-in (and so open files and buffer memory) bounded
+        List<Path> pending = new ArrayList<>(runs);
+        while (pending.size() > MAX_MERGE_FAN_IN) {
+            final List<Path> merged = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i += MAX_MERGE_FAN_IN) {
+                final List<Path> group = pending.subList(i, Math.min(pending.size(), i + MAX_MERGE_FAN_IN));
+                final Path run = Files.createTempFile(scratchDirectory, "coocc-run-", ".bin");
+                try (FileChannel channel = FileChannel.open(run, StandardOpenOption.WRITE)) {
+                    final EntryWriter writer = new EntryWriter(channel, ByteOrder.BIG_ENDIAN, true);
+                    mergeRuns(group, (row, column, count) -> writer.write(row, column, count));
+                    writer.flush();
+                }
+                merged.add(run);
+            }
+            pending = merged;
+        }
+
+        try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.position(HEADER_BYTES);
+            final EntryWriter writer = new EntryWriter(channel, ByteOrder.LITTLE_ENDIAN, false);
+            mergeRuns(pending, (row, column, count) -> writer.write(row, column, count));
+            writer.flush();
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putInt(vocabSize).putInt(windowSize).putInt(0).putLong(writer.entries);
+            header.flip();
+            channel.write(header, 0);
+            return writer.entries;
+        }
+    }
+
+    /** Streams the entries of the matrix at path, in order. */
+    public static void read(Path path, EntryConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(RUN_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, buffer, HEADER_BYTES);
+            final byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IOException(path + " is not a co-occurrence matrix");
+            buffer.position(buffer.position() + 12);
+            final long entries = buffer.getLong();
+            if (channel.size() != HEADER_BYTES + entries * ENTRY_BYTES)
+                throw new IOException(path + " has the wrong length");
+
+            for (long remaining = entries; remaining > 0; ) {
+                final int batch = (int) Math.min(remaining, RUN_BUFFER_BYTES / ENTRY_BYTES);
+                readFully(channel, buffer, batch * ENTRY_BYTES);
+                for (int i = 0; i < batch; i++)
+                    consumer.accept(buffer.getInt(), buffer.getInt(), buffer.getLong());
+                remaining -= batch;
+            }
+        }
+    }
+
+    private static void mergeRuns(List<Path> runs, EntryConsumer consumer) throws IOException {
+        final PriorityQueue<RunReader> heap = new PriorityQueue<>(Math.max(1, runs.size()),
+                (a, b) -> Long.compare(a.key, b.key));
+        try {
+            for (Path run : runs) {
+                final RunReader reader = new RunReader(run);
+                if (reader.advance())
+                    heap.add(reader);
+                else
+                    reader.close();
+            }
+
+            while (!heap.isEmpty()) {
+                RunReader reader = heap.poll();
+                final long key = reader.key;
+                long count = 0;
+                while (true) {
+                    count += reader.count;
+                    if (reader.advance())
+                        heap.add(reader);
+                    else
+                        reader.close();
+                    if (heap.isEmpty() || heap.peek().key != key)
+                        break;
+                    reader = heap.poll();
+                }
+                consumer.accept(PairCounter.row(key), PairCounter.column(key), count);
+            }
+        } finally {
+            for (RunReader reader : heap)
+                reader.close();
+        }
+        for (Path run : runs)
+            Files.deleteIfExists(run);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new IOException("unexpected end of co-occurrence matrix");
+        }
+        buffer.flip();
+    }
+
+    private static final class RunReader implements Closeable {
+        private final DataInputStream in;
+        private long remaining;
+        long key;
+        long count;
+
+        RunReader(Path run) throws IOException {
+            this.remaining = Files.size(run) / ENTRY_BYTES;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), RUN_BUFFER_BYTES));
+        }
+
+        boolean advance() throws IOException {
+            if (this.remaining == 0)
+                return false;
+            this.remaining--;
+            this.key = this.in.readLong();
+            this.count = this.in.readLong();
+            return true;
+        }
+
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    // Buffers entries, either as a run (packed key, count) or as matrix entries
+    private static final class EntryWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final boolean asRun;
+        long entries = 0;
+
+        EntryWriter(FileChannel channel, ByteOrder order, boolean asRun) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(RUN_BUFFER_BYTES).order(order);
+            this.asRun = asRun;
+        }
+
+        void write(int row, int column, long count) throws IOException {
+            if (this.buffer.remaining() < ENTRY_BYTES)
+                flush();
+            if (this.asRun)
+                this.buffer.putLong(PairCounter.key(row, column));
+            else
+                this.buffer.putInt(row).putInt(column);
+            this.buffer.putLong(count);
+            this.entries++;
+        }
+
+        void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining())
+                this.channel.write(this.buffer);
+            this.buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package javasrcminer;
+
+import com.beust.jcommander.IStringConverter;
+import com.beust.jcommander.ParameterException;
+
+import java.io.File;
+import java.nio.file.Path;
+
+/**
+ * CorpusShard
+ *
+ * One of n deterministic slices of a corpus, given as --shard i/n with
+ * 0 <= i < n, to spread a run over machines that share nothing. A file
+ * belongs to the slice its path hashes to, the path taken relative to the
+ * input path it was found under (or its name inside an archive), so every
+ * worker splits the corpus the same way wherever it's mounted and the n
+ * slices cover each file exactly once.
+ */
+final class CorpusShard {
+
+    public static final CorpusShard ALL = new CorpusShard(0, 1);
+
+    public final int index;
+    public final int count;
+
+    public CorpusShard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count)
+            throw new IllegalArgumentException(String.format("shard must be i/n with 0 <= i < n; got %d/%d", index, count));
+        this.index = index;
+        this.count = count;
+    }
+
+    /** Parses "i/n". */
+    public static CorpusShard parse(String s) {
+        final int slash = s.indexOf('/');
+        if (slash < 0)
+            throw new IllegalArgumentException("shard must be i/n; got " + s);
+        try {
+            return new CorpusShard(Integer.parseInt(s.substring(0, slash).trim()), Integer.parseInt(s.substring(slash + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("shard must be i/n; got " + s);
+        }
+    }
+
+    public boolean isAll() {
+        return this.count == 1;
+    }
+
+    public boolean contains(String key) {
+        return Long.remainderUnsigned(hash(key), this.count) == this.index;
+    }
+
+    // FNV-1a over the chars, then a finalizer so the low bits are well mixed; stable across JVMs
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /** The name file is sharded by: its path under root, with / separators. */
+    static String key(InputFile file, Path root) {
+        if (!(file instanceof DiskInputFile))
+            return file.getPath();
+        final Path path = ((DiskInputFile) file).getFile().toPath().toAbsolutePath().normalize();
+        final Path relative = root.toAbsolutePath().normalize().relativize(path);
+        final String key = relative.toString().isEmpty() ? String.valueOf(path.getFileName()) : relative.toString();
+        return File.separatorChar == '/' ? key : key.replace(File.separatorChar, '/');
+    }
+
+    /** vfs as seen by this shard: only the files in it, if it isn't the whole corpus. */
+    public VFS select(VFS vfs, Path root) {
+        return isAll() ? vfs : new CorpusShardVFS(vfs, this, root);
+    }
+
+    @Override
+    public String toString() {
+        return this.index + "/" + this.count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CorpusShard && ((CorpusShard) o).index == this.index && ((CorpusShard) o).count == this.count;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.index + this.count;
+    }
+
+    public static final class Converter implements IStringConverter<CorpusShard> {
+        @Override
+        public CorpusShard convert(String value) {
+            try {
+                return parse(value);
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException(e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package javasrcminer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * CorpusShardVFS
+ *
+ * Wraps a VFS so its crawl only hands out the files of one CorpusShard.
+ * Files are chosen by name alone, so nothing outside the shard is read.
+ */
+final class CorpusShardVFS implements VFS {
+
+    private final VFS inner;
+    private final CorpusShard shard;
+    private final Path root;
+
+    public CorpusShardVFS(VFS inner, CorpusShard shard, Path root) {
+        assert inner != null;
+        assert shard != null;
+        assert root != null;
+        this.inner = inner;
+        this.shard = shard;
+        this.root = root;
+    }
+
+    public void close() throws Exception {
+        this.inner.close();
+    }
+
+    public boolean prepareOutputDirectory() throws IOException {
+        return this.inner.prepareOutputDirectory();
+    }
+
+    public void unlinkDirectoryIfEmpty() throws IOException {
+        this.inner.unlinkDirectoryIfEmpty();
+    }
+
+    public void forEachFile(String ext, Consumer<InputFile> it) throws IOException {
+        this.inner.forEachFile(ext, file -> {
+            if (this.shard.contains(CorpusShard.key(file, this.root)))
+                it.accept(file);
+        });
+    }
+
+    public void writeFile(String path, byte[] bytes) throws IOException {
+        this.inner.writeFile(path, bytes);
+    }
+
+    public OutputStream openFile(String path, long length) throws IOException {
+        return this.inner.openFile(path, length);
+    }
+}
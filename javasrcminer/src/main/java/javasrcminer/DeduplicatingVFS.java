@@ -0,0 +1,59 @@
+package javasrcminer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * DeduplicatingVFS
+ *
+ * Wraps a VFS so its crawl only hands out files a DuplicateFilter accepts.
+ * Share one filter between the VFSs of a run to deduplicate across all of
+ * its inputs. Files that can't be read are passed through for the caller to
+ * report.
+ */
+final class DeduplicatingVFS implements VFS {
+
+    private final VFS inner;
+    private final DuplicateFilter filter;
+
+    public DeduplicatingVFS(VFS inner, DuplicateFilter filter) {
+        assert inner != null;
+        assert filter != null;
+        this.inner = inner;
+        this.filter = filter;
+    }
+
+    public void close() throws Exception {
+        this.inner.close();
+    }
+
+    public boolean prepareOutputDirectory() throws IOException {
+        return this.inner.prepareOutputDirectory();
+    }
+
+    public void unlinkDirectoryIfEmpty() throws IOException {
+        this.inner.unlinkDirectoryIfEmpty();
+    }
+
+    public void forEachFile(String ext, Consumer<InputFile> it) throws IOException {
+        this.inner.forEachFile(ext, file -> {
+            boolean keep;
+            try {
+                keep = this.filter.accept(file);
+            } catch (IOException e) {
+                keep = true;
+            }
+            if (keep)
+                it.accept(file);
+        });
+    }
+
+    public void writeFile(String path, byte[] bytes) throws IOException {
+        this.inner.writeFile(path, bytes);
+    }
+
+    public OutputStream openFile(String path, long length) throws IOException {
+        return this.inner.openFile(path, length);
+    }
+}
@@ -0,0 +1,195 @@
+package javasrcminer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * DirectoryWalker
+ *
+ * Finds the regular files with a given extension under a directory, handing
+ * each one over as soon as it's found, in exactly the order Files.walk
+ * would (depth first, directory entries in listing order, symbolic links to
+ * directories not followed). Nothing is collected, so memory stays flat
+ * however big the tree.
+ *
+ * With more than one thread, the listings of the directories coming up in
+ * the walk (with the attribute reads for their entries) run ahead on a
+ * pool, which hides the latency of network and other slow filesystems. Only
+ * a bounded number of listings are held ahead of the walk at a time.
+ */
+final class DirectoryWalker {
+
+    @FunctionalInterface
+    interface FileCallback {
+        void accept(Path file) throws InterruptedException;
+    }
+
+    private static final int LISTINGS_AHEAD_PER_THREAD = 16;
+
+    private final int threads;
+
+    public DirectoryWalker(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive; got " + threads);
+        this.threads = threads;
+    }
+
+    public void walk(Path root, String ext, FileCallback it) throws IOException, InterruptedException {
+        if (this.threads == 1)
+            walkSequentially(root, ext, it);
+        else
+            walkAhead(root, ext, it);
+    }
+
+    private static boolean hasExtension(Path path, String ext) {
+        final Path name = path.getFileName();
+        return name != null && name.toString().toLowerCase().endsWith(ext);
+    }
+
+    private static void walkSequentially(Path root, String ext, FileCallback it) throws IOException, InterruptedException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            final Iterator<Path> iterator = paths.iterator();
+            while (iterator.hasNext()) {
+                final Path path = iterator.next();
+                if (hasExtension(path, ext) && Files.isRegularFile(path))
+                    it.accept(path);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void walkAhead(Path root, String ext, FileCallback it) throws IOException, InterruptedException {
+        final ExecutorService listers = Executors.newFixedThreadPool(this.threads, r -> {
+            final Thread thread = new Thread(r, "directory-lister");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Semaphore ahead = new Semaphore(this.threads * LISTINGS_AHEAD_PER_THREAD);
+        try {
+            final Entry top = Entry.of(root);
+            if (!top.directory) {
+                if (top.isRegularFile() && hasExtension(root, ext))
+                    it.accept(root);
+                return;
+            }
+
+            final Deque<Listing> stack = new ArrayDeque<>();
+            stack.push(new Listing(list(root)));
+            while (!stack.isEmpty()) {
+                prefetch(stack, listers, ahead);
+                final Listing listing = stack.peek();
+                if (listing.next == listing.entries.size()) {
+                    stack.pop();
+                    continue;
+                }
+                final Entry entry = listing.entries.get(listing.next);
+                // Let go of entries already walked past
+                listing.entries.set(listing.next++, null);
+                if (entry.directory)
+                    stack.push(new Listing(entry.takeListing(ahead)));
+                else if (hasExtension(entry.path, ext) && entry.isRegularFile())
+                    it.accept(entry.path);
+            }
+        } finally {
+            listers.shutdownNow();
+        }
+    }
+
+    // Starts listings for the next directories of the walk, nearest first, while there's room
+    private static void prefetch(Deque<Listing> stack, ExecutorService listers, Semaphore ahead) {
+        for (Listing listing : stack) {
+            while (listing.prefetched < listing.entries.size()) {
+                if (ahead.availablePermits() == 0)
+                    return;
+                final Entry entry = listing.entries.get(listing.prefetched);
+                if (entry != null && entry.directory && entry.listing == null) {
+                    if (!ahead.tryAcquire())
+                        return;
+                    entry.listing = listers.submit(() -> list(entry.path));
+                }
+                listing.prefetched++;
+            }
+        }
+    }
+
+    private static List<Entry> list(Path directory) throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream)
+                entries.add(Entry.of(path));
+        }
+        return entries;
+    }
+
+    private static final class Listing {
+        final List<Entry> entries;
+        int next = 0;
+        int prefetched = 0;
+
+        Listing(List<Entry> entries) {
+            this.entries = entries;
+        }
+    }
+
+    private static final class Entry {
+        final Path path;
+        final boolean directory;
+        final boolean symbolicLink;
+        final boolean regularFile;
+        Future<List<Entry>> listing = null;
+
+        private Entry(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.directory = attributes.isDirectory();
+            this.symbolicLink = attributes.isSymbolicLink();
+            this.regularFile = attributes.isRegularFile();
+        }
+
+        // Links aren't followed to walk, only to tell whether they lead to a file, as with Files.walk
+        static Entry of(Path path) throws IOException {
+            return new Entry(path, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        }
+
+        boolean isRegularFile() {
+            return this.regularFile || (this.symbolicLink && Files.isRegularFile(this.path));
+        }
+
+        List<Entry> takeListing(Semaphore ahead) throws IOException, InterruptedException {
+            final Future<List<Entry>> future = this.listing;
+            if (future == null)
+                return list(this.path);
+            this.listing = null;
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IOException(cause);
+            } finally {
+                ahead.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package javasrcminer;
+
+import polyglot.frontend.Source;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * DiskInputFile
+ *
+ * An InputFile backed by a regular file on disk.
+ */
+final class DiskInputFile implements InputFile {
+
+    private final File file;
+
+    public DiskInputFile(File file) {
+        assert file != null;
+        this.file = file;
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    @Override
+    public String getPath() {
+        return this.file.getPath();
+    }
+
+    @Override
+    public String getCanonicalPath() throws IOException {
+        return this.file.getCanonicalPath();
+    }
+
+    @Override
+    public Source toSource() {
+        return new DummyFileObject(this.file.toURI());
+    }
+
+    @Override
+    public InputStreamReader openReader() throws IOException {
+        return new FileReader(this.file);
+    }
+
+    public InputStream openStream() throws IOException {
+        return new FileInputStream(this.file);
+    }
+
+    @Override
+    public long size() {
+        return this.file.length();
+    }
+}
@@ -0,0 +1,303 @@
+package javasrcminer;
+
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * DuplicateFilter
+ *
+ * Decides, file by file in crawl order, whether a source file repeats one
+ * seen earlier, so forks, vendored libraries and copied boilerplate are
+ * parsed (and counted) once. Exact duplicates are found by a 128-bit
+ * content hash. Optionally, near duplicates are found by MinHash over
+ * token shingles: a file whose estimated Jaccard similarity to an earlier
+ * one reaches the threshold is dropped too. Candidates come from LSH bands,
+ * so only a handful of earlier files are compared against each new one.
+ *
+ * Memory is fixed up front. Once a table fills, new files are no longer
+ * remembered (later copies of them get through), but nothing is ever
+ * dropped wrongly because of it. Not thread-safe; the crawl that feeds it
+ * is sequential, which also makes the kept copy always the first crawled.
+ */
+final class DuplicateFilter {
+
+    // Near duplicates: SIGNATURE_SIZE hashes in BANDS bands of ROWS
+    static final int SHINGLE_TOKENS = 5;
+    static final int BANDS = 16;
+    static final int ROWS = 4;
+    static final int SIGNATURE_SIZE = BANDS * ROWS;
+
+    // Table slots are kept at most half full
+    private static final int EXACT_BYTES_PER_FILE = 2 * 16;
+    private static final int NEAR_BYTES_PER_FILE = SIGNATURE_SIZE * 4 + 2 * BANDS * (8 + 4);
+
+    private static final long[] MULTIPLIERS = new long[SIGNATURE_SIZE];
+    private static final long[] INCREMENTS = new long[SIGNATURE_SIZE];
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            MULTIPLIERS[i] = mix64(seed += 0x9E3779B97F4A7C15L) | 1;
+            INCREMENTS[i] = mix64(seed += 0x9E3779B97F4A7C15L);
+        }
+    }
+
+    // Exact: open-addressed set of (hi, lo) hashes; (0, 0) marks an empty slot
+    private final long[] exactHi;
+    private final long[] exactLo;
+    private final int exactMask;
+    private final int exactMaxSize;
+    private int exactSize = 0;
+
+    // Near: stored signatures, and band hash -> first file with that band
+    private final double threshold;
+    private final int[] signatures;
+    private final int maxSignatures;
+    private int signatureCount = 0;
+    private final long[] bandKeys;
+    private final int[] bandFiles;
+    private final int bandMask;
+    private final int[] signature = new int[SIGNATURE_SIZE];
+    private final long[] bandHashes = new long[BANDS];
+    private long[] tokens = new long[1024];
+
+    private long bytesKept = 0;
+    private long exactDuplicates = 0;
+    private long nearDuplicates = 0;
+    private long bytesSkipped = 0;
+    private boolean full = false;
+
+    /**
+     * A filter using at most about maxBytes. A nearThreshold in (0, 1] also
+     * drops near duplicates at that similarity; 0 drops only exact ones.
+     */
+    public DuplicateFilter(long maxBytes, double nearThreshold) {
+        if (nearThreshold < 0 || nearThreshold > 1)
+            throw new IllegalArgumentException("threshold must be between 0 and 1; got " + nearThreshold);
+        this.threshold = nearThreshold;
+        final boolean near = nearThreshold > 0;
+        final long files = Math.max(16, maxBytes / (EXACT_BYTES_PER_FILE + (near ? NEAR_BYTES_PER_FILE : 0)));
+
+        final int exactCapacity = tableSize(files);
+        this.exactHi = new long[exactCapacity];
+        this.exactLo = new long[exactCapacity];
+        this.exactMask = exactCapacity - 1;
+        this.exactMaxSize = exactCapacity / 2;
+
+        if (near) {
+            this.maxSignatures = (int) Math.min(files, Integer.MAX_VALUE / SIGNATURE_SIZE);
+            this.signatures = new int[this.maxSignatures * SIGNATURE_SIZE];
+            final int bandCapacity = tableSize((long) this.maxSignatures * BANDS);
+            this.bandKeys = new long[bandCapacity];
+            this.bandFiles = new int[bandCapacity];
+            this.bandMask = bandCapacity - 1;
+        } else {
+            this.maxSignatures = 0;
+            this.signatures = null;
+            this.bandKeys = null;
+            this.bandFiles = null;
+            this.bandMask = 0;
+        }
+    }
+
+    // Power of two at least twice n, within array limits
+    private static int tableSize(long n) {
+        int size = 16;
+        while (size < 2 * n && size < (1 << 30))
+            size <<= 1;
+        return size;
+    }
+
+    /** Reads file and returns true if it's the first copy seen (and should be processed). */
+    public boolean accept(InputFile file) throws IOException {
+        final byte[] contents;
+        if (file instanceof MemoryInputFile) {
+            contents = ((MemoryInputFile) file).getContents();
+        } else {
+            try (InputStream in = file.openStream()) {
+                contents = IOUtils.toByteArray(in);
+            }
+        }
+        return accept(contents);
+    }
+
+    /** As accept(InputFile), for contents already in memory. */
+    public boolean accept(byte[] contents) {
+        if (!acceptExact(contents)) {
+            this.exactDuplicates++;
+            this.bytesSkipped += contents.length;
+            return false;
+        }
+        if (this.signatures != null && !acceptNear(contents)) {
+            this.nearDuplicates++;
+            this.bytesSkipped += contents.length;
+            return false;
+        }
+        this.bytesKept += contents.length;
+        return true;
+    }
+
+    private boolean acceptExact(byte[] contents) {
+        long hi = hash(contents, 0x5bd1e9955bd1e995L);
+        long lo = hash(contents, 0xc2b2ae3d27d4eb4fL);
+        if (hi == 0 && lo == 0)
+            lo = 1;
+        int slot = (int) lo & this.exactMask;
+        while (this.exactHi[slot] != 0 || this.exactLo[slot] != 0) {
+            if (this.exactHi[slot] == hi && this.exactLo[slot] == lo)
+                return false;
+            slot = (slot + 1) & this.exactMask;
+        }
+        if (this.exactSize < this.exactMaxSize) {
+            this.exactHi[slot] = hi;
+            this.exactLo[slot] = lo;
+            this.exactSize++;
+        } else {
+            this.full = true;
+        }
+        return true;
+    }
+
+    private boolean acceptNear(byte[] contents) {
+        computeSignature(contents, this.signature);
+
+        // Compare against the first file remembered for each of this file's bands
+        for (int band = 0; band < BANDS; band++) {
+            this.bandHashes[band] = bandHash(band);
+            final int slot = bandSlot(this.bandHashes[band]);
+            if (this.bandKeys[slot] != 0 && similarity(this.bandFiles[slot]) >= this.threshold)
+                return false;
+        }
+
+        if (this.signatureCount == this.maxSignatures) {
+            this.full = true;
+            return true;
+        }
+        final int id = this.signatureCount++;
+        System.arraycopy(this.signature, 0, this.signatures, id * SIGNATURE_SIZE, SIGNATURE_SIZE);
+        for (int band = 0; band < BANDS; band++) {
+            final int slot = bandSlot(this.bandHashes[band]);
+            if (this.bandKeys[slot] == 0) {
+                this.bandKeys[slot] = this.bandHashes[band];
+                this.bandFiles[slot] = id;
+            }
+        }
+        return true;
+    }
+
+    private long bandHash(int band) {
+        long key = mix64(band + 1);
+        for (int row = 0; row < ROWS; row++)
+            key = mix64(key ^ (this.signature[band * ROWS + row] & 0xffffffffL));
+        return key == 0 ? 1 : key;
+    }
+
+    // The slot holding key, or the empty slot where it would go
+    private int bandSlot(long key) {
+        int slot = (int) key & this.bandMask;
+        while (this.bandKeys[slot] != 0 && this.bandKeys[slot] != key)
+            slot = (slot + 1) & this.bandMask;
+        return slot;
+    }
+
+    // Estimated Jaccard similarity of the current signature to a stored one
+    private double similarity(int id) {
+        final int base = id * SIGNATURE_SIZE;
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (this.signatures[base + i] == this.signature[i])
+                equal++;
+        }
+        return equal / (double) SIGNATURE_SIZE;
+    }
+
+    /**
+     * The MinHash signature of contents' token shingles. Tokens are runs of
+     * identifier characters (any non-ASCII byte counts as one) or single
+     * other non-space characters, so layout and whitespace don't matter.
+     */
+    void computeSignature(byte[] contents, int[] out) {
+        int n = 0;
+        int i = 0;
+        while (i < contents.length) {
+            final int b = contents[i] & 0xff;
+            if (b <= ' ') {
+                i++;
+                continue;
+            }
+            long h = 0xcbf29ce484222325L;
+            if (isIdentifierByte(b)) {
+                while (i < contents.length && isIdentifierByte(contents[i] & 0xff))
+                    h = (h ^ contents[i++]) * 0x100000001b3L;
+            } else {
+                h = (h ^ contents[i++]) * 0x100000001b3L;
+            }
+            if (n == this.tokens.length)
+                this.tokens = Arrays.copyOf(this.tokens, n * 2);
+            this.tokens[n++] = h;
+        }
+
+        Arrays.fill(out, -1);
+        final int shingles = Math.max(1, n - SHINGLE_TOKENS + 1);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = 0;
+            for (int t = start; t < Math.min(n, start + SHINGLE_TOKENS); t++)
+                shingle = mix64(shingle ^ this.tokens[t]);
+            for (int k = 0; k < SIGNATURE_SIZE; k++) {
+                final int value = (int) ((shingle * MULTIPLIERS[k] + INCREMENTS[k]) >>> 32);
+                if (Integer.compareUnsigned(value, out[k]) < 0)
+                    out[k] = value;
+            }
+        }
+    }
+
+    private static boolean isIdentifierByte(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '_' || b == '$' || b >= 0x80;
+    }
+
+    // Reads 8 bytes at a time, little-endian, into a murmur-style accumulator
+    private static long hash(byte[] data, long seed) {
+        long h = seed ^ (data.length * 0x9E3779B97F4A7C15L);
+        int i = 0;
+        for (; i + 8 <= data.length; i += 8) {
+            long k = (data[i] & 0xffL) | (data[i + 1] & 0xffL) << 8 | (data[i + 2] & 0xffL) << 16
+                    | (data[i + 3] & 0xffL) << 24 | (data[i + 4] & 0xffL) << 32 | (data[i + 5] & 0xffL) << 40
+                    | (data[i + 6] & 0xffL) << 48 | (data[i + 7] & 0xffL) << 56;
+            h = Long.rotateLeft(h ^ mix64(k), 27) * 0x87c37b91114253d5L + 0x52dce729;
+        }
+        long k = 0;
+        for (int shift = 0; i < data.length; i++, shift += 8)
+            k |= (data[i] & 0xffL) << shift;
+        return mix64(h ^ mix64(k));
+    }
+
+    static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    public long exactDuplicates() {
+        return this.exactDuplicates;
+    }
+
+    public long nearDuplicates() {
+        return this.nearDuplicates;
+    }
+
+    /**
+     * Summarizes what was skipped. Parse time saved is estimated from
+     * parseNanos, the time spent parsing the files that were kept, assuming
+     * it scales with file size.
+     */
+    public String report(long parseNanos) {
+        final double savedSeconds = this.bytesKept == 0 ? 0 : parseNanos / 1e9 * this.bytesSkipped / this.bytesKept;
+        return String.format("DUPLICATES SKIPPED: %d exact, %d near (%.1f MiB of %.1f MiB); about %.1f s of parsing saved%s",
+                this.exactDuplicates, this.nearDuplicates, this.bytesSkipped / 1048576.0,
+                (this.bytesSkipped + this.bytesKept) / 1048576.0, savedSeconds,
+                this.full ? "; memory cap reached, so some later duplicates were kept" : "");
+    }
+}
@@ -2,20 +2,35 @@ package javasrcminer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class FilesystemVFS implements VFS {
 
+    private static final int CRAWL_AHEAD_FILES = 4096;
+    private static final File END_OF_CRAWL = new File("");
+
     private Path root = null;
+    private final int crawlThreads;
 
     public FilesystemVFS(Path root) {
+        this(root, 1);
+    }
+
+    /** crawlThreads directory listings may run at once, for slow (say, network) filesystems. */
+    public FilesystemVFS(Path root, int crawlThreads) {
         assert root != null;
+        if (crawlThreads < 1)
+            throw new IllegalArgumentException("crawl threads must be positive; got " + crawlThreads);
         this.root = root;
+        this.crawlThreads = crawlThreads;
     }
 
     public void close() {}
@@ -23,7 +38,7 @@ public class FilesystemVFS implements VFS {
     public boolean prepareOutputDirectory() throws IOException {
         boolean outExists = Files.exists(this.root);
         if (outExists) {
-            if (Files.list(this.root).findAny().isPresent()) {
+            if (isNonEmptyDirectory(this.root)) {
                 System.err.printf("%s already exists and is non-empty", this.root.toAbsolutePath());
                 System.exit(2);
                 return false;
@@ -37,26 +52,80 @@ public class FilesystemVFS implements VFS {
     public void unlinkDirectoryIfEmpty() throws IOException {
         if (!Files.isDirectory(this.root, LinkOption.NOFOLLOW_LINKS))
             return;
-        if (Files.list(this.root).findAny().isPresent())
+        if (isNonEmptyDirectory(this.root))
             return;
         Files.deleteIfExists(this.root);
     }
-    public List<File> crawlJavaPathsFromDirectory(Path root, String ext) throws IOException {
-        return Files.walk(root)
-            .filter(Files::isRegularFile)
-            .filter(path -> path.getFileName().toString().toLowerCase().endsWith(ext))
-            .map(Path::toFile)
-            .collect(Collectors.toList());
+
+    private static boolean isNonEmptyDirectory(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.findAny().isPresent();
+        }
     }
-    
-    public void forEachFile(String ext, Consumer<File> it) throws IOException {
-        List<File> files = this.crawlJavaPathsFromDirectory(this.root, ext);
-        for (File file : files) {
-            it.accept(file);
+
+    /**
+     * Hands over each matching file as the crawl finds it, in Files.walk
+     * order. The directory walk runs on a separate crawler thread, at most
+     * CRAWL_AHEAD_FILES files ahead of the consumer, so the consumer starts
+     * at once and waits on the filesystem only when it catches up.
+     */
+    public void forEachFile(String ext, Consumer<InputFile> it) throws IOException {
+        final BlockingQueue<File> files = new ArrayBlockingQueue<>(CRAWL_AHEAD_FILES);
+        final Throwable[] crawlerFailure = new Throwable[1];
+        final Thread crawler = new Thread(() -> {
+            boolean consumerGone = false;
+            try {
+                new DirectoryWalker(this.crawlThreads).walk(this.root, ext, path -> files.put(path.toFile()));
+            } catch (InterruptedException e) {
+                // Consumer gave up early; nobody is waiting for the end marker
+                consumerGone = true;
+            } catch (Throwable t) {
+                // Even an Error must end the crawl, or the consumer waits forever
+                crawlerFailure[0] = t;
+            } finally {
+                if (!consumerGone) {
+                    try {
+                        files.put(END_OF_CRAWL);
+                    } catch (InterruptedException e) {
+                        // Consumer gave up early
+                    }
+                }
+            }
+        }, "crawler");
+        crawler.setDaemon(true);
+        crawler.start();
+
+        try {
+            while (true) {
+                final File file = files.take();
+                if (file == END_OF_CRAWL)
+                    break;
+                it.accept(new DiskInputFile(file));
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while crawling " + this.root);
+        } finally {
+            crawler.interrupt();
+            try {
+                crawler.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
+        final Throwable failure = crawlerFailure[0];
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
     }
     
     public void writeFile(String path, byte[] bytes) throws IOException {
         Files.write(this.root.resolve(path), bytes);
     }
+
+    public OutputStream openFile(String path, long length) throws IOException {
+        return Files.newOutputStream(this.root.resolve(path));
+    }
 }
\ No newline at end of file
@@ -1,34 +1,63 @@
 package javasrcminer;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.function.Consumer;
 
-import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.utils.IOUtils;
 
 public class GzipTarballVFS implements VFS {
 
+    // Entries decompressed ahead of the consumer; bounds memory held by the reader thread
+    private static final int READ_AHEAD_ENTRIES = 256;
+
+    // Marks the end of the entry stream on the read-ahead queue
+    private static final InputFile END_OF_ENTRIES = new MemoryInputFile("", "", new byte[0]);
+
     private Path path;
-    private TarArchiveInputStream inputStream;
+    private CompressionOptions compression;
+    private long maxEntryBytes;
     private TarArchiveOutputStream outputStream;
 
     public GzipTarballVFS(Path tarballPath) {
+        this(tarballPath, CompressionOptions.DEFAULT);
+    }
+
+    public GzipTarballVFS(Path tarballPath, CompressionOptions compression) {
+        this(tarballPath, compression, 0);
+    }
+
+    /**
+     * As GzipTarballVFS(tarballPath, compression), but entries over
+     * maxEntryBytes (0 for no limit) are skipped unread: forEachFile hands
+     * out an OversizedInputFile for each instead.
+     */
+    public GzipTarballVFS(Path tarballPath, CompressionOptions compression, long maxEntryBytes) {
         assert tarballPath.getFileName().toString().toLowerCase().endsWith(".tar.gz");
+        assert compression != null;
+        assert maxEntryBytes >= 0;
         this.path = tarballPath;
+        this.compression = compression;
+        this.maxEntryBytes = maxEntryBytes;
     }
 
     public void close() throws IOException {
-        if (this.inputStream != null) {
-            this.inputStream.close();
-        }
         if (this.outputStream != null) {
             this.outputStream.close();
         }
@@ -49,9 +78,75 @@ public class GzipTarballVFS implements VFS {
         }
     }
 
-    public void forEachFile(String ext, Consumer<File> it) throws IOException {
-        // TODO: Implement
-        assert false;
+    /**
+     * Streams each matching entry straight out of the tarball. Decompression
+     * and tar reading happen on a separate reader thread that runs ahead of
+     * the consumer, handing over entries already read into memory. Entries
+     * over the size limit are never read, so one huge entry can't exhaust
+     * memory and end the whole crawl.
+     */
+    public void forEachFile(String ext, Consumer<InputFile> it) throws IOException {
+        final BlockingQueue<InputFile> entries = new ArrayBlockingQueue<>(READ_AHEAD_ENTRIES);
+        final String containerPath = this.path.toAbsolutePath().toString();
+        final Throwable[] readerFailure = new Throwable[1];
+        final Thread reader = new Thread(() -> {
+            boolean consumerGone = false;
+            try (TarArchiveInputStream tarIn = new TarArchiveInputStream(new GzipCompressorInputStream(
+                    new BufferedInputStream(new FileInputStream(this.path.toFile())), true))) {
+                TarArchiveEntry entry;
+                while ((entry = tarIn.getNextTarEntry()) != null) {
+                    if (!entry.isFile() || !entry.getName().toLowerCase().endsWith(ext))
+                        continue;
+                    if (this.maxEntryBytes > 0 && entry.getSize() > this.maxEntryBytes) {
+                        entries.put(new OversizedInputFile(containerPath, entry.getName(), entry.getSize(), this.maxEntryBytes));
+                        continue;
+                    }
+                    final byte[] contents = IOUtils.toByteArray(tarIn);
+                    entries.put(new MemoryInputFile(containerPath, entry.getName(), contents));
+                }
+            } catch (InterruptedException e) {
+                // Consumer gave up early; nobody is waiting for the end marker
+                consumerGone = true;
+            } catch (Throwable t) {
+                // Even an Error (say OOM on a huge entry) must end the stream, or the consumer waits forever
+                readerFailure[0] = t;
+            } finally {
+                if (!consumerGone) {
+                    try {
+                        entries.put(END_OF_ENTRIES);
+                    } catch (InterruptedException e) {
+                        // Consumer gave up early
+                    }
+                }
+            }
+        }, "tarball-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            while (true) {
+                final InputFile file = entries.take();
+                if (file == END_OF_ENTRIES)
+                    break;
+                it.accept(file);
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while reading " + this.path);
+        } finally {
+            reader.interrupt();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        final Throwable failure = readerFailure[0];
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
     }
 
     public void writeFile(String path, byte[] bytes) throws IOException {
@@ -65,15 +160,44 @@ public class GzipTarballVFS implements VFS {
         this.outputStream.closeArchiveEntry();
     }
 
+    public OutputStream openFile(String path, long length) throws IOException {
+        openAsOutputFile();
+
+        TarArchiveEntry entry = new TarArchiveEntry(path);
+        entry.setSize(length);
+        this.outputStream.putArchiveEntry(entry);
+
+        // Closing ends the entry, not the archive
+        final TarArchiveOutputStream tarOut = this.outputStream;
+        return new FilterOutputStream(tarOut) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                tarOut.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                tarOut.closeArchiveEntry();
+            }
+        };
+    }
+
     private void openAsOutputFile() throws IOException {
         if (this.outputStream != null) {
             return;
         }
-        assert this.inputStream == null;
 
         FileOutputStream fileOut = new FileOutputStream(this.path.toString());
         BufferedOutputStream buffOut = new BufferedOutputStream(fileOut);
-        GzipCompressorOutputStream gzOut = new GzipCompressorOutputStream(buffOut);
+        OutputStream gzOut;
+        if (this.compression.threads > 1) {
+            gzOut = new ParallelGzipOutputStream(buffOut, this.compression.level,
+                    this.compression.blockSize, this.compression.threads);
+        } else {
+            GzipParameters parameters = new GzipParameters();
+            parameters.setCompressionLevel(this.compression.level);
+            gzOut = new GzipCompressorOutputStream(buffOut, parameters);
+        }
         this.outputStream = new TarArchiveOutputStream(gzOut);
     }
 }
\ No newline at end of file
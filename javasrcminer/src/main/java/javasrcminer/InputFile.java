@@ -0,0 +1,31 @@
+package javasrcminer;
+
+import polyglot.frontend.Source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * InputFile
+ *
+ * A source file handed out by VFS.forEachFile. It may live on disk or, for
+ * archives, only in memory.
+ */
+public interface InputFile {
+    /** Path used in messages; not necessarily openable on disk. */
+    String getPath();
+
+    /** Stable, unique name for the file, written into output headers. */
+    String getCanonicalPath() throws IOException;
+
+    Source toSource();
+
+    InputStreamReader openReader() throws IOException;
+
+    /** The raw bytes, for files that aren't source text. */
+    InputStream openStream() throws IOException;
+
+    /** Length in bytes. */
+    long size() throws IOException;
+}
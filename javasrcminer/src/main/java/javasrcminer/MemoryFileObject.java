@@ -0,0 +1,87 @@
+package javasrcminer;
+
+import com.ibm.wala.util.debug.UnimplementedError;
+import polyglot.frontend.Source;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+
+/**
+ * MemoryFileObject
+ *
+ * Like DummyFileObject, but for sources held in memory rather than at a
+ * file: URI. The URI uses the "mem" scheme and is only an identifier.
+ */
+final class MemoryFileObject extends SimpleJavaFileObject implements Source {
+
+    private String path;
+    private String fileName;
+    private byte[] contents;
+
+    public MemoryFileObject(String path, String entryPath, byte[] contents) {
+        super(toMemoryURI(entryPath), JavaFileObject.Kind.SOURCE);
+        this.path = path;
+        final int slash = entryPath.lastIndexOf('/');
+        this.fileName = slash < 0 ? entryPath : entryPath.substring(slash + 1);
+        this.contents = contents;
+    }
+
+    private static URI toMemoryURI(String entryPath) {
+        try {
+            return new URI("mem", null, entryPath.startsWith("/") ? entryPath : "/" + entryPath, null);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Bad entry path: " + entryPath, e);
+        }
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return new String(this.contents, Charset.defaultCharset());
+    }
+
+    @Override
+    public InputStream openInputStream() {
+        return new ByteArrayInputStream(this.contents);
+    }
+
+    @Deprecated
+    @Override
+    public void setUserSpecified(boolean userSpecified) {
+        throw new UnimplementedError();
+    }
+
+    @Override
+    public boolean userSpecified() {
+        return kind() == Source.Kind.USER_SPECIFIED;
+    }
+
+    @Override
+    public boolean compilerGenerated() {
+        return kind() == Source.Kind.COMPILER_GENERATED;
+    }
+
+    @Override
+    public void setKind(Source.Kind kind) {
+        throw new UnimplementedError();
+    }
+
+    @Override
+    public Source.Kind kind() {
+        return Source.Kind.USER_SPECIFIED;
+    }
+
+    @Override
+    public String name() {
+        return this.fileName;
+    }
+
+    @Override
+    public String path() {
+        return this.path;
+    }
+}
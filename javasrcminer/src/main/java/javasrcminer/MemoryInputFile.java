@@ -0,0 +1,62 @@
+package javasrcminer;
+
+import polyglot.frontend.Source;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * MemoryInputFile
+ *
+ * An InputFile whose contents were read into memory, e.g. an entry streamed
+ * out of a tarball. The path is only a name and never touches the disk.
+ */
+final class MemoryInputFile implements InputFile {
+
+    private final String containerPath;
+    private final String entryPath;
+    private final byte[] contents;
+
+    public MemoryInputFile(String containerPath, String entryPath, byte[] contents) {
+        assert containerPath != null;
+        assert entryPath != null;
+        assert contents != null;
+        this.containerPath = containerPath;
+        this.entryPath = entryPath;
+        this.contents = contents;
+    }
+
+    public byte[] getContents() {
+        return this.contents;
+    }
+
+    @Override
+    public String getPath() {
+        return this.entryPath;
+    }
+
+    @Override
+    public String getCanonicalPath() {
+        return this.containerPath + "!/" + this.entryPath;
+    }
+
+    @Override
+    public Source toSource() {
+        return new MemoryFileObject(this.getCanonicalPath(), this.entryPath, this.contents);
+    }
+
+    @Override
+    public InputStreamReader openReader() {
+        return new InputStreamReader(new ByteArrayInputStream(this.contents));
+    }
+
+    public InputStream openStream() {
+        return new ByteArrayInputStream(this.contents);
+    }
+
+    @Override
+    public long size() {
+        return this.contents.length;
+    }
+}
@@ -0,0 +1,222 @@
+package javasrcminer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * MiningManifest
+ *
+ * Lets a mining run resume, or re-mine a refreshed corpus, without redoing
+ * files it has already mined. The manifest sits in the output directory
+ * and gets one line per mined source file:
+ *
+ * <pre>
+ *   sha256-of-contents \t output-file-or-"-" \t canonical-source-path
+ * </pre>
+ *
+ * Later lines for a path replace earlier ones. Lines are appended only
+ * after their output is written, and are forced to disk every
+ * checkpointInterval records, so after a crash the manifest never claims
+ * an output that isn't there. Outputs written after the last checkpoint
+ * are removed when the manifest is reopened, and their sources mined again.
+ */
+final class MiningManifest implements AutoCloseable {
+
+    static final String FILE_NAME = "manifest.tsv";
+    static final String NO_OUTPUT = "-";
+
+    // What java2tree names its outputs: %08d.txt or %08d.tree
+    private static final Pattern OUTPUT_NAME = Pattern.compile("[0-9]{8,}\\.(txt|tree)");
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    });
+
+    private final Path directory;
+    private final Map<String, Entry> entries;
+    private final int firstOutputNumber;
+    private final int checkpointInterval;
+
+    private final FileChannel channel;
+    private final Writer writer;
+    private int sinceCheckpoint = 0;
+    private final List<String> superseded = new ArrayList<>();
+
+    private MiningManifest(Path directory, Map<String, Entry> entries, int firstOutputNumber, int checkpointInterval) throws IOException {
+        this.directory = directory;
+        this.entries = entries;
+        this.firstOutputNumber = firstOutputNumber;
+        this.checkpointInterval = checkpointInterval;
+        this.channel = FileChannel.open(directory.resolve(FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writer = new OutputStreamWriter(Channels.newOutputStream(this.channel), StandardCharsets.UTF_8);
+    }
+
+    /** True if directory holds a manifest that a run can resume from. */
+    public static boolean existsIn(Path directory) {
+        return Files.isRegularFile(directory.resolve(FILE_NAME));
+    }
+
+    /**
+     * Opens (or starts) the manifest in directory, deleting any output
+     * there that it doesn't account for. Only files named like outputs
+     * (00000042.txt or 00000042.tree) are touched; anything else the user
+     * put there, say a metrics or quarantine file, is left alone.
+     */
+    public static MiningManifest open(Path directory, int checkpointInterval) throws IOException {
+        if (checkpointInterval < 1)
+            throw new IllegalArgumentException("checkpoint interval must be positive; got " + checkpointInterval);
+        final Path manifestPath = directory.resolve(FILE_NAME);
+        final Map<String, Entry> entries = new HashMap<>();
+        int maxOutputNumber = -1;
+        if (Files.exists(manifestPath)) {
+            dropTornLine(manifestPath);
+            try (BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] fields = line.split("\t", 3);
+                    if (fields.length != 3)
+                        throw new IOException("Malformed line in " + manifestPath + ": " + line);
+                    entries.put(fields[2], new Entry(fields[0], fields[1]));
+                }
+            }
+        }
+
+        final Set<String> outputs = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            if (entry.output.equals(NO_OUTPUT))
+                continue;
+            outputs.add(entry.output);
+            maxOutputNumber = Math.max(maxOutputNumber, outputNumber(entry.output));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                final String name = file.getFileName().toString();
+                if (OUTPUT_NAME.matcher(name).matches() && !outputs.contains(name))
+                    Files.delete(file);
+            }
+        }
+        return new MiningManifest(directory, entries, maxOutputNumber + 1, checkpointInterval);
+    }
+
+    /** Output numbers below this were used by earlier runs; offset new ones by it. */
+    public int firstOutputNumber() {
+        return this.firstOutputNumber;
+    }
+
+    /** Hex SHA-256 of a file's contents. */
+    public static String hash(InputFile file) throws IOException {
+        final MessageDigest digest = SHA256.get();
+        digest.reset();
+        final byte[] buffer = new byte[1 << 16];
+        try (InputStream in = file.openStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+        }
+        final StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest())
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return hex.toString();
+    }
+
+    /** True if path was already mined with exactly these contents. */
+    public synchronized boolean isUpToDate(String path, String hash) {
+        final Entry entry = this.entries.get(path);
+        return entry != null && entry.hash.equals(hash);
+    }
+
+    /**
+     * Records that path (with contents hash) was mined to output, or to
+     * nothing if output is null. Call only once output is written. Any
+     * output previously recorded for path is deleted at the next checkpoint.
+     */
+    public synchronized void record(String path, String hash, String output) throws IOException {
+        if (output == null)
+            output = NO_OUTPUT;
+        if (path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0)
+            throw new IOException("can't record a path containing a line break: " + path);
+        final Entry previous = this.entries.put(path, new Entry(hash, output));
+        this.writer.write(hash + "\t" + output + "\t" + path + "\n");
+        if (previous != null && !previous.output.equals(NO_OUTPUT) && !previous.output.equals(output))
+            this.superseded.add(previous.output);
+        if (++this.sinceCheckpoint >= this.checkpointInterval)
+            checkpoint();
+    }
+
+    /** Forces every record so far to disk, then deletes the outputs they superseded. */
+    public synchronized void checkpoint() throws IOException {
+        this.writer.flush();
+        this.channel.force(false);
+        this.sinceCheckpoint = 0;
+        for (String output : this.superseded)
+            Files.deleteIfExists(this.directory.resolve(output));
+        this.superseded.clear();
+    }
+
+    public synchronized void close() throws IOException {
+        checkpoint();
+        this.writer.close();
+    }
+
+    // A crash mid-append can leave a partial last line; cut it so new records start on their own line
+    private static void dropTornLine(Path manifestPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(manifestPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            final ByteBuffer one = ByteBuffer.allocate(1);
+            while (end > 0) {
+                one.clear();
+                channel.read(one, end - 1);
+                if (one.get(0) == '\n')
+                    break;
+                end--;
+            }
+            if (end < channel.size())
+                channel.truncate(end);
+        }
+    }
+
+    // Outputs are named by a zero-padded number, e.g. 00000042.txt
+    private static int outputNumber(String output) {
+        final int dot = output.indexOf('.');
+        try {
+            return Integer.parseInt(dot < 0 ? output : output.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Entry {
+        final String hash;
+        final String output;
+
+        Entry(String hash, String output) {
+            this.hash = hash;
+            this.output = output;
+        }
+    }
+}
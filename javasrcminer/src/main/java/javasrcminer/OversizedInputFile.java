@@ -0,0 +1,66 @@
+package javasrcminer;
+
+import polyglot.frontend.Source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * OversizedInputFile
+ *
+ * Stands in for an archive entry over the size limit that was skipped
+ * rather than read into memory. It has a name and a size, so ParseHelper
+ * rejects (and quarantines) it as over budget, but no contents.
+ */
+final class OversizedInputFile implements InputFile {
+
+    private final String containerPath;
+    private final String entryPath;
+    private final long size;
+    private final long maxBytes;
+
+    public OversizedInputFile(String containerPath, String entryPath, long size, long maxBytes) {
+        assert containerPath != null;
+        assert entryPath != null;
+        assert size > maxBytes;
+        this.containerPath = containerPath;
+        this.entryPath = entryPath;
+        this.size = size;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public String getPath() {
+        return this.entryPath;
+    }
+
+    @Override
+    public String getCanonicalPath() {
+        return this.containerPath + "!/" + this.entryPath;
+    }
+
+    @Override
+    public Source toSource() {
+        throw new UnsupportedOperationException(this.skipped());
+    }
+
+    @Override
+    public InputStreamReader openReader() throws IOException {
+        throw new IOException(this.skipped());
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        throw new IOException(this.skipped());
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    private String skipped() {
+        return this.getCanonicalPath() + " is " + this.size + " bytes; entries over " + this.maxBytes + " aren't read";
+    }
+}
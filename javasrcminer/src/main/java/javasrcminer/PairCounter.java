@@ -0,0 +1,129 @@
+package javasrcminer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PairCounter
+ *
+ * A fixed-capacity open-addressing (linear probing) table counting
+ * (row, column) pairs of non-negative ints, packed into a long key. When
+ * the table fills it is spilled to disk as a run sorted by key and cleared,
+ * so a counter never uses more memory than it was given. A run is just
+ * (key, count) pairs of big-endian longs. Not thread-safe: give each thread
+ * its own.
+ */
+final class PairCounter {
+
+    private static final float MAX_LOAD = 0.6f;
+    private static final long EMPTY = -1L;
+
+    // Per slot: key, count, plus a sort buffer sized for a full table
+    static final int BYTES_PER_SLOT = 8 + 8 + 8;
+
+    private final long[] keys;
+    private final long[] counts;
+    private final long[] sortBuffer;
+    private final int mask;
+    private final int maxSize;
+    private int size = 0;
+
+    private final Path spillDirectory;
+    private final List<Path> runs = new ArrayList<>();
+
+    /** A counter using at most about maxBytes, spilling runs into spillDirectory. */
+    public PairCounter(long maxBytes, Path spillDirectory) {
+        int capacity = 16;
+        while ((long) capacity * 2 * BYTES_PER_SLOT <= maxBytes && capacity < (1 << 30))
+            capacity <<= 1;
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.counts = new long[capacity];
+        this.mask = capacity - 1;
+        this.maxSize = (int) (capacity * MAX_LOAD);
+        this.sortBuffer = new long[this.maxSize];
+        this.spillDirectory = spillDirectory;
+    }
+
+    public static long key(int row, int column) {
+        assert row >= 0 && column >= 0;
+        return ((long) row << 32) | column;
+    }
+
+    public static int row(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int column(long key) {
+        return (int) key;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void increment(int row, int column) throws IOException {
+        final long key = key(row, column);
+        int slot = mix(key) & this.mask;
+        while (this.keys[slot] != EMPTY) {
+            if (this.keys[slot] == key) {
+                this.counts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        this.keys[slot] = key;
+        this.counts[slot] = 1;
+        if (++this.size >= this.maxSize)
+            spill();
+    }
+
+    /** Writes what's been counted since the last spill as a sorted run, then clears the table. */
+    public void spill() throws IOException {
+        if (this.size == 0)
+            return;
+        int n = 0;
+        for (long key : this.keys) {
+            if (key != EMPTY)
+                this.sortBuffer[n++] = key;
+        }
+        Arrays.sort(this.sortBuffer, 0, n);
+
+        final Path run = Files.createTempFile(this.spillDirectory, "coocc-run-", ".bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (int i = 0; i < n; i++) {
+                out.writeLong(this.sortBuffer[i]);
+                out.writeLong(get(this.sortBuffer[i]));
+            }
+        }
+        this.runs.add(run);
+
+        Arrays.fill(this.keys, EMPTY);
+        Arrays.fill(this.counts, 0);
+        this.size = 0;
+    }
+
+    /** Runs spilled so far, each sorted by key. */
+    public List<Path> runs() {
+        return this.runs;
+    }
+
+    private long get(long key) {
+        for (int slot = mix(key) & this.mask; this.keys[slot] != EMPTY; slot = (slot + 1) & this.mask) {
+            if (this.keys[slot] == key)
+                return this.counts[slot];
+        }
+        return 0;
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
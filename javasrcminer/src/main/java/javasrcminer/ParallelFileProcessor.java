@@ -0,0 +1,155 @@
+package javasrcminer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParallelFileProcessor
+ *
+ * Fans the files of a VFS crawl out to a work-stealing pool and hands the
+ * results back, one at a time and in crawl order, to a sink. Every file is
+ * numbered by its position in the crawl (across all VFSs given to the same
+ * processor), so output naming and ordering are identical whatever the
+ * number of threads.
+ */
+final class ParallelFileProcessor implements AutoCloseable {
+
+    @FunctionalInterface
+    interface Task<R> {
+        /** Returns the result for a file, or null if there is nothing to commit. */
+        R process(long index, InputFile file) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface Sink<R> {
+        void accept(long index, InputFile file, R result) throws Exception;
+    }
+
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+
+    private final Object commitLock = new Object();
+    private final Map<Long, Completed> completed = new HashMap<>();
+    private long nextIndex = 0;
+    private long nextToCommit = 0;
+    private volatile Throwable failure = null;
+
+    public ParallelFileProcessor(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive; got " + threads);
+        if (threads == 1) {
+            this.pool = null;
+            this.maxInFlight = 1;
+        } else {
+            this.pool = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+            this.maxInFlight = threads * IN_FLIGHT_PER_THREAD;
+        }
+        this.inFlight = new Semaphore(this.maxInFlight);
+    }
+
+    /**
+     * Runs task on every file in vfs with the given extension and commits each
+     * non-null result to sink in crawl order. Returns once every file has been
+     * committed. Exceptions escaping task or sink abort the crawl and are
+     * rethrown here.
+     */
+    public <R> void forEachFile(VFS vfs, String ext, Task<R> task, Sink<R> sink) throws IOException {
+        vfs.forEachFile(ext, file -> {
+            assert file != null : "file was null";
+            throwIfFailed();
+            final long index = this.nextIndex++;
+            if (this.pool == null) {
+                try {
+                    R result = task.process(index, file);
+                    if (result != null)
+                        sink.accept(index, file, result);
+                } catch (Exception e) {
+                    this.failure = e;
+                    throwIfFailed();
+                }
+                this.nextToCommit++;
+                return;
+            }
+            this.inFlight.acquireUninterruptibly();
+            this.pool.execute(() -> {
+                R result = null;
+                try {
+                    result = task.process(index, file);
+                } catch (Throwable t) {
+                    this.failure = t;
+                } finally {
+                    complete(index, file, result, sink);
+                }
+            });
+        });
+
+        // Wait for every outstanding file to be committed
+        this.inFlight.acquireUninterruptibly(this.maxInFlight);
+        this.inFlight.release(this.maxInFlight);
+        throwIfFailed();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> void complete(long index, InputFile file, R result, Sink<R> sink) {
+        synchronized (this.commitLock) {
+            this.completed.put(index, new Completed(file, result));
+            Completed next;
+            while ((next = this.completed.remove(this.nextToCommit)) != null) {
+                try {
+                    if (next.result != null && this.failure == null)
+                        sink.accept(this.nextToCommit, next.file, (R) next.result);
+                } catch (Throwable t) {
+                    this.failure = t;
+                }
+                this.nextToCommit++;
+                this.inFlight.release();
+            }
+        }
+    }
+
+    private void throwIfFailed() {
+        final Throwable t = this.failure;
+        if (t == null)
+            return;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        throw new ProcessingException(t);
+    }
+
+    public void close() {
+        if (this.pool == null)
+            return;
+        this.pool.shutdown();
+        try {
+            this.pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            // Leave the workers to finish; whoever interrupted us gets to see it
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Completed {
+        final InputFile file;
+        final Object result;
+
+        Completed(InputFile file, Object result) {
+            this.file = file;
+            this.result = result;
+        }
+    }
+
+    public static class ProcessingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public ProcessingException(Throwable cause) { super(cause); }
+    }
+}
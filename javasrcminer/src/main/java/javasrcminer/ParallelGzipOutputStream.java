@@ -0,0 +1,161 @@
+package javasrcminer;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ParallelGzipOutputStream
+ *
+ * Splits the stream into fixed-size blocks and compresses each on a pool of
+ * threads as an independent gzip member. Members are written in order, so
+ * the result is a standard multi-member gzip file that gzip, tar and
+ * commons-compress (with decompressConcatenated) read as one stream.
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    // Compressed blocks allowed to queue up per thread before writers block
+    private static final int PENDING_BLOCKS_PER_THREAD = 2;
+
+    private final OutputStream out;
+    private final int compressionLevel;
+    private final int blockSize;
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final Queue<byte[]> freeBlocks = new ConcurrentLinkedQueue<>();
+
+    private byte[] block;
+    private int blockLength = 0;
+    private boolean closed = false;
+
+    public ParallelGzipOutputStream(OutputStream out, int compressionLevel, int blockSize, int threads) {
+        assert out != null;
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("block size must be positive; got " + blockSize);
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive; got " + threads);
+        this.out = out;
+        this.compressionLevel = compressionLevel;
+        this.blockSize = blockSize;
+        this.maxPending = threads * PENDING_BLOCKS_PER_THREAD;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "gzip-block-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.block[this.blockLength++] = (byte) b;
+        if (this.blockLength == this.blockSize)
+            submitBlock();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            final int n = Math.min(len, this.blockSize - this.blockLength);
+            System.arraycopy(b, off, this.block, this.blockLength, n);
+            this.blockLength += n;
+            off += n;
+            len -= n;
+            if (this.blockLength == this.blockSize)
+                submitBlock();
+        }
+    }
+
+    /** Ends the current block early and writes out everything compressed so far. */
+    @Override
+    public void flush() throws IOException {
+        submitBlock();
+        while (!this.pending.isEmpty())
+            writeOldestBlock();
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+        try {
+            // The underlying stream is closed even if the last blocks can't be written
+            Throwable flushFailure = null;
+            try {
+                flush();
+            } catch (Throwable t) {
+                flushFailure = t;
+                throw t;
+            } finally {
+                if (flushFailure == null) {
+                    this.out.close();
+                } else {
+                    try {
+                        this.out.close();
+                    } catch (Throwable t) {
+                        flushFailure.addSuppressed(t);
+                    }
+                }
+            }
+        } finally {
+            this.executor.shutdownNow();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (this.blockLength == 0)
+            return;
+        final byte[] data = this.block;
+        final int length = this.blockLength;
+        this.pending.add(this.executor.submit(() -> {
+            final byte[] member = compress(data, length);
+            this.freeBlocks.offer(data);
+            return member;
+        }));
+
+        final byte[] recycled = this.freeBlocks.poll();
+        this.block = recycled != null ? recycled : new byte[this.blockSize];
+        this.blockLength = 0;
+
+        while (this.pending.size() >= this.maxPending)
+            writeOldestBlock();
+    }
+
+    private void writeOldestBlock() throws IOException {
+        final Future<byte[]> oldest = this.pending.poll();
+        try {
+            this.out.write(oldest.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a compressed block");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress block", e.getCause());
+        }
+    }
+
+    private byte[] compress(byte[] data, int length) throws IOException {
+        final GzipParameters parameters = new GzipParameters();
+        parameters.setCompressionLevel(this.compressionLevel);
+        final ByteArrayOutputStream member = new ByteArrayOutputStream(length / 3 + 64);
+        try (GzipCompressorOutputStream gzOut = new GzipCompressorOutputStream(member, parameters)) {
+            gzOut.write(data, 0, length);
+        }
+        return member.toByteArray();
+    }
+}
@@ -12,8 +12,9 @@ import polyglot.util.StdErrorQueue;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 
 public class ParseHelper {
     private static ParseHelper ourInstance = new ParseHelper();
@@ -22,48 +23,164 @@ public class ParseHelper {
         return ourInstance;
     }
 
+    // Polyglot's extension info, node factory and type system aren't thread-safe,
+    // so each parsing thread gets its own, built once and reused for every file.
+    private final ThreadLocal<ParserContext> contexts = ThreadLocal.withInitial(ParserContext::new);
+
+    // Budgets for pathological inputs; 0 means unlimited
+    private volatile long maxFileBytes = 0;
+    private volatile long timeoutMillis = 0;
+    private volatile Quarantine quarantine = null;
+    private ParseWatchdog watchdog = null;
+    private Limits limits = null;
+    private volatile PipelineMetrics metrics = null;
+
     private ParseHelper() {
     }
-    
-    public void parseAndVisit(File srcFile, NodeVisitorFactory visitorFactory) throws ParseException, FileNotFoundException {
+
+    /**
+     * Sets the budgets every later parse must stay within: files over
+     * maxFileBytes aren't parsed, and parses running over timeoutMillis are
+     * abandoned (0 disables either). Files over budget fail with
+     * BudgetExceededException and, given a quarantine, are added to it; files
+     * already in it fail straight away. Close the returned Limits once the
+     * run's parses are done: that lifts the budgets and closes the quarantine.
+     */
+    public synchronized Limits setLimits(long maxFileBytes, long timeoutMillis, Quarantine quarantine) {
+        if (maxFileBytes < 0 || timeoutMillis < 0)
+            throw new IllegalArgumentException("limits must not be negative");
+        this.maxFileBytes = maxFileBytes;
+        this.timeoutMillis = timeoutMillis;
+        this.quarantine = quarantine;
+        if (timeoutMillis > 0 && this.watchdog == null)
+            this.watchdog = new ParseWatchdog();
+        return this.limits = new Limits(maxFileBytes, timeoutMillis, quarantine);
+    }
+
+    private synchronized void lift(Limits limits) {
+        if (this.limits != limits)
+            return;
+        this.maxFileBytes = 0;
+        this.timeoutMillis = 0;
+        this.quarantine = null;
+        this.limits = null;
+    }
+
+    /** The current per-file size limit, 0 if none. */
+    public long maxFileBytes() {
+        return this.maxFileBytes;
+    }
+
+    /** Times every later parse's read, parse and visit stages into metrics; null stops. */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void parseAndVisit(File srcFile, NodeVisitorFactory visitorFactory) throws ParseException, IOException {
+        this.parseAndVisit(new DiskInputFile(srcFile), false, visitorFactory);
+    }
+
+    public void parseAndVisit(InputFile srcFile, NodeVisitorFactory visitorFactory) throws ParseException, IOException {
         this.parseAndVisit(srcFile, false, visitorFactory);
     }
-    
-    public void parseAndVisit(File srcFile, Boolean disamb, NodeVisitorFactory visitorFactory) throws ParseException, FileNotFoundException {
-        final Source fileSource = new DummyFileObject(srcFile.toURI());
-        this.parseAndVisit(new FileReader(srcFile), fileSource, disamb, visitorFactory);
+
+    public void parseAndVisit(InputFile srcFile, Boolean disamb, NodeVisitorFactory visitorFactory) throws ParseException, IOException {
+        this.parseAndVisitFile(srcFile, disamb, visitorFactory);
+    }
+
+    /**
+     * Parses srcFile once and walks the AST with each visitor in turn, for
+     * callers producing several outputs from one (expensive) parse.
+     */
+    public void parseAndVisitAll(InputFile srcFile, NodeVisitorFactory... visitorFactories) throws ParseException, IOException {
+        this.parseAndVisitFile(srcFile, false, visitorFactories);
+    }
+
+    private void parseAndVisitFile(InputFile srcFile, Boolean disamb, NodeVisitorFactory... visitorFactories) throws ParseException, IOException {
+        final long size = srcFile.size();
+        final PipelineMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.processed(size);
+
+        final Quarantine quarantine = this.quarantine;
+        if (quarantine != null && quarantine.contains(srcFile.getCanonicalPath()))
+            throw new BudgetExceededException("quarantined by an earlier run");
+        try {
+            final long maxFileBytes = this.maxFileBytes;
+            if (maxFileBytes > 0 && size > maxFileBytes)
+                throw new BudgetExceededException("file is " + size + " bytes; the limit is " + maxFileBytes);
+            try (InputStreamReader reader = srcFile.openReader()) {
+                this.parseAndVisit(this.contexts.get(), reader, srcFile.toSource(), disamb, visitorFactories);
+            }
+        } catch (BudgetExceededException e) {
+            if (quarantine != null)
+                quarantine.add(srcFile.getCanonicalPath(), e.getMessage());
+            throw e;
+        }
     }
 
     public void parseAndVisit(InputStreamReader reader, Source fileSource, Boolean disamb, NodeVisitorFactory visitorFactory) throws ParseException, FileNotFoundException {
+        this.parseAndVisit(this.contexts.get(), reader, fileSource, disamb, visitorFactory);
+    }
+
+    void parseAndVisit(ParserContext context, InputStreamReader reader, Source fileSource, Boolean disamb, NodeVisitorFactory... visitorFactories) throws ParseException {
 
+        assert context != null;
         assert reader != null;
         assert fileSource != null;
-        assert visitorFactory != null;
-        
-        // TODO: Do something with the ErrorQueue. Log?
-        final ExtensionInfo extInfo = new JL7ExtensionInfo();
-        final ErrorQueue eq = new StdErrorQueue(System.err, Integer.MAX_VALUE, extInfo.compilerName());
-        Options.global = new Options(extInfo);
-
-        // nf/tf are lazily constructed. Build them here to avoid nullptr excp. during parse()
-        extInfo.nodeFactory();
-        extInfo.typeSystem();
-        final Lang lang = extInfo.nodeFactory().lang();
-        assert lang != null;
-        
-        final Parser parser = extInfo.parser(reader, fileSource, eq);
-        assert parser != null;
-
-        // Parse the AST
-        Node root;
-        try {
-            root = parser.parse();
-        } catch (Exception e) {
-            throw new ParseException("Exception raised during parse: " + e.toString(), e);
-        }
-        if (root == null) {
-            throw new ParseException("parse returned null");
+        assert visitorFactories.length > 0;
+
+        final PipelineMetrics metrics = this.metrics;
+        final PipelineMetrics.TimedReader timedReader = metrics == null ? null : new PipelineMetrics.TimedReader(reader);
+        final long timeoutMillis = this.timeoutMillis;
+        try (ParseWatchdog.Deadline deadline = timeoutMillis > 0 ? this.watchdog.start(timeoutMillis) : null) {
+            Reader in = timedReader == null ? reader : timedReader;
+            if (deadline != null)
+                in = deadline.wrap(in);
+
+            // TODO: Do something with the ErrorQueue. Log?
+            final ErrorQueue eq = context.newErrorQueue();
+            final Parser parser = context.extInfo.parser(in, fileSource, eq);
+            assert parser != null;
+
+            // Parse the AST; the lexer reads as it goes, so reading is taken out of the parse time
+            final long parseStart = System.nanoTime();
+            Node root;
+            try {
+                root = parser.parse();
+            } catch (Exception e) {
+                checkDeadline(deadline);
+                throw new ParseException("Exception raised during parse: " + e.toString(), e);
+            } catch (StackOverflowError e) {
+                throw new BudgetExceededException("stack overflow during parse", e);
+            } finally {
+                if (metrics != null) {
+                    metrics.record(PipelineMetrics.Stage.READ, timedReader.nanos());
+                    metrics.record(PipelineMetrics.Stage.PARSE, System.nanoTime() - parseStart - timedReader.nanos());
+                }
+            }
+            checkDeadline(deadline);
+            if (root == null) {
+                throw new ParseException("parse returned null");
+            }
+
+            final long visitStart = System.nanoTime();
+            try {
+                visit(context, root, disamb, deadline, visitorFactories);
+            } finally {
+                if (metrics != null)
+                    metrics.record(PipelineMetrics.Stage.VISIT, System.nanoTime() - visitStart);
+            }
         }
+    }
+
+    private static void checkDeadline(ParseWatchdog.Deadline deadline) throws BudgetExceededException {
+        if (deadline != null && deadline.expired())
+            throw new BudgetExceededException("parse exceeded " + deadline.timeoutMillis + " ms");
+    }
+
+    private static void visit(ParserContext context, Node root, Boolean disamb, ParseWatchdog.Deadline deadline,
+                              NodeVisitorFactory... visitorFactories) throws ParseException {
 
         // If flag is set, disambiguate
         if (disamb) {
@@ -73,12 +190,85 @@ public class ParseHelper {
 
         // Walk the AST
         try {
-            root.visit(visitorFactory.makeVisitor(lang));
+            for (NodeVisitorFactory visitorFactory : visitorFactories) {
+                checkDeadline(deadline);
+                context.walker.visit(root, visitorFactory.makeVisitor(context.lang), deadline);
+            }
+        } catch (BudgetExceededException e) {
+            throw e;
+        } catch (ParseWatchdog.Expired e) {
+            throw new BudgetExceededException(e.getMessage(), e);
         } catch (Exception e) {
             throw new ParseException("Exception thrown during visit", e);
         } catch (StackOverflowError e) {
-            // TODO: Catching a StackOverflowError? Ugh.
-            throw new ParseException("Error during visit", e);
+            // AstWalker doesn't recurse, but a visitor itself still might
+            throw new BudgetExceededException("stack overflow during visit", e);
+        }
+    }
+
+    /** The budgets set by one setLimits call, in force until closed. */
+    public final class Limits implements AutoCloseable {
+        private final long maxFileBytes;
+        private final long timeoutMillis;
+        private final Quarantine quarantine;
+        private final int quarantinedBefore;
+
+        private Limits(long maxFileBytes, long timeoutMillis, Quarantine quarantine) {
+            this.maxFileBytes = maxFileBytes;
+            this.timeoutMillis = timeoutMillis;
+            this.quarantine = quarantine;
+            this.quarantinedBefore = quarantine == null ? 0 : quarantine.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            lift(this);
+            if (this.quarantine != null)
+                this.quarantine.close();
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("Parse limits: ");
+            sb.append(this.maxFileBytes == 0 ? "any size" : this.maxFileBytes + " bytes");
+            sb.append(", ").append(this.timeoutMillis == 0 ? "no timeout" : this.timeoutMillis + " ms");
+            if (this.quarantine != null) {
+                final int size = this.quarantine.size();
+                sb.append(String.format("; quarantined %d new files (%d in all)", size - this.quarantinedBefore, size));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The per-thread polyglot state needed to parse a file. Only the error
+     * queue and the parser itself are built per file.
+     */
+    static final class ParserContext {
+        final ExtensionInfo extInfo;
+        final Lang lang;
+        final AstWalker walker;
+
+        ParserContext() {
+            this.extInfo = new JL7ExtensionInfo();
+
+            // Options.global is process-wide; set it once rather than racing
+            // every thread to overwrite it per file.
+            synchronized (ParserContext.class) {
+                if (Options.global == null)
+                    Options.global = new Options(this.extInfo);
+            }
+
+            // nf/tf are lazily constructed. Build them here to avoid nullptr excp. during parse()
+            this.extInfo.nodeFactory();
+            this.extInfo.typeSystem();
+            this.lang = this.extInfo.nodeFactory().lang();
+            assert this.lang != null;
+            this.walker = new AstWalker(this.lang);
+        }
+
+        ErrorQueue newErrorQueue() {
+            return new StdErrorQueue(System.err, Integer.MAX_VALUE, this.extInfo.compilerName());
         }
     }
 
@@ -86,4 +276,12 @@ public class ParseHelper {
         public ParseException(String msg) { super(msg); }
         public ParseException(String msg, Throwable cause) { super(msg, cause); }
     }
+
+    /** A file too big, slow or deeply nested to parse within the limits set. */
+    public static class BudgetExceededException extends ParseException {
+        private static final long serialVersionUID = 1L;
+
+        public BudgetExceededException(String msg) { super(msg); }
+        public BudgetExceededException(String msg, Throwable cause) { super(msg, cause); }
+    }
 }
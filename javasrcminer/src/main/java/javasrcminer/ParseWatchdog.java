@@ -0,0 +1,102 @@
+package javasrcminer;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParseWatchdog
+ *
+ * Times parses from a single background thread. A Java thread can't be
+ * stopped safely from outside, so an expired Deadline only raises a flag:
+ * the parse notices through Deadline.wrap's reader, whose next read fails,
+ * and AstWalker checks the flag every so many nodes as visitors walk the
+ * AST. The lexer pulls input in small chunks as the parser needs tokens,
+ * so a parse is abandoned within a few KiB of input of running out of
+ * time, and a visit within a few thousand nodes. A single call that never
+ * returns (say, a visitor stuck on one node) still can't be abandoned.
+ */
+final class ParseWatchdog {
+
+    // Most chars handed to the lexer per read, so expiry is noticed promptly
+    private static final int MAX_READ_CHARS = 4096;
+
+    private final ScheduledThreadPoolExecutor timer;
+
+    public ParseWatchdog() {
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(r, "parse-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /** Starts a deadline timeoutMillis from now; close it when the parse is done. */
+    public Deadline start(long timeoutMillis) {
+        final Deadline deadline = new Deadline(timeoutMillis);
+        deadline.future = this.timer.schedule(() -> { deadline.expired = true; }, timeoutMillis, TimeUnit.MILLISECONDS);
+        return deadline;
+    }
+
+    static final class Deadline implements AutoCloseable {
+        final long timeoutMillis;
+        volatile boolean expired = false;
+        private volatile ScheduledFuture<?> future;
+
+        Deadline(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        boolean expired() {
+            return this.expired;
+        }
+
+        /** A reader over in that fails once this deadline has expired. */
+        Reader wrap(Reader in) {
+            return new FilterReader(in) {
+                @Override
+                public int read() throws IOException {
+                    checkExpired();
+                    return super.read();
+                }
+
+                @Override
+                public int read(char[] buffer, int offset, int length) throws IOException {
+                    checkExpired();
+                    return super.read(buffer, offset, Math.min(length, MAX_READ_CHARS));
+                }
+            };
+        }
+
+        /** Throws Expired if this deadline has passed, for work that doesn't read. */
+        void check() {
+            if (this.expired)
+                throw new Expired(this.timeoutMillis);
+        }
+
+        private void checkExpired() throws InterruptedIOException {
+            if (this.expired)
+                throw new InterruptedIOException("parse exceeded " + this.timeoutMillis + " ms");
+        }
+
+        public void close() {
+            final ScheduledFuture<?> future = this.future;
+            if (future != null)
+                future.cancel(false);
+        }
+    }
+
+    /** A Deadline that passed, thrown where checked exceptions can't be. */
+    static final class Expired extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Expired(long timeoutMillis) {
+            super("parse exceeded " + timeoutMillis + " ms");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package javasrcminer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * PartialVocab
+ *
+ * The subtoken counts of one CorpusShard, kept whole (no --min-count) so
+ * that summing the partials of all n shards gives exactly the counts of one
+ * run over the whole corpus. It's the text vocab format, so a partial still
+ * opens as a Vocab, headed by a comment naming the shard:
+ *
+ *     # partial vocab, shard 2/8
+ *     1234	get
+ *     ...
+ */
+final class PartialVocab {
+
+    private static final String HEADER = "# partial vocab, shard ";
+
+    public static void write(Path path, CorpusShard shard, StringIntCounter counts) throws IOException {
+        final StringIntCounter.Sorted sorted = counts.sortedByCount(1);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW))) {
+            writer.printf("%s%s\n", HEADER, shard);
+            for (int i = 0; i < sorted.words.length; i++)
+                writer.printf("%d\t%s\n", sorted.counts[i], sorted.words[i]);
+        }
+    }
+
+    /** Adds the counts in the partial vocab at path to into; returns the shard they came from. */
+    public static CorpusShard addTo(Path path, StringIntCounter into) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            final String header = reader.readLine();
+            if (header == null || !header.startsWith(HEADER))
+                throw new IOException(path + " isn't a partial vocab");
+            final CorpusShard shard;
+            try {
+                shard = CorpusShard.parse(header.substring(HEADER.length()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(path + ": " + e.getMessage());
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int tab = line.indexOf('\t');
+                try {
+                    if (tab < 0)
+                        throw new NumberFormatException();
+                    into.add(line.substring(tab + 1), Integer.parseInt(line.substring(0, tab)));
+                } catch (NumberFormatException e) {
+                    throw new IOException(String.format("%s: couldn't parse line: %s", path, line));
+                }
+            }
+            return shard;
+        }
+    }
+}
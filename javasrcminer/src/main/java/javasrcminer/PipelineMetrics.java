@@ -0,0 +1,267 @@
+package javasrcminer;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PipelineMetrics
+ *
+ * Counts what a mining run does and where its time goes: a latency
+ * histogram per stage (reading source, parsing, visiting, writing output),
+ * files and bytes in and out, and failures by exception class. All of it
+ * may be updated from any thread. A run can print a progress line every
+ * so often and write a JSON summary at the end, so runs over different
+ * corpus refreshes can be compared.
+ */
+final class PipelineMetrics implements AutoCloseable {
+
+    enum Stage {
+        READ, PARSE, VISIT, WRITE;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final String command;
+    private final long startNanos = System.nanoTime();
+    private final Histogram[] stages = new Histogram[Stage.values().length];
+    private final LongAdder filesProcessed = new LongAdder();
+    private final LongAdder filesFailed = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private ScheduledExecutorService progress = null;
+
+    public PipelineMetrics(String command) {
+        this.command = command;
+        for (int i = 0; i < this.stages.length; i++)
+            this.stages[i] = new Histogram();
+    }
+
+    public void record(Stage stage, long nanos) {
+        this.stages[stage.ordinal()].record(nanos);
+    }
+
+    public long totalNanos(Stage stage) {
+        return this.stages[stage.ordinal()].total.sum();
+    }
+
+    /** Time spent getting files parsed and visited, all stages but writing. */
+    public long parsingNanos() {
+        return totalNanos(Stage.READ) + totalNanos(Stage.PARSE) + totalNanos(Stage.VISIT);
+    }
+
+    /** A source file of the given size was read and handled, successfully or not. */
+    public void processed(long bytes) {
+        this.filesProcessed.increment();
+        this.bytesRead.add(bytes);
+    }
+
+    public void wrote(long bytes) {
+        this.bytesWritten.add(bytes);
+    }
+
+    public void failed(Throwable t) {
+        this.filesFailed.increment();
+        this.failures.computeIfAbsent(failureClass(t), k -> new LongAdder()).increment();
+    }
+
+    // What really went wrong: ParseException mostly wraps the interesting cause
+    private static String failureClass(Throwable t) {
+        if (t instanceof ParseHelper.ParseException && !(t instanceof ParseHelper.BudgetExceededException)
+                && t.getCause() != null)
+            t = t.getCause();
+        return t.getClass().getName();
+    }
+
+    /** A reader that keeps count of the time spent in its reads, for the READ stage. */
+    static final class TimedReader extends FilterReader {
+        private long nanos = 0;
+
+        TimedReader(Reader in) {
+            super(in);
+        }
+
+        long nanos() {
+            return this.nanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                this.nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return super.read(buffer, offset, length);
+            } finally {
+                this.nanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /** Prints a progress line to out every intervalSeconds until closed. */
+    public synchronized void startProgress(int intervalSeconds, PrintStream out) {
+        if (intervalSeconds <= 0 || this.progress != null)
+            return;
+        this.progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.progress.scheduleAtFixedRate(() -> out.println(progressLine()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public String progressLine() {
+        final double seconds = elapsedSeconds();
+        final long files = this.filesProcessed.sum();
+        final double mib = this.bytesRead.sum() / 1048576.0;
+        return String.format("[%s] %.0f s: %d files (%.1f/s), %.1f MiB read (%.2f MiB/s), %d failed",
+                this.command, seconds, files, files / seconds, mib, mib / seconds, this.filesFailed.sum());
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(1e-9, (System.nanoTime() - this.startNanos) / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(progressLine());
+        for (Stage stage : Stage.values()) {
+            final Histogram h = this.stages[stage.ordinal()];
+            if (h.count.sum() == 0)
+                continue;
+            sb.append(String.format("\n  %-5s %10d calls, %9.1f s total, p50 %s, p99 %s, max %s", stage.label(),
+                    h.count.sum(), h.total.sum() / 1e9, micros(h.percentile(0.5)), micros(h.percentile(0.99)), micros(h.max.get())));
+        }
+        return sb.toString();
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.0f us", nanos / 1e3);
+    }
+
+    /** Writes a JSON summary of the run so far to path. */
+    public void writeJson(Path path) throws IOException {
+        final double seconds = elapsedSeconds();
+        final long files = this.filesProcessed.sum();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.printf("  \"command\": \"%s\",\n", StringEscapeUtils.escapeJson(this.command));
+            out.printf(Locale.ROOT, "  \"elapsed_seconds\": %.3f,\n", seconds);
+            out.printf(Locale.ROOT, "  \"files\": {\"processed\": %d, \"failed\": %d, \"per_second\": %.3f},\n",
+                    files, this.filesFailed.sum(), files / seconds);
+            out.printf(Locale.ROOT, "  \"bytes\": {\"read\": %d, \"written\": %d, \"read_per_second\": %.1f, \"written_per_second\": %.1f},\n",
+                    this.bytesRead.sum(), this.bytesWritten.sum(), this.bytesRead.sum() / seconds, this.bytesWritten.sum() / seconds);
+
+            out.println("  \"stages\": {");
+            final Stage[] all = Stage.values();
+            for (int i = 0; i < all.length; i++) {
+                final Histogram h = this.stages[all[i].ordinal()];
+                final long count = h.count.sum();
+                out.printf(Locale.ROOT, "    \"%s\": {\"count\": %d, \"total_seconds\": %.3f, \"mean_us\": %.1f, "
+                                + "\"p50_us\": %.1f, \"p90_us\": %.1f, \"p99_us\": %.1f, \"max_us\": %.1f}%s\n",
+                        all[i].label(), count, h.total.sum() / 1e9, count == 0 ? 0.0 : h.total.sum() / 1e3 / count,
+                        h.percentile(0.5) / 1e3, h.percentile(0.9) / 1e3, h.percentile(0.99) / 1e3, h.max.get() / 1e3,
+                        i + 1 < all.length ? "," : "");
+            }
+            out.println("  },");
+
+            out.print("  \"failures\": {");
+            final Map<String, Long> sorted = new TreeMap<>();
+            this.failures.forEach((k, v) -> sorted.put(k, v.sum()));
+            String separator = "";
+            for (Map.Entry<String, Long> failure : sorted.entrySet()) {
+                out.printf("%s\n    \"%s\": %d", separator, StringEscapeUtils.escapeJson(failure.getKey()), failure.getValue());
+                separator = ",";
+            }
+            out.println(sorted.isEmpty() ? "}" : "\n  }");
+            out.println("}");
+        }
+    }
+
+    public synchronized void close() {
+        if (this.progress != null)
+            this.progress.shutdownNow();
+        this.progress = null;
+    }
+
+    /**
+     * A lock-free log-linear histogram of nanosecond latencies: four buckets
+     * per power of two, so percentiles are exact to within 25%.
+     */
+    static final class Histogram {
+        private static final int BUCKETS = 256;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final LongAdder count = new LongAdder();
+        final LongAdder total = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            if (nanos < 0)
+                nanos = 0;
+            this.buckets.incrementAndGet(bucket(nanos));
+            this.count.increment();
+            this.total.add(nanos);
+            this.max.accumulate(nanos);
+        }
+
+        static int bucket(long value) {
+            if (value < 4)
+                return (int) value;
+            final int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return 4 * (exponent - 1) + (int) ((value >>> (exponent - 2)) & 3);
+        }
+
+        // Largest value falling in bucket
+        static long upperBound(int bucket) {
+            if (bucket < 4)
+                return bucket;
+            final int exponent = bucket / 4 + 1;
+            final long lower = (4L + bucket % 4) << (exponent - 2);
+            return lower + (1L << (exponent - 2)) - 1;
+        }
+
+        /** The q-quantile, rounded up to its bucket's bound (and no more than the max). */
+        long percentile(double q) {
+            final long n = this.count.sum();
+            if (n == 0)
+                return 0;
+            final long rank = Math.max(1, (long) Math.ceil(q * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.buckets.get(i);
+                if (seen >= rank)
+                    return Math.min(upperBound(i), this.max.get());
+            }
+            return this.max.get();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package javasrcminer;
+
+import polyglot.ast.Id;
+import polyglot.ast.Lang;
+import polyglot.ast.Node;
+import polyglot.visit.NodeVisitor;
+
+/**
+ * PreorderSubtokenVisitor
+ *
+ * Hands the subtokens of every identifier in the AST, in preorder, to a
+ * sink. Backs the preorder documents of dft2doc and the counts of vocab.
+ */
+final class PreorderSubtokenVisitor extends NodeVisitor {
+
+    @FunctionalInterface
+    interface SubtokenSink {
+        void accept(String subtoken);
+    }
+
+    private final SubtokenCache subtokenCache;
+    private final SubtokenSink sink;
+
+    PreorderSubtokenVisitor(Lang lang, SubtokenCache subtokenCache, SubtokenSink sink) {
+        super(lang);
+        this.subtokenCache = subtokenCache;
+        this.sink = sink;
+    }
+
+    @Override
+    public NodeVisitor enter(Node parent, Node n) {
+        if (n instanceof Id) {
+            final String idStr = ((Id)n).id();
+            for (String subtoken : subtokenCache.subtokenize(idStr))
+                sink.accept(subtoken);
+        }
+        return super.enter(n);
+    }
+}
@@ -0,0 +1,75 @@
+package javasrcminer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Quarantine
+ *
+ * A list of source files that blew a parse budget (too big, too slow, or
+ * nested deeply enough to overflow the stack), kept so later runs given the
+ * same list skip them without trying again. One line per file:
+ *
+ * <pre>
+ *   reason \t canonical-source-path
+ * </pre>
+ *
+ * Lines are appended and flushed as offenders are found, so a run that
+ * dies still leaves what it learned. Delete a line to try a file again.
+ */
+final class Quarantine implements AutoCloseable {
+
+    private final Set<String> paths = new HashSet<>();
+    private final Writer writer;
+
+    private Quarantine(Writer writer) {
+        this.writer = writer;
+    }
+
+    /** Loads the quarantine at path, creating it if it doesn't exist. */
+    public static Quarantine open(Path path) throws IOException {
+        final Set<String> paths = new HashSet<>();
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int tab = line.indexOf('\t');
+                    if (tab >= 0)
+                        paths.add(line.substring(tab + 1));
+                }
+            }
+        }
+        final Quarantine quarantine = new Quarantine(Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        quarantine.paths.addAll(paths);
+        return quarantine;
+    }
+
+    public synchronized boolean contains(String path) {
+        return this.paths.contains(path);
+    }
+
+    public synchronized int size() {
+        return this.paths.size();
+    }
+
+    public synchronized void add(String path, String reason) throws IOException {
+        if (!this.paths.add(path))
+            return;
+        if (path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0)
+            return;
+        this.writer.write(reason.replaceAll("[\t\r\n]+", " ") + "\t" + path + "\n");
+        this.writer.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        this.writer.close();
+    }
+}
@@ -0,0 +1,152 @@
+package javasrcminer;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * RandomWalks
+ *
+ * Generates random walks over a BinaryTree with the semantics of
+ * treeconvs.py's walks: for each root, count centroids are drawn (with
+ * replacement) from the nodes that have subtokens, and each walk wanders
+ * away from its centroid twice, each time to a random unvisited neighbour
+ * (parent or child) until stuck or the side is long enough. The second
+ * side may not revisit the first. A walk is written as the subtokens of
+ * its nodes, first side reversed, on one line.
+ *
+ * A node's subtokens are its kind, if any, followed by its subtokens, as
+ * read_bfile gives them. Holds scratch space, so use one per thread.
+ */
+final class RandomWalks {
+
+    private final int count;
+    private final int sideLength;
+
+    // Scratch, grown to the largest tree seen; visited[n] == stamp marks n
+    private int[] visited = new int[0];
+    private int stamp = 0;
+    private int[] candidates = new int[0];
+    private int[] neighbours = new int[16];
+    private int[] left = new int[0];
+    private int[] right = new int[0];
+
+    /** Walks count times per root; size is the odd maximum walk length, or 0 for unbounded. */
+    public RandomWalks(int count, int size) {
+        if (count < 0)
+            throw new IllegalArgumentException("count must not be negative; got " + count);
+        if (size < 0 || (size != 0 && size % 2 != 1))
+            throw new IllegalArgumentException("size must be odd, or 0 for unbounded; got " + size);
+        this.count = count;
+        this.sideLength = size == 0 ? Integer.MAX_VALUE : size / 2;
+    }
+
+    /**
+     * Appends every walk of tree to out, one per line, and returns how many
+     * were written. Output depends only on tree and rng.
+     */
+    public int walk(BinaryTree tree, SplittableRandom rng, Utf8Buffer out) {
+        final int n = tree.nodeCount();
+        ensureCapacity(n);
+
+        // Decode each string once rather than once per visit
+        final String[] kinds = new String[tree.kindTableSize()];
+        for (int i = 0; i < kinds.length; i++)
+            kinds[i] = tree.kindName(i);
+        final String[] subtokens = new String[tree.subtokenTableSize()];
+        for (int i = 0; i < subtokens.length; i++)
+            subtokens[i] = tree.subtokenName(i);
+
+        int walks = 0;
+        for (int root = 0; root < n; root = tree.subtreeEnd(root)) {
+            int candidateCount = 0;
+            for (int node = root; node < tree.subtreeEnd(root); node++) {
+                if (tree.kindId(node) != BinaryTree.NO_KIND || tree.subtokenCount(node) > 0)
+                    this.candidates[candidateCount++] = node;
+            }
+            if (candidateCount == 0)
+                continue;
+
+            for (int w = 0; w < this.count; w++) {
+                final int centroid = this.candidates[rng.nextInt(candidateCount)];
+                nextStamp();
+                this.visited[centroid] = this.stamp;
+                final int leftLength = side(tree, centroid, rng, this.left);
+                final int rightLength = side(tree, centroid, rng, this.right);
+
+                boolean first = true;
+                for (int i = leftLength - 1; i >= 0; i--)
+                    first = appendNode(tree, this.left[i], kinds, subtokens, out, first);
+                first = appendNode(tree, centroid, kinds, subtokens, out, first);
+                for (int i = 0; i < rightLength; i++)
+                    first = appendNode(tree, this.right[i], kinds, subtokens, out, first);
+                out.append('\n');
+                walks++;
+            }
+        }
+        return walks;
+    }
+
+    // One side of a walk from start, written to path; returns its length
+    private int side(BinaryTree tree, int start, SplittableRandom rng, int[] path) {
+        int length = 0;
+        int current = start;
+        while (length < this.sideLength) {
+            int options = 0;
+            final int parent = tree.parent(current);
+            if (parent >= 0 && this.visited[parent] != this.stamp)
+                options = addNeighbour(options, parent);
+            for (int child = tree.firstChild(current); child >= 0; child = tree.nextSibling(child)) {
+                if (this.visited[child] != this.stamp)
+                    options = addNeighbour(options, child);
+            }
+            if (options == 0)
+                break;
+            current = this.neighbours[rng.nextInt(options)];
+            this.visited[current] = this.stamp;
+            path[length++] = current;
+        }
+        return length;
+    }
+
+    private int addNeighbour(int options, int node) {
+        if (options == this.neighbours.length)
+            this.neighbours = Arrays.copyOf(this.neighbours, options * 2);
+        this.neighbours[options] = node;
+        return options + 1;
+    }
+
+    private static boolean appendNode(BinaryTree tree, int node, String[] kinds, String[] subtokens,
+                                      Utf8Buffer out, boolean first) {
+        final int kind = tree.kindId(node);
+        if (kind != BinaryTree.NO_KIND) {
+            if (!first)
+                out.append(' ');
+            out.append(kinds[kind]);
+            first = false;
+        }
+        for (int j = 0; j < tree.subtokenCount(node); j++) {
+            if (!first)
+                out.append(' ');
+            out.append(subtokens[tree.subtokenId(node, j)]);
+            first = false;
+        }
+        return first;
+    }
+
+    private void nextStamp() {
+        if (++this.stamp == 0) {
+            Arrays.fill(this.visited, 0);
+            this.stamp = 1;
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if (this.visited.length >= n)
+            return;
+        this.visited = new int[n];
+        this.stamp = 0;
+        this.candidates = new int[n];
+        this.left = new int[n];
+        this.right = new int[n];
+    }
+}
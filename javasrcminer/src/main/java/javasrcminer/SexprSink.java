@@ -0,0 +1,18 @@
+package javasrcminer;
+
+/**
+ * SexprSink
+ *
+ * Where SexprTreeVisitor writes its S-expression: into a Utf8Buffer as
+ * text, or into a BinaryTree.SexprReader, which builds the binary tree
+ * tree2bin would make of that text. One visitor serves both formats, so
+ * they can't drift apart.
+ */
+interface SexprSink {
+
+    SexprSink append(char c);
+
+    SexprSink append(CharSequence s);
+
+    SexprSink append(long value);
+}
@@ -0,0 +1,126 @@
+package javasrcminer;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import polyglot.ast.Id;
+import polyglot.ast.Lang;
+import polyglot.ast.LocalDecl;
+import polyglot.ast.Node;
+import polyglot.ast.NumLit;
+import polyglot.ast.Prefix;
+import polyglot.ast.Receiver;
+import polyglot.ast.Return;
+import polyglot.ast.StringLit;
+import polyglot.ast.TypeNode;
+import polyglot.ext.jl5.ast.AnnotationElem;
+import polyglot.visit.HaltingVisitor;
+import polyglot.visit.NodeVisitor;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SexprTreeVisitor
+ *
+ * Writes an AST as an S-expression, either the full AST or simply
+ * shape+subtokens, into a SexprSink as nodes are visited: encoded straight
+ * into a UTF-8 buffer for text trees, or read into a binary tree.
+ */
+final class SexprTreeVisitor extends HaltingVisitor {
+
+    private final SexprSink out;
+    private final boolean includeSyntax;
+    private final SubtokenCache subtokenCache;
+
+    // Shared with the copies bypassChildren makes
+    private final AtomicInteger openParens = new AtomicInteger(0);
+
+    SexprTreeVisitor(Lang lang, SexprSink out, boolean includeSyntax, SubtokenCache subtokenCache) {
+        super(lang);
+        this.out = out;
+        this.includeSyntax = includeSyntax;
+        this.subtokenCache = subtokenCache;
+    }
+
+    @Override
+    public NodeVisitor enter(Node parent, Node n) {
+        assert openParens.addAndGet(1) >= 1;
+        if (n instanceof Id) {
+            final String idStr = ((Id)n).id();
+            out.append(includeSyntax ? "(id [\"" : "[");
+            appendSubtokens(idStr, (includeSyntax ? "\" \"" : " "));
+            out.append(includeSyntax ? "\"]" : "]");
+            return bypassChildren(n);
+        } else if (!includeSyntax) {
+            out.append('(');
+        } else if (n instanceof polyglot.ast.Assign) {
+            out.append('(');
+            out.append(String.valueOf(((polyglot.ast.Assign) n).operator()));
+            out.append(' ');
+        } else if (n instanceof polyglot.ast.Eval) {
+            out.append("(e ");
+        } else if (n instanceof polyglot.ast.Call) {
+            out.append("(call ");
+        } else if (n instanceof TypeNode) {
+            String typeName = ((TypeNode) n).name();
+            out.append("(type ");
+            if (typeName == null) {
+                out.append("'unnamed");
+            } else {
+                out.append('[');
+                appendSubtokens(typeName, " ");
+                out.append(']');
+            }
+            // out.append(")");
+            return bypassChildren(n);
+        } else if (n instanceof Prefix) {
+            out.append("(prefix ");
+        } else if (n instanceof polyglot.ast.While) {
+            out.append("(while ");
+        } else if (n instanceof polyglot.ast.New) {
+            out.append("(new ");
+        } else if (n instanceof LocalDecl) {
+            out.append("(decl ");
+        } else if (n instanceof Return) {
+            out.append("(return ");
+        } else if (n instanceof AnnotationElem) {
+            out.append("(anno ");
+        } else if (n instanceof Receiver) {
+            out.append("(. ");
+        } else if (n instanceof NumLit) {
+            out.append(((NumLit) n).longValue());
+        } else if (n instanceof StringLit) {
+            out.append('"');
+            // Should be a similar enough escape to avoid introducing
+            // any systematic or frequent problems into the dataset.
+            out.append(StringEscapeUtils.escapeJava(((StringLit) n).value()));
+            out.append('"');
+        } else {
+            final String DROP_PREFIX = "polyglot.ast.";
+            String fallbackName = n.getClass().getName();
+            if (fallbackName.startsWith(DROP_PREFIX))
+                fallbackName = fallbackName.substring(DROP_PREFIX.length());
+            out.append('(');
+            out.append(fallbackName);
+            out.append(' ');
+        }
+        return this;
+    }
+
+    @Override
+    public Node leave(Node old, Node n, NodeVisitor v) {
+        assert !(n instanceof Id);
+        assert openParens.addAndGet(-1) >= 0;
+        out.append(')');
+        return n;
+    }
+
+    private void appendSubtokens(String token, String separator) {
+        final List<String> subtokens = subtokenCache.subtokenize(token);
+        for (int i = 0; i < subtokens.size(); i++) {
+            if (i > 0)
+                out.append(separator);
+            out.append(subtokens.get(i));
+        }
+    }
+}
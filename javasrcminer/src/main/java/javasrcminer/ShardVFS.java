@@ -0,0 +1,314 @@
+package javasrcminer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * ShardVFS
+ *
+ * Packs a run's output files into a few big shard files rather than one
+ * small file each, which spares the filesystem's metadata and makes a corpus
+ * quick to list, copy and read back for training. A ShardVFS is a directory
+ * whose name ends in .shards, holding shard-00000.bin, shard-00001.bin, ...
+ * and index.tsv.
+ *
+ * A shard is a run of records, each a file's name and contents:
+ *
+ *     u16 name length, name (UTF-8), u32 contents length, contents
+ *
+ * big-endian, so a shard can be read front to back without the index. A new
+ * shard is started when a record would take the current one past the shard
+ * size. index.tsv has a line "shard\toffset\tlength\tname" per record, the
+ * offset being that of the contents, for random access by name.
+ *
+ * Reading maps the shards into memory: forEachFile goes through them in
+ * order and read looks a file up in the index. Like a tarball, a ShardVFS
+ * is written once, start to finish; only one file may be open at a time.
+ * A record's header goes out before its contents, so one closed short of
+ * its length can't be taken back: the VFS then refuses any more records,
+ * as they would be misread after it.
+ */
+public class ShardVFS implements VFS {
+
+    public static final String SUFFIX = ".shards";
+    public static final long DEFAULT_SHARD_BYTES = 1L << 30;
+
+    private static final String INDEX_NAME = "index.tsv";
+    private static final int MAX_NAME_BYTES = 0xffff;
+    private static final int HEADER_BYTES = 2 + 4;
+
+    private final Path root;
+    private final long shardBytes;
+
+    // Writing
+    private DataOutputStream shardOut = null;
+    private BufferedWriter indexOut = null;
+    private int shard = -1;
+    private long shardPosition = 0;
+    private boolean fileOpen = false;
+    private String tornRecord = null;
+
+    // Reading by name, loaded on first use
+    private Map<String, Location> index = null;
+    private final List<MappedByteBuffer> mapped = new ArrayList<>();
+
+    public ShardVFS(Path root) {
+        this(root, DEFAULT_SHARD_BYTES);
+    }
+
+    public ShardVFS(Path root, long shardBytes) {
+        assert root != null;
+        if (shardBytes < HEADER_BYTES || shardBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("shard size must be in [" + HEADER_BYTES + ", 2^31); got " + shardBytes);
+        this.root = root;
+        this.shardBytes = shardBytes;
+    }
+
+    public static boolean isShardPath(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(SUFFIX);
+    }
+
+    private Path shardPath(int shard) {
+        return this.root.resolve(String.format("shard-%05d.bin", shard));
+    }
+
+    public void close() throws IOException {
+        try {
+            if (this.shardOut != null)
+                this.shardOut.close();
+        } finally {
+            this.shardOut = null;
+            if (this.indexOut != null)
+                this.indexOut.close();
+            this.indexOut = null;
+        }
+    }
+
+    public boolean prepareOutputDirectory() throws IOException {
+        if (Files.exists(this.root)) {
+            try (Stream<Path> entries = Files.list(this.root)) {
+                if (entries.findAny().isPresent()) {
+                    System.err.printf("%s already exists and is non-empty", this.root.toAbsolutePath());
+                    System.exit(2);
+                    return false;
+                }
+            }
+        } else {
+            Files.createDirectory(this.root);
+        }
+        return true;
+    }
+
+    public void unlinkDirectoryIfEmpty() throws IOException {
+        if (!Files.isDirectory(this.root, LinkOption.NOFOLLOW_LINKS))
+            return;
+        try (Stream<Path> entries = Files.list(this.root)) {
+            if (entries.findAny().isPresent())
+                return;
+        }
+        Files.deleteIfExists(this.root);
+    }
+
+    /** Hands out the matching files of every shard, in the order they were written. */
+    public void forEachFile(String ext, Consumer<InputFile> it) throws IOException {
+        if (!Files.isDirectory(this.root))
+            throw new NoSuchFileException(this.root.toString());
+        final String containerPath = this.root.toAbsolutePath().toString();
+        for (int shard = 0; Files.exists(shardPath(shard)); shard++) {
+            final ByteBuffer records = mapShard(shard);
+            while (records.hasRemaining()) {
+                final String name = readName(records, shard);
+                final int length = records.getInt();
+                if (length < 0 || length > records.remaining())
+                    throw new IOException(String.format("%s: truncated record %s", shardPath(shard), name));
+                if (!name.toLowerCase().endsWith(ext)) {
+                    records.position(records.position() + length);
+                    continue;
+                }
+                final byte[] contents = new byte[length];
+                records.get(contents);
+                it.accept(new MemoryInputFile(containerPath, name, contents));
+            }
+        }
+    }
+
+    private String readName(ByteBuffer records, int shard) throws IOException {
+        if (records.remaining() < HEADER_BYTES)
+            throw new IOException(String.format("%s: truncated record at %d", shardPath(shard), records.position()));
+        final int nameLength = records.getShort() & 0xffff;
+        if (nameLength + 4 > records.remaining())
+            throw new IOException(String.format("%s: truncated record at %d", shardPath(shard), records.position()));
+        final byte[] name = new byte[nameLength];
+        records.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The contents of the file written as path, mapped read-only, or null if
+     * there is none.
+     */
+    public ByteBuffer read(String path) throws IOException {
+        if (this.index == null)
+            this.index = loadIndex();
+        final Location location = this.index.get(path);
+        if (location == null)
+            return null;
+        final ByteBuffer contents = map(location.shard);
+        contents.position((int) location.offset);
+        contents.limit((int) (location.offset + location.length));
+        return contents.slice();
+    }
+
+    private Map<String, Location> loadIndex() throws IOException {
+        final Map<String, Location> index = new HashMap<>();
+        final Path indexPath = this.root.resolve(INDEX_NAME);
+        if (!Files.exists(indexPath))
+            return index;
+        try (Stream<String> lines = Files.lines(indexPath, StandardCharsets.UTF_8)) {
+            lines.forEach(line -> {
+                final String[] fields = line.split("\t", 4);
+                if (fields.length != 4)
+                    throw new IllegalArgumentException(String.format("%s: malformed line %s", indexPath, line));
+                index.put(fields[3], new Location(Integer.parseInt(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+            });
+        }
+        return index;
+    }
+
+    // Shards mapped for random access stay mapped
+    private ByteBuffer map(int shard) throws IOException {
+        while (this.mapped.size() <= shard)
+            this.mapped.add(null);
+        if (this.mapped.get(shard) == null)
+            this.mapped.set(shard, mapShard(shard));
+        return this.mapped.get(shard).duplicate();
+    }
+
+    private MappedByteBuffer mapShard(int shard) throws IOException {
+        try (FileChannel channel = FileChannel.open(shardPath(shard), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(String.format("%s is over 2 GiB", shardPath(shard)));
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static final class Location {
+        final int shard;
+        final long offset;
+        final long length;
+
+        Location(int shard, long offset, long length) {
+            this.shard = shard;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    public void writeFile(String path, byte[] bytes) throws IOException {
+        try (OutputStream out = openFile(path, bytes.length)) {
+            out.write(bytes);
+        }
+    }
+
+    public OutputStream openFile(String path, long length) throws IOException {
+        if (this.fileOpen)
+            throw new IllegalStateException("another file is still open in " + this.root);
+        if (this.tornRecord != null)
+            throw new IllegalStateException(String.format("%s: %s was left short of its length, so nothing can follow it",
+                    this.root, this.tornRecord));
+        final byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES || path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0)
+            throw new IOException("not a valid name for a shard record: " + path);
+        // A record bigger than the shard size gets a shard to itself, but every shard must be mappable
+        final long recordBytes = HEADER_BYTES + name.length + length;
+        if (recordBytes > Integer.MAX_VALUE)
+            throw new IOException(String.format("%s is too big for a shard record (%d bytes)", path, length));
+
+        // Roll over to a new shard, unless this one is still empty
+        if (this.shardOut == null || (this.shardPosition > 0 && this.shardPosition + recordBytes > this.shardBytes))
+            startShard();
+
+        this.shardOut.writeShort(name.length);
+        this.shardOut.write(name);
+        this.shardOut.writeInt((int) length);
+        this.shardPosition += HEADER_BYTES + name.length;
+        final long offset = this.shardPosition;
+        this.fileOpen = true;
+
+        final DataOutputStream shardOut = this.shardOut;
+        return new FilterOutputStream(shardOut) {
+            private long written = 0;
+            private boolean closed = false;
+
+            @Override
+            public void write(int b) throws IOException {
+                checkRoom(1);
+                shardOut.write(b);
+                this.written++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                checkRoom(len);
+                shardOut.write(b, off, len);
+                this.written += len;
+            }
+
+            private void checkRoom(int n) throws IOException {
+                if (this.written + n > length)
+                    throw new IOException(String.format("%s: writing past its length of %d bytes", path, length));
+            }
+
+            @Override
+            public void flush() {
+                // The shard is flushed as a whole
+            }
+
+            // Closing ends the record, not the shard
+            @Override
+            public void close() throws IOException {
+                if (this.closed)
+                    return;
+                this.closed = true;
+                ShardVFS.this.fileOpen = false;
+                if (this.written != length) {
+                    ShardVFS.this.tornRecord = path;
+                    throw new IOException(String.format("%s: wrote %d of %d bytes", path, this.written, length));
+                }
+                ShardVFS.this.shardPosition += length;
+                ShardVFS.this.indexOut.write(String.format("%d\t%d\t%d\t%s\n", ShardVFS.this.shard, offset, length, path));
+            }
+        };
+    }
+
+    private void startShard() throws IOException {
+        if (this.shardOut != null)
+            this.shardOut.close();
+        if (this.indexOut == null)
+            this.indexOut = Files.newBufferedWriter(this.root.resolve(INDEX_NAME), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.shard++;
+        this.shardOut = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(shardPath(this.shard), StandardOpenOption.CREATE_NEW), 1 << 16));
+        this.shardPosition = 0;
+    }
+}
@@ -0,0 +1,154 @@
+package javasrcminer;
+
+import java.util.Arrays;
+
+/**
+ * StringIntCounter
+ *
+ * An open-addressing (linear probing) String-to-int counter. Counts live in
+ * a primitive array next to the keys, so incrementing neither boxes nor
+ * looks the key up twice. Not thread-safe: give each thread its own and
+ * merge them with addAll.
+ */
+final class StringIntCounter {
+
+    private static final float MAX_LOAD = 0.6f;
+
+    private String[] keys;
+    private int[] hashes;
+    private int[] counts;
+    private int size = 0;
+    private int mask;
+
+    public StringIntCounter() {
+        this(1024);
+    }
+
+    public StringIntCounter(int expectedSize) {
+        int capacity = 16;
+        while (capacity * MAX_LOAD < expectedSize)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void increment(String key) {
+        add(key, 1);
+    }
+
+    public void add(String key, int delta) {
+        addHashed(key, mix(key.hashCode()), delta);
+    }
+
+    public int get(String key) {
+        final int hash = mix(key.hashCode());
+        for (int slot = hash & this.mask; this.keys[slot] != null; slot = (slot + 1) & this.mask) {
+            if (this.hashes[slot] == hash && this.keys[slot].equals(key))
+                return this.counts[slot];
+        }
+        return 0;
+    }
+
+    /** Adds every count in other to this counter. */
+    public void addAll(StringIntCounter other) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            if (other.keys[slot] != null)
+                addHashed(other.keys[slot], other.hashes[slot], other.counts[slot]);
+        }
+    }
+
+    /**
+     * Returns the words counted at least minCount times, ordered by count
+     * (descending) and then by word, so the order doesn't depend on how the
+     * counts were sharded or merged.
+     */
+    public Sorted sortedByCount(int minCount) {
+        // Prune first, then sort (count, slot) pairs packed into longs
+        long[] packed = new long[this.size];
+        int n = 0;
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot] != null && this.counts[slot] >= minCount)
+                packed[n++] = ((long) (Integer.MAX_VALUE - this.counts[slot]) << 32) | slot;
+        }
+        packed = Arrays.copyOf(packed, n);
+        Arrays.sort(packed);
+
+        final String[] words = new String[n];
+        final int[] wordCounts = new int[n];
+        for (int i = 0; i < n; i++) {
+            final int slot = (int) packed[i];
+            words[i] = this.keys[slot];
+            wordCounts[i] = this.counts[slot];
+        }
+
+        // Only runs of equal counts need comparing as strings
+        int runStart = 0;
+        for (int i = 1; i <= n; i++) {
+            if (i == n || wordCounts[i] != wordCounts[runStart]) {
+                if (i - runStart > 1)
+                    Arrays.sort(words, runStart, i);
+                runStart = i;
+            }
+        }
+        return new Sorted(words, wordCounts);
+    }
+
+    public static final class Sorted {
+        public final String[] words;
+        public final int[] counts;
+
+        Sorted(String[] words, int[] counts) {
+            this.words = words;
+            this.counts = counts;
+        }
+    }
+
+    private void addHashed(String key, int hash, int delta) {
+        int slot = hash & this.mask;
+        while (this.keys[slot] != null) {
+            if (this.hashes[slot] == hash && this.keys[slot].equals(key)) {
+                this.counts[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        this.keys[slot] = key;
+        this.hashes[slot] = hash;
+        this.counts[slot] = delta;
+        if (++this.size > this.keys.length * MAX_LOAD)
+            grow();
+    }
+
+    private void grow() {
+        final String[] oldKeys = this.keys;
+        final int[] oldHashes = this.hashes;
+        final int[] oldCounts = this.counts;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null)
+                continue;
+            int slot = oldHashes[i] & this.mask;
+            while (this.keys[slot] != null)
+                slot = (slot + 1) & this.mask;
+            this.keys[slot] = oldKeys[i];
+            this.hashes[slot] = oldHashes[i];
+            this.counts[slot] = oldCounts[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    // Spread String.hashCode's low bits, which cluster for similar short strings
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
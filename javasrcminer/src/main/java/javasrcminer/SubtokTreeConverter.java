@@ -0,0 +1,167 @@
+package javasrcminer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * SubtokTreeConverter
+ *
+ * Rewrites an S-expression tree of tokens, as written by the Python and Go
+ * miners, into one of subtokens (the toktree2subtoktree command): every
+ * token becomes a bracketed list of its subtokens, "(Call getValue)"
+ * becoming "([call] [get value])".
+ *
+ * Works on bytes in a single pass, reading the input through a memory map
+ * and writing through a reused buffer, so neither side of a huge file ever
+ * sits on the heap as a String. Produces the same bytes as the regex
+ * ([()\]\s]*)([^()\[\]\s]*) applied to the decoded text did, quirks
+ * included: an opening bracket in the input is dropped. Every delimiter is
+ * ASCII, and UTF-8 never uses ASCII bytes inside a multi-byte character,
+ * so the bytes split exactly where the characters did; and the subtokenizer
+ * stops at the first character that isn't an ASCII letter, digit or
+ * underscore, so a token's remaining bytes needn't be decoded at all.
+ * Holds scratch space, so use one per thread.
+ */
+final class SubtokTreeConverter {
+
+    // Huge files are mapped a window at a time, as a map is limited to 2 GiB
+    private static final long MAP_WINDOW_BYTES = 1L << 28;
+
+    private final SubtokenBuffer subtokens = new SubtokenBuffer();
+    private final Token token = new Token();
+    private final byte[] buffer = new byte[1 << 16];
+    private int buffered = 0;
+    private OutputStream out = null;
+
+    /** Converts the file at in, writing the result to out; out is left open. */
+    public void convert(Path in, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(in, StandardOpenOption.READ)) {
+            begin(out);
+            final long size = channel.size();
+            for (long position = 0; position < size; position += MAP_WINDOW_BYTES)
+                feed(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_BYTES, size - position)));
+            finish();
+        }
+    }
+
+    public void convert(ByteBuffer in, OutputStream out) throws IOException {
+        begin(out);
+        feed(in);
+        finish();
+    }
+
+    private void begin(OutputStream out) {
+        this.out = out;
+        this.buffered = 0;
+        this.token.clear();
+    }
+
+    private void feed(ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            final byte b = in.get();
+            if (isDelimiter(b)) {
+                endToken();
+                write(b);
+            } else if (b == '[') {
+                // The old regex matched nothing at an opening bracket and stepped over it
+                endToken();
+            } else {
+                this.token.add(b);
+            }
+        }
+    }
+
+    private void finish() throws IOException {
+        try {
+            endToken();
+            this.out.write(this.buffer, 0, this.buffered);
+        } finally {
+            this.out = null;
+            this.buffered = 0;
+            this.token.clear();
+        }
+    }
+
+    private void endToken() throws IOException {
+        if (this.token.length() == 0)
+            return;
+        SubtokenScanner.scan(this.token, false, this.subtokens);
+        write((byte) '[');
+        for (int i = 0; i < this.subtokens.size(); i++) {
+            if (i > 0)
+                write((byte) ' ');
+            for (int j = 0, n = this.subtokens.length(i); j < n; j++)
+                write((byte) this.subtokens.charAt(i, j));
+        }
+        write((byte) ']');
+        this.token.clear();
+    }
+
+    private void write(byte b) throws IOException {
+        if (this.buffered == this.buffer.length) {
+            this.out.write(this.buffer, 0, this.buffered);
+            this.buffered = 0;
+        }
+        this.buffer[this.buffered++] = b;
+    }
+
+    // ( ) ] and the characters of the regex class \s
+    private static boolean isDelimiter(byte b) {
+        return b == '(' || b == ')' || b == ']' || SubtokenScanner.isWhitespace((char) b);
+    }
+
+    /**
+     * The bytes of the current token as chars, up to and including the first
+     * that can't be part of a subtoken: the subtokenizer never looks past it.
+     */
+    private static final class Token implements CharSequence {
+        private char[] chars = new char[64];
+        private int length = 0;
+        private boolean complete = false;
+
+        void add(byte b) {
+            if (this.complete)
+                return;
+            if (this.length == this.chars.length)
+                this.chars = Arrays.copyOf(this.chars, this.length * 2);
+            // Bytes of multi-byte characters become Latin-1 stand-ins, which stop the subtokenizer as they would
+            final char c = (char) (b & 0xff);
+            this.chars[this.length++] = c;
+            this.complete = !isSubtokenChar(c);
+        }
+
+        void clear() {
+            this.length = 0;
+            this.complete = false;
+        }
+
+        private static boolean isSubtokenChar(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+        }
+
+        @Override
+        public int length() {
+            return this.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return this.chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(this.chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(this.chars, 0, this.length);
+        }
+    }
+}
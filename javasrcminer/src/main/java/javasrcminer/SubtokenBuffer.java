@@ -0,0 +1,87 @@
+package javasrcminer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SubtokenBuffer
+ *
+ * A reusable, growable holder for the subtokens of one identifier, filled by
+ * SubtokenScanner. Subtokens are stored lower-cased, back to back in one
+ * char array, so scanning into a warmed-up buffer allocates nothing.
+ */
+public final class SubtokenBuffer {
+
+    private char[] chars = new char[64];
+    private int[] ends = new int[16];
+    private int count = 0;
+
+    public void clear() {
+        this.count = 0;
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+    public int length(int i) {
+        return end(i) - start(i);
+    }
+
+    public char charAt(int i, int offset) {
+        return this.chars[start(i) + offset];
+    }
+
+    public String get(int i) {
+        return new String(this.chars, start(i), length(i));
+    }
+
+    public StringBuilder appendTo(StringBuilder builder, int i) {
+        return builder.append(this.chars, start(i), length(i));
+    }
+
+    /** Appends all subtokens to builder, separated by separator, like String.join. */
+    public StringBuilder appendJoined(StringBuilder builder, String separator) {
+        for (int i = 0; i < this.count; i++) {
+            if (i > 0)
+                builder.append(separator);
+            appendTo(builder, i);
+        }
+        return builder;
+    }
+
+    public List<String> toList() {
+        final List<String> subtokens = new ArrayList<>(this.count);
+        for (int i = 0; i < this.count; i++)
+            subtokens.add(get(i));
+        return subtokens;
+    }
+
+    /** Appends token[start, end) as a new subtoken, lower-casing ASCII letters. */
+    void add(CharSequence token, int start, int end) {
+        final int offset = this.count == 0 ? 0 : this.ends[this.count - 1];
+        final int newLength = offset + (end - start);
+        if (newLength > this.chars.length)
+            this.chars = Arrays.copyOf(this.chars, Math.max(newLength, this.chars.length * 2));
+        if (this.count == this.ends.length)
+            this.ends = Arrays.copyOf(this.ends, this.ends.length * 2);
+
+        int o = offset;
+        for (int i = start; i < end; i++) {
+            final char c = token.charAt(i);
+            this.chars[o++] = (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+        this.ends[this.count++] = newLength;
+    }
+
+    private int start(int i) {
+        return i == 0 ? 0 : this.ends[i - 1];
+    }
+
+    private int end(int i) {
+        if (i < 0 || i >= this.count)
+            throw new IndexOutOfBoundsException("subtoken " + i + " of " + this.count);
+        return this.ends[i];
+    }
+}
@@ -0,0 +1,189 @@
+package javasrcminer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * SubtokenCache
+ *
+ * A thread-safe, size-bounded memo of identifier-to-subtokens in front of a
+ * subtokenizer. Identifier frequencies are heavily skewed, so each shard is
+ * a segmented LRU: new identifiers enter a probationary segment and are only
+ * promoted to the protected segment on a second hit, which keeps one-off
+ * names from flushing out "i", "get" and friends. Memory is capped by an
+ * estimate of the bytes held by keys and values.
+ */
+public final class SubtokenCache {
+
+    private static final int SHARD_COUNT = 64;
+
+    // Share of each shard's budget reserved for identifiers seen more than once
+    private static final double PROTECTED_FRACTION = 0.8;
+
+    private final Function<String, List<String>> subtokenizer;
+    private final Shard[] shards;
+    private final long maxBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /** A cache holding at most (roughly) maxBytes; 0 disables caching. */
+    public SubtokenCache(Function<String, List<String>> subtokenizer, long maxBytes) {
+        assert subtokenizer != null;
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("cache size must not be negative; got " + maxBytes);
+        this.subtokenizer = subtokenizer;
+        this.maxBytes = maxBytes;
+        this.shards = new Shard[SHARD_COUNT];
+        for (int i = 0; i < SHARD_COUNT; i++)
+            this.shards[i] = new Shard(maxBytes / SHARD_COUNT);
+    }
+
+    /** Returns the (unmodifiable) subtokens of token, computing them on a miss. */
+    public List<String> subtokenize(String token) {
+        if (this.maxBytes == 0) {
+            this.misses.increment();
+            return this.subtokenizer.apply(token);
+        }
+
+        final Shard shard = this.shards[(token.hashCode() * 0x9E3779B9 >>> 26) & (SHARD_COUNT - 1)];
+        List<String> subtokens = shard.get(token);
+        if (subtokens != null) {
+            this.hits.increment();
+            return subtokens;
+        }
+
+        // Computed outside the shard lock; a racing thread may compute it too
+        this.misses.increment();
+        subtokens = Collections.unmodifiableList(Arrays.asList(
+                this.subtokenizer.apply(token).toArray(new String[0])));
+        this.evictions.add(shard.put(token, subtokens, estimateBytes(token, subtokens)));
+        return subtokens;
+    }
+
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    public long evictions() {
+        return this.evictions.sum();
+    }
+
+    public long estimatedBytes() {
+        long total = 0;
+        for (Shard shard : this.shards)
+            total += shard.bytes();
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        final long hits = hits(), misses = misses();
+        return String.format("subtoken cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, ~%d of %d bytes used",
+                hits, misses, hits + misses == 0 ? 0.0 : 100.0 * hits / (hits + misses),
+                evictions(), estimatedBytes(), this.maxBytes);
+    }
+
+    // Rough heap footprint on a 64-bit JVM with compressed oops
+    private static long estimateBytes(String token, List<String> subtokens) {
+        long bytes = 64 + stringBytes(token);                 // map entry + key
+        bytes += 32 + 16 + 4L * subtokens.size();             // list wrappers + array
+        for (String subtoken : subtokens)
+            bytes += stringBytes(subtoken);
+        return bytes;
+    }
+
+    private static long stringBytes(String s) {
+        return 40 + 2L * s.length();
+    }
+
+    private static final class Entry {
+        final List<String> subtokens;
+        final long bytes;
+
+        Entry(List<String> subtokens, long bytes) {
+            this.subtokens = subtokens;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Shard {
+        private final long maxBytes;
+        private final long maxProtectedBytes;
+        private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(16, 0.75f, false);
+        private final LinkedHashMap<String, Entry> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+        private long probationBytes = 0;
+        private long protectedBytes = 0;
+
+        Shard(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.maxProtectedBytes = (long) (maxBytes * PROTECTED_FRACTION);
+        }
+
+        synchronized long bytes() {
+            return this.probationBytes + this.protectedBytes;
+        }
+
+        synchronized List<String> get(String token) {
+            Entry entry = this.protectedEntries.get(token);
+            if (entry != null)
+                return entry.subtokens;
+
+            // A second hit promotes out of probation
+            entry = this.probation.remove(token);
+            if (entry == null)
+                return null;
+            this.probationBytes -= entry.bytes;
+            this.protectedEntries.put(token, entry);
+            this.protectedBytes += entry.bytes;
+
+            // Overflow from protected goes back to probation as most recent
+            final Iterator<Map.Entry<String, Entry>> it = this.protectedEntries.entrySet().iterator();
+            while (this.protectedBytes > this.maxProtectedBytes && it.hasNext()) {
+                final Map.Entry<String, Entry> demoted = it.next();
+                it.remove();
+                this.protectedBytes -= demoted.getValue().bytes;
+                this.probation.put(demoted.getKey(), demoted.getValue());
+                this.probationBytes += demoted.getValue().bytes;
+            }
+            return entry.subtokens;
+        }
+
+        /** Inserts into probation and returns how many entries were evicted. */
+        synchronized int put(String token, List<String> subtokens, long bytes) {
+            // Never let one huge identifier wipe out a shard
+            if (bytes > this.maxBytes / 8)
+                return 0;
+            if (this.probation.containsKey(token) || this.protectedEntries.containsKey(token))
+                return 0;
+            this.probation.put(token, new Entry(subtokens, bytes));
+            this.probationBytes += bytes;
+
+            int evicted = 0;
+            final Iterator<Entry> probationIt = this.probation.values().iterator();
+            while (this.probationBytes + this.protectedBytes > this.maxBytes && probationIt.hasNext()) {
+                this.probationBytes -= probationIt.next().bytes;
+                probationIt.remove();
+                evicted++;
+            }
+            final Iterator<Entry> protectedIt = this.protectedEntries.values().iterator();
+            while (this.probationBytes + this.protectedBytes > this.maxBytes && protectedIt.hasNext()) {
+                this.protectedBytes -= protectedIt.next().bytes;
+                protectedIt.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package javasrcminer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * SubtokenDocConverter
+ *
+ * Turns a document of whitespace-separated tokens, one sequence per line,
+ * into the same lines of lower-cased subtokens (the t2st command). Lines are
+ * split with a scan for the characters of the regex class \s rather than
+ * String.split, and each token is subtokenized into a reused buffer, so a
+ * warmed-up converter allocates little more than the line strings.
+ *
+ * The output is byte for byte what `line.split("\\s+")` and the List-based
+ * subtokenizer produced: empty lines and lines starting with whitespace are
+ * dropped, every other line is written (if need be empty) followed by the
+ * platform line separator. Holds scratch space, so use one per thread.
+ */
+final class SubtokenDocConverter {
+
+    private static final int BUFFER_CHARS = 1 << 16;
+
+    private final SubtokenBuffer subtokens = new SubtokenBuffer();
+    private final StringBuilder line = new StringBuilder(2048);
+    private final Slice token = new Slice();
+    private final String lineSeparator = System.lineSeparator();
+
+    /** Converts the document at in into a new file at out; fails if out exists. */
+    public void convert(Path in, Path out) throws IOException {
+        try (InputStream input = Files.newInputStream(in);
+             OutputStream output = Files.newOutputStream(out, StandardOpenOption.CREATE_NEW)) {
+            convert(input, output);
+        }
+    }
+
+    /** Converts the UTF-8 document read from in onto out, closing neither. */
+    public void convert(InputStream in, OutputStream out) throws IOException {
+        // Strict UTF-8 both ways, as Files.lines and Files.newBufferedWriter are
+        final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8.newEncoder());
+        convert(new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()), writer);
+        writer.flush();
+    }
+
+    public void convert(Reader in, Writer out) throws IOException {
+        final BufferedReader reader = new BufferedReader(in, BUFFER_CHARS);
+        final BufferedWriter writer = new BufferedWriter(out, BUFFER_CHARS);
+        String text;
+        while ((text = reader.readLine()) != null) {
+            if (convertLine(text, this.line)) {
+                writer.append(this.line);
+                writer.write(this.lineSeparator);
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Puts the subtokens of text's tokens, separated by spaces, into out.
+     * Returns false, leaving out empty, if the line is dropped.
+     */
+    boolean convertLine(String text, StringBuilder out) {
+        out.setLength(0);
+        final int length = text.length();
+        if (length == 0 || SubtokenScanner.isWhitespace(text.charAt(0)))
+            return false;
+
+        int pos = 0;
+        int written = 0;
+        while (pos < length) {
+            final int start = pos;
+            while (pos < length && !SubtokenScanner.isWhitespace(text.charAt(pos)))
+                pos++;
+            this.token.set(text, start, pos);
+            OldSubtokenizer.subtokenize(this.token, this.subtokens);
+            for (int i = 0; i < this.subtokens.size(); i++) {
+                if (written++ > 0)
+                    out.append(' ');
+                this.subtokens.appendTo(out, i);
+            }
+            while (pos < length && SubtokenScanner.isWhitespace(text.charAt(pos)))
+                pos++;
+        }
+        return true;
+    }
+
+    // A reusable view of one token of a line, to subtokenize without a substring
+    private static final class Slice implements CharSequence {
+        private String text;
+        private int start;
+        private int end;
+
+        void set(String text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return this.end - this.start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return this.text.charAt(this.start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return this.text.subSequence(this.start + start, this.start + end);
+        }
+
+        @Override
+        public String toString() {
+            return this.text.substring(this.start, this.end);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package javasrcminer;
+
+/**
+ * SubtokenScanner
+ *
+ * A single-pass, character-class scanner that splits an identifier into
+ * subtokens. It reproduces the splits of the original regular expressions
+ * (a leading "_+" or "[a-z]+", then repeated "_*" followed by an uppercase
+ * run, digit run, "[A-Z]?[a-z]+" or, optionally, a run of punctuation)
+ * without allocating.
+ */
+final class SubtokenScanner {
+
+    private SubtokenScanner() {
+    }
+
+    /**
+     * Scans token into out (clearing it first). With specialRuns set, runs of
+     * certain punctuation (as in Subtokenizer) also form subtokens. Returns
+     * whether the whole token was consumed; if not, out holds the subtokens
+     * found before the first character that couldn't be matched.
+     *
+     * @throws IllegalArgumentException if the token is empty or has whitespace
+     * before its last non-whitespace character
+     */
+    static boolean scan(CharSequence token, boolean specialRuns, SubtokenBuffer out) {
+        out.clear();
+        checkToken(token);
+
+        final int length = token.length();
+        int pos = 0;
+
+        // Leading underscores or lowercase letters form their own subtoken
+        final char first = token.charAt(0);
+        if (first == '_') {
+            pos = skipUnderscores(token, 0, length);
+            out.add(token, 0, pos);
+        } else if (isLower(first)) {
+            pos = skipLower(token, 1, length);
+            out.add(token, 0, pos);
+        }
+        boolean consumedAll = pos == length;
+
+        while (true) {
+            // Underscores between subtokens are crossed and dropped
+            final int start = skipUnderscores(token, pos, length);
+            if (start == length)
+                break;
+            final int end = matchBody(token, start, length, specialRuns);
+            if (end < 0)
+                break;
+            out.add(token, start, end);
+            pos = end;
+            if (end == length)
+                consumedAll = true;
+        }
+        return consumedAll;
+    }
+
+    // Returns the end of the subtoken starting at start, or -1 if none does
+    private static int matchBody(CharSequence token, int start, int length, boolean specialRuns) {
+        final char c = token.charAt(start);
+
+        if (isUpper(c)) {
+            final int upperEnd = skipUpper(token, start + 1, length);
+            if (upperEnd == length || !isLower(token.charAt(upperEnd)))
+                return upperEnd;
+            // The last capital of a run begins the next, capitalized word
+            if (upperEnd - start >= 2)
+                return upperEnd - 1;
+            return skipLower(token, upperEnd + 1, length);
+        }
+
+        if (specialRuns) {
+            final int cls = specialClass(c);
+            if (cls != NOT_SPECIAL) {
+                int end = start + 1;
+                while (end < length && specialClass(token.charAt(end)) == cls)
+                    end++;
+                return end;
+            }
+        }
+
+        if (isDigit(c)) {
+            int end = start + 1;
+            while (end < length && isDigit(token.charAt(end)))
+                end++;
+            return end;
+        }
+
+        if (isLower(c))
+            return skipLower(token, start + 1, length);
+
+        return -1;
+    }
+
+    private static final int NOT_SPECIAL = 0;
+
+    // Characters of the same class form one run: "..", "<>", "()", "\"'", ...
+    private static int specialClass(char c) {
+        switch (c) {
+            case '.': return 1;
+            case '-': return 2;
+            case ':': return 3;
+            case '*': return 4;
+            case '&': return 5;
+            case '^': return 6;
+            case '"': case '\'': return 7;
+            case '/': return 8;
+            case '~': return 9;
+            case '<': case '>': return 10;
+            case '[': case ']': return 11;
+            case '(': case ')': return 12;
+            default: return NOT_SPECIAL;
+        }
+    }
+
+    // Matches the old `token.split("\\s").length != 1` check: only trailing whitespace is allowed
+    private static void checkToken(CharSequence token) {
+        final int length = token.length();
+        if (length == 0)
+            throw new IllegalArgumentException("given zero-length token");
+        int last = length - 1;
+        while (last >= 0 && isWhitespace(token.charAt(last)))
+            last--;
+        for (int i = 0; i < last; i++) {
+            if (isWhitespace(token.charAt(i)))
+                throw new IllegalArgumentException("given token had whitespace");
+        }
+        if (last < 0)
+            throw new IllegalArgumentException("given token had whitespace");
+    }
+
+    private static int skipUnderscores(CharSequence token, int pos, int length) {
+        while (pos < length && token.charAt(pos) == '_')
+            pos++;
+        return pos;
+    }
+
+    private static int skipLower(CharSequence token, int pos, int length) {
+        while (pos < length && isLower(token.charAt(pos)))
+            pos++;
+        return pos;
+    }
+
+    private static int skipUpper(CharSequence token, int pos, int length) {
+        while (pos < length && isUpper(token.charAt(pos)))
+            pos++;
+        return pos;
+    }
+
+    private static boolean isLower(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // The characters of the regex class \s
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
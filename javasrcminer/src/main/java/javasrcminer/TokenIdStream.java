@@ -0,0 +1,68 @@
+package javasrcminer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * TokenIdStream
+ *
+ * The packed form of a subtoken document: nothing but little-endian int32
+ * token ids, so a file can be memory-mapped (or numpy.fromfile'd with
+ * dtype '&lt;i4') and used without parsing. Id 0 is reserved for subtokens
+ * missing from the vocab; vocab index i is written as id i + 1.
+ */
+final class TokenIdStream {
+
+    public static final int UNKNOWN_ID = 0;
+
+    private TokenIdStream() {
+    }
+
+    public static int toTokenId(int vocabIndex) {
+        return vocabIndex == Vocab.UNKNOWN_INDEX ? UNKNOWN_ID : vocabIndex + 1;
+    }
+
+    /** Returns the vocab index for a token id, or Vocab.UNKNOWN_INDEX. */
+    public static int toVocabIndex(int tokenId) {
+        return tokenId == UNKNOWN_ID ? Vocab.UNKNOWN_INDEX : tokenId - 1;
+    }
+
+    /** Memory-maps a token id file as a read-only view of its ids. */
+    public static IntBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() % 4 != 0)
+                throw new IOException(path + " is not a whole number of token ids");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asIntBuffer();
+        }
+    }
+
+    /** Accumulates the token ids of one document. */
+    public static final class Builder {
+        private int[] ids = new int[256];
+        private int size = 0;
+
+        public void addVocabIndex(int vocabIndex) {
+            if (this.size == this.ids.length)
+                this.ids = Arrays.copyOf(this.ids, this.ids.length * 2);
+            this.ids[this.size++] = toTokenId(vocabIndex);
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public byte[] toBytes() {
+            final ByteBuffer bytes = ByteBuffer.allocate(4 * this.size).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asIntBuffer().put(this.ids, 0, this.size);
+            return bytes.array();
+        }
+    }
+}
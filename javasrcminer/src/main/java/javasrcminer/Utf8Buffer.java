@@ -0,0 +1,108 @@
+package javasrcminer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Utf8Buffer
+ *
+ * A growable byte buffer that encodes characters to UTF-8 as they are
+ * appended. Meant to be cleared and reused across documents so emitting a
+ * document doesn't go through a StringBuilder, a String and a byte[] copy.
+ */
+final class Utf8Buffer implements SexprSink {
+
+    private byte[] bytes;
+    private int length = 0;
+
+    public Utf8Buffer() {
+        this(8192);
+    }
+
+    public Utf8Buffer(int initialCapacity) {
+        this.bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    public int capacity() {
+        return this.bytes.length;
+    }
+
+    public void clear() {
+        this.length = 0;
+    }
+
+    @Override
+    public Utf8Buffer append(char c) {
+        if (c < 0x80) {
+            ensureCapacity(1);
+            this.bytes[this.length++] = (byte) c;
+        } else {
+            appendCodePoint(c);
+        }
+        return this;
+    }
+
+    @Override
+    public Utf8Buffer append(CharSequence s) {
+        final int n = s.length();
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) {
+                this.bytes[this.length++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+                ensureCapacity(n - i);
+            } else {
+                appendCodePoint(c);
+                ensureCapacity(n - i);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Utf8Buffer append(long value) {
+        return append(Long.toString(value));
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(this.bytes, 0, this.length);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.bytes, this.length);
+    }
+
+    // Lone surrogates become '?', as String.getBytes does
+    private void appendCodePoint(int cp) {
+        ensureCapacity(4);
+        if (cp < 0x800) {
+            this.bytes[this.length++] = (byte) (0xC0 | (cp >> 6));
+            this.bytes[this.length++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            if (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE) {
+                this.bytes[this.length++] = '?';
+                return;
+            }
+            this.bytes[this.length++] = (byte) (0xE0 | (cp >> 12));
+            this.bytes[this.length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            this.bytes[this.length++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            this.bytes[this.length++] = (byte) (0xF0 | (cp >> 18));
+            this.bytes[this.length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            this.bytes[this.length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            this.bytes[this.length++] = (byte) (0x80 | (cp & 0x3F));
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (this.length + extra > this.bytes.length)
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(this.length + extra, this.bytes.length * 2));
+    }
+}
@@ -1,26 +1,60 @@
 package javasrcminer;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
-import java.util.List;
 import java.util.function.Consumer;
 
 public interface VFS extends AutoCloseable {
     public static VFS createVFSForPath(Path path) throws IOException {
+        return createVFSForPath(path, CompressionOptions.DEFAULT);
+    }
+
+    public static VFS createVFSForPath(Path path, CompressionOptions compression) throws IOException {
         if (path.getFileName().toString().toLowerCase().endsWith(".tar.gz")) {
-            return new GzipTarballVFS(path);
+            return new GzipTarballVFS(path, compression);
+        }
+        if (ShardVFS.isShardPath(path)) {
+            return new ShardVFS(path);
         }
         return new FilesystemVFS(path);
     }
 
+    /** A VFS to read from, listing directories with up to crawlThreads threads. */
+    public static VFS createVFSForReading(Path path, int crawlThreads) throws IOException {
+        return createVFSForReading(path, crawlThreads, 0);
+    }
+
+    /**
+     * As createVFSForReading(path, crawlThreads), but archive entries over
+     * maxEntryBytes (0 for no limit) are handed out unread, as
+     * OversizedInputFiles.
+     */
+    public static VFS createVFSForReading(Path path, int crawlThreads, long maxEntryBytes) throws IOException {
+        if (path.getFileName().toString().toLowerCase().endsWith(".tar.gz")) {
+            return new GzipTarballVFS(path, CompressionOptions.DEFAULT, maxEntryBytes);
+        }
+        if (ShardVFS.isShardPath(path)) {
+            return new ShardVFS(path);
+        }
+        return new FilesystemVFS(path, crawlThreads);
+    }
+
     void close() throws Exception;
 
     boolean prepareOutputDirectory() throws IOException;
 
     void unlinkDirectoryIfEmpty() throws IOException;
     
-    void forEachFile(String ext, Consumer<File> it) throws IOException;
+    void forEachFile(String ext, Consumer<InputFile> it) throws IOException;
     
     void writeFile(String path, byte[] bytes) throws IOException;
+
+    /**
+     * Opens path for writing exactly length bytes, for callers that stream a
+     * file rather than materialize it as a byte[]. Archive formats need the
+     * length up front for the entry header. Closing the stream finishes the
+     * file; only one file may be open at a time.
+     */
+    OutputStream openFile(String path, long length) throws IOException;
 }
@@ -0,0 +1,45 @@
+package javasrcminer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Vocab
+ *
+ * A frequency-sorted vocabulary: index 0 is the most frequent word. Loaded
+ * either from the text format written by `vocab` or from the binary format
+ * of BinaryVocabFile.
+ */
+public interface Vocab {
+    /** Returned by getWordIndex for out-of-vocabulary words. */
+    int UNKNOWN_INDEX = -1;
+
+    public static Vocab open(Path path) throws IOException, VocabFile.InvalidVocabFileException {
+        final byte[] head = new byte[BinaryVocabFile.MAGIC.length];
+        int read = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int n;
+            while (read < head.length && (n = in.read(head, read, head.length - read)) > 0)
+                read += n;
+        }
+        if (read == head.length && Arrays.equals(head, BinaryVocabFile.MAGIC))
+            return BinaryVocabFile.open(path);
+        try (InputStreamReader reader = new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8)) {
+            return new VocabFile(reader);
+        }
+    }
+
+    int size();
+
+    /** Returns the index of word, or UNKNOWN_INDEX if it isn't in the vocabulary. */
+    int getWordIndex(String word);
+
+    String getWord(int index);
+
+    int getCount(int index);
+}
@@ -2,7 +2,9 @@ package javasrcminer;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -10,11 +12,12 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class VocabFile {
+public class VocabFile implements Vocab {
     protected static Pattern linePattern = Pattern.compile("^\\s*(?<cnt>\\d+)\\s+(?<word>[^\\s]*)\\s*$");
 
     protected List<String> sortedWords = new ArrayList<>(2000);
     protected Map<String, Integer> word2idx = new HashMap<>();
+    protected List<Integer> counts = new ArrayList<>(2000);
 
     public VocabFile(Reader reader) throws InvalidVocabFileException, IOException {
         int lastSeenCount = Integer.MAX_VALUE;
@@ -37,18 +40,35 @@ public class VocabFile {
             lastSeenCount = cnt;
             word2idx.put(word, sortedWords.size());
             sortedWords.add(word);
+            counts.add(cnt);
         }
     }
 
+    /** Writes vocab in the text format, one "count\tword" line per word. */
+    public static void write(Vocab vocab, Writer writer) {
+        PrintWriter printWriter = new PrintWriter(writer);
+        for (int i = 0; i < vocab.size(); i++)
+            printWriter.printf("%d\t%s\n", vocab.getCount(i), vocab.getWord(i));
+        printWriter.flush();
+    }
+
+    public int size() {
+        return sortedWords.size();
+    }
+
     public int getWordIndex(String word) {
-        return word2idx.get(word);
+        return word2idx.getOrDefault(word, UNKNOWN_INDEX);
     }
 
     public String getWord(int index) {
         return sortedWords.get(index);
     }
 
-    public class InvalidVocabFileException extends Exception {
+    public int getCount(int index) {
+        return counts.get(index);
+    }
+
+    public static class InvalidVocabFileException extends Exception {
         public InvalidVocabFileException(String msg) {
             super(msg);
         }
@@ -0,0 +1,81 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import polyglot.ast.Node;
+
+public class AstWalkerTest {
+
+    private static final int CHAIN_LENGTH = 20000;
+
+    private final ParseHelper.ParserContext context = new ParseHelper.ParserContext();
+
+    @Test
+    public void walksLikeNodeVisit() throws Exception {
+        for (String fixture : new String[] {"Small", "Medium"}) {
+            final Node root = TestAsts.parse(this.context, fixture, TestAsts.fixture(fixture));
+            for (boolean includeSyntax : new boolean[] {false, true}) {
+                final String expected = TestAsts.sexpr(this.context, root, includeSyntax, true);
+                assertTrue(expected.length() > 0);
+                assertEquals(fixture + ", includeSyntax=" + includeSyntax,
+                        expected, TestAsts.sexpr(this.context, root, includeSyntax, false));
+            }
+        }
+    }
+
+    @Test
+    public void walksChainsTooDeepForNodeVisit() throws Throwable {
+        final StringBuilder source = new StringBuilder("class Deep { String s = a");
+        for (int i = 1; i < CHAIN_LENGTH; i++)
+            source.append(" + a");
+        source.append("; }\n");
+        final Node root = onStack(1L << 28, () -> TestAsts.parse(this.context, "Deep", source.toString()));
+
+        try {
+            onStack(1L << 19, () -> TestAsts.sexpr(this.context, root, false, true));
+            throw new AssertionError("Node.visit didn't overflow a 512K stack");
+        } catch (StackOverflowError expected) {
+        }
+        final String walked = onStack(1L << 19, () -> TestAsts.sexpr(this.context, root, false, false));
+        assertEquals(onStack(1L << 28, () -> TestAsts.sexpr(this.context, root, false, true)), walked);
+    }
+
+    @Test
+    public void expiredDeadlineAbandonsTheWalk() throws Exception {
+        final Node root = TestAsts.parse(this.context, "Medium", TestAsts.fixture("Medium"));
+        try (ParseWatchdog.Deadline deadline = new ParseWatchdog().start(1)) {
+            while (!deadline.expired())
+                Thread.sleep(1);
+            final SexprTreeVisitor visitor = new SexprTreeVisitor(this.context.lang, new Utf8Buffer(), false,
+                    new SubtokenCache(OldSubtokenizer::subtokenize, 1 << 20));
+            this.context.walker.visit(root, visitor, deadline);
+            fail("walked past an expired deadline");
+        } catch (ParseWatchdog.Expired expected) {
+        }
+    }
+
+    // Runs task on a thread with the given stack size, rethrowing whatever it throws
+    private static <T> T onStack(long stackBytes, Callable<T> task) throws Throwable {
+        final AtomicReference<T> result = new AtomicReference<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread thread = new Thread(null, () -> {
+            try {
+                result.set(task.call());
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "AstWalkerTest", stackBytes);
+        thread.start();
+        thread.join();
+        if (failure.get() != null)
+            throw failure.get();
+        return result.get();
+    }
+}
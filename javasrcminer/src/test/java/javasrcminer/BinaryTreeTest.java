@@ -0,0 +1,81 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class BinaryTreeTest {
+
+    @Test
+    public void testBuilderRoundTrip() throws Exception {
+        BinaryTree.Builder builder = new BinaryTree.Builder();
+        builder.startNode("call");
+        builder.startNode("id").addSubtoken("get").addSubtoken("value").endNode();
+        builder.startNode("num").addSubtoken("42").endNode();
+        builder.addSubtoken("late");
+        builder.endNode();
+        builder.startNode("").endNode();
+        BinaryTree tree = BinaryTree.wrap(ByteBuffer.wrap(builder.toBytes()));
+
+        assertEquals(4, tree.nodeCount());
+        assertEquals("call", tree.kind(0));
+        assertEquals(2, tree.childCount(0));
+        assertEquals(1, tree.subtokenCount(0));
+        assertEquals("late", tree.subtoken(0, 0));
+        assertEquals("value", tree.subtoken(1, 1));
+        assertEquals(0, tree.parent(2));
+        assertEquals(-1, tree.parent(3));
+        assertEquals(1, tree.firstChild(0));
+        assertEquals(2, tree.nextSibling(1));
+        assertEquals(-1, tree.nextSibling(2));
+        assertEquals(3, tree.nextSibling(0));
+        assertEquals(3, tree.subtreeEnd(0));
+        assertEquals(BinaryTree.NO_KIND, tree.kindId(3));
+    }
+
+    @Test
+    public void testFromSexprLikeParseParen() throws Exception {
+        String text = "; /src/Foo.java\n(Block_c (call (id [\"get\" \"x\"]) (Local_c [a b]) 7))";
+        BinaryTree tree = BinaryTree.wrap(ByteBuffer.wrap(BinaryTree.fromSexpr(text, true).toBytes()));
+
+        assertEquals(4, tree.nodeCount());
+        assertEquals("Block_c", tree.kind(0));
+        assertEquals("call", tree.kind(1));
+        assertEquals(1, tree.subtokenCount(1));
+        assertEquals("7", tree.subtoken(1, 0));
+        assertEquals("id", tree.kind(2));
+        assertEquals("\"get\"", tree.subtoken(2, 0));
+        assertEquals("Local_c", tree.kind(3));
+        assertEquals("b", tree.subtoken(3, 1));
+
+        BinaryTree shape = BinaryTree.wrap(ByteBuffer.wrap(BinaryTree.fromSexpr(text, false).toBytes()));
+        assertEquals(BinaryTree.NO_KIND, shape.kindId(0));
+        assertEquals("Block_c", shape.subtoken(0, 0));
+    }
+
+    @Test
+    public void testSexprReaderTakesTextInPieces() throws Exception {
+        String text = "; /src/Foo.java\n(Block_c (call (id [\"get\" \"x\"]) (Local_c [a b]) 7))";
+        BinaryTree.SexprReader reader = new BinaryTree.SexprReader(true);
+        reader.append(text.substring(0, 3)).append(text.substring(3, 17));
+        for (int i = 17; i < text.length(); i++)
+            reader.append(text.charAt(i));
+        assertArrayEquals(BinaryTree.fromSexpr(text, true).toBytes(), reader.finish().toBytes());
+    }
+
+    @Test(expected = BinaryTree.InvalidTreeException.class)
+    public void testFromSexprRejectsExtraClose() throws Exception {
+        BinaryTree.fromSexpr("(a (b)))", false);
+    }
+
+    @Test(expected = BinaryTree.InvalidTreeException.class)
+    public void testRejectsTruncated() throws Exception {
+        BinaryTree.Builder builder = new BinaryTree.Builder();
+        builder.startNode("a").addSubtoken("x").endNode();
+        byte[] bytes = builder.toBytes();
+        BinaryTree.wrap(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+    }
+}
@@ -0,0 +1,91 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CooccurrenceMatrixTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // coocc.py's loop, with doc_to_pairs, written out with a map
+    private static Map<Long, Long> reference(List<String> docs, Map<String, Integer> vocab, int window) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (String doc : docs) {
+            for (String line : doc.split("\n")) {
+                String trimmed = line.trim();
+                String[] words = trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+                for (int pos = 0; pos < words.length; pos++) {
+                    Integer y = vocab.get(words[pos]);
+                    if (y == null)
+                        continue;
+                    for (int i = Math.max(0, pos - window); i < Math.min(words.length, pos + window + 1); i++) {
+                        Integer x = vocab.get(words[i]);
+                        if (i != pos && x != null)
+                            counts.merge(PairCounter.key(Math.min(x, y), Math.max(x, y)), 1L, Long::sum);
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    @Test
+    public void testSpilledMergeMatchesReference() throws Exception {
+        Random random = new Random(7);
+        String[] words = new String[40];
+        Map<String, Integer> vocab = new HashMap<>();
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "w" + i;
+            if (i < 30)
+                vocab.put(words[i], i);
+        }
+        List<String> docs = new ArrayList<>();
+        for (int d = 0; d < 50; d++) {
+            StringBuilder doc = new StringBuilder();
+            for (int t = 0; t < 200; t++)
+                doc.append(words[random.nextInt(words.length)]).append(random.nextInt(20) == 0 ? "\n" : "  ");
+            docs.add(doc.toString());
+        }
+
+        // A tiny table forces hundreds of runs, so merging takes several passes
+        Path spill = folder.newFolder().toPath();
+        PairCounter counter = new PairCounter(0, spill);
+        for (String doc : docs)
+            CooccurrenceMatrix.countDocument(doc, w -> vocab.getOrDefault(w, Vocab.UNKNOWN_INDEX), 3, counter);
+        counter.spill();
+        assertTrue(counter.runs().size() > 128);
+
+        Path out = folder.getRoot().toPath().resolve("coocc.bin");
+        long entries = CooccurrenceMatrix.merge(counter.runs(), out, 30, 3, spill);
+
+        Map<Long, Long> expected = reference(docs, vocab, 3);
+        Map<Long, Long> actual = new HashMap<>();
+        long[] previous = { -1 };
+        CooccurrenceMatrix.read(out, (row, column, count) -> {
+            long key = PairCounter.key(row, column);
+            assertTrue(row <= column);
+            assertTrue(key > previous[0]);
+            previous[0] = key;
+            actual.put(key, count);
+        });
+        assertEquals(expected.size(), entries);
+        assertEquals(expected, actual);
+        try (Stream<Path> leftovers = Files.list(spill)) {
+            assertEquals(0, leftovers.count());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CorpusShardTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Path makeCorpus(Path root) throws Exception {
+        Files.createDirectories(root.resolve("a/b"));
+        for (int i = 0; i < 60; i++)
+            Files.write(root.resolve((i % 3 == 0 ? "" : i % 3 == 1 ? "a/" : "a/b/") + "F" + i + ".java"), new byte[0]);
+        return root;
+    }
+
+    private static List<String> keys(VFS vfs, Path root) throws Exception {
+        List<String> keys = new ArrayList<>();
+        vfs.forEachFile(".java", file -> keys.add(CorpusShard.key(file, root)));
+        return keys;
+    }
+
+    @Test
+    public void shardsCoverEveryFileOnceWhereverTheCorpusIs() throws Exception {
+        Path here = makeCorpus(this.folder.newFolder("here", "corpus").toPath());
+        Path there = makeCorpus(this.folder.newFolder("elsewhere", "copy").toPath());
+        List<String> all = keys(new FilesystemVFS(here), here);
+        assertTrue(all.contains("a/b/F2.java"));
+
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            CorpusShard shard = CorpusShard.parse(i + "/4");
+            List<String> mine = keys(shard.select(new FilesystemVFS(here), here), here);
+            assertEquals(mine, keys(shard.select(new FilesystemVFS(there), there), there));
+            for (String key : mine)
+                assertTrue(key, seen.add(key));
+        }
+        assertEquals(new HashSet<>(all), seen);
+    }
+
+    @Test
+    public void parsesOnlyValidShards() {
+        assertEquals(new CorpusShard(2, 8), CorpusShard.parse("2/8"));
+        assertTrue(CorpusShard.parse("0/1").isAll());
+        for (String bad : new String[] {"8/8", "-1/4", "1", "a/b", "1/0"}) {
+            try {
+                CorpusShard.parse(bad);
+                fail("parsed " + bad);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void partialVocabsMergeToTheWholeVocab() throws Exception {
+        Random rng = new Random(25);
+        StringIntCounter whole = new StringIntCounter();
+        StringIntCounter[] parts = new StringIntCounter[3];
+        for (int i = 0; i < parts.length; i++)
+            parts[i] = new StringIntCounter();
+        for (int i = 0; i < 20000; i++) {
+            String word = "w" + (int) Math.abs(rng.nextGaussian() * 300);
+            whole.increment(word);
+            parts[rng.nextInt(parts.length)].increment(word);
+        }
+
+        StringIntCounter merged = new StringIntCounter();
+        for (int i = parts.length - 1; i >= 0; i--) {
+            Path path = this.folder.getRoot().toPath().resolve("part" + i + ".tsv");
+            PartialVocab.write(path, new CorpusShard(i, parts.length), parts[i]);
+            assertEquals(new CorpusShard(i, parts.length), PartialVocab.addTo(path, merged));
+            // Still a readable vocab
+            assertEquals(parts[i].size(), Vocab.open(path).size());
+        }
+        StringIntCounter.Sorted expected = whole.sortedByCount(2);
+        StringIntCounter.Sorted actual = merged.sortedByCount(2);
+        assertArrayEquals(expected.words, actual.words);
+        assertArrayEquals(expected.counts, actual.counts);
+    }
+}
@@ -0,0 +1,97 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryWalkerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void makeTree() throws Exception {
+        this.root = this.folder.newFolder("corpus").toPath();
+        Random rng = new Random(23);
+        List<Path> directories = new ArrayList<>();
+        directories.add(this.root);
+        for (int i = 0; i < 300; i++) {
+            Path parent = directories.get(rng.nextInt(directories.size()));
+            if (rng.nextInt(4) == 0) {
+                directories.add(Files.createDirectory(parent.resolve("d" + i)));
+            } else {
+                String name = "F" + i + (rng.nextBoolean() ? ".java" : rng.nextBoolean() ? ".JAVA" : ".txt");
+                Files.write(parent.resolve(name), new byte[0]);
+            }
+        }
+        Files.createDirectory(this.root.resolve("dir.java"));
+        Path target = Files.write(this.folder.getRoot().toPath().resolve("Outside.java"), new byte[0]);
+        Files.createSymbolicLink(this.root.resolve("Link.java"), target);
+        Files.createSymbolicLink(this.root.resolve("linkeddir"), directories.get(1));
+    }
+
+    // What FilesystemVFS used to collect
+    private static List<Path> expected(Path root, String ext) throws Exception {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths
+                .filter(Files::isRegularFile)
+                .filter(path -> path.getFileName().toString().toLowerCase().endsWith(ext))
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static List<Path> walk(int threads, Path root, String ext) throws Exception {
+        List<Path> found = new ArrayList<>();
+        new DirectoryWalker(threads).walk(root, ext, found::add);
+        return found;
+    }
+
+    @Test
+    public void walksInFilesWalkOrderWithAnyThreadCount() throws Exception {
+        List<Path> expected = expected(this.root, ".java");
+        assertEquals(expected, walk(1, this.root, ".java"));
+        assertEquals(expected, walk(2, this.root, ".java"));
+        assertEquals(expected, walk(8, this.root, ".java"));
+    }
+
+    @Test
+    public void walksASingleFile() throws Exception {
+        Path file = this.root.resolve("Link.java");
+        assertEquals(expected(file, ".java"), walk(4, file, ".java"));
+        assertEquals(1, walk(4, file, ".java").size());
+    }
+
+    @Test
+    public void crawlStopsWhenTheConsumerFails() throws Exception {
+        FilesystemVFS vfs = new FilesystemVFS(this.root, 4);
+        List<String> seen = new ArrayList<>();
+        try {
+            vfs.forEachFile(".java", file -> {
+                seen.add(file.getPath());
+                if (seen.size() == 3)
+                    throw new IllegalStateException("enough");
+            });
+            fail("consumer failure was swallowed");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(3, seen.size());
+
+        List<String> all = new ArrayList<>();
+        vfs.forEachFile(".java", file -> all.add(file.getPath()));
+        assertEquals(expected(this.root, ".java").stream().map(Path::toString).collect(Collectors.toList()), all);
+    }
+}
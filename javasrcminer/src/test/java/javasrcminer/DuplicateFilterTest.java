@@ -0,0 +1,77 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DuplicateFilterTest {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // A plausible class with n random-ish methods
+    private static String source(Random rng, int methods) {
+        StringBuilder sb = new StringBuilder("package p;\n\npublic class C {\n");
+        for (int i = 0; i < methods; i++) {
+            sb.append("    int m").append(rng.nextInt(1000000)).append("(int x) {\n")
+                    .append("        return x * ").append(rng.nextInt(1000)).append(" + field").append(rng.nextInt(50)).append(";\n")
+                    .append("    }\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    @Test
+    public void exactCopiesAreSkipped() {
+        DuplicateFilter filter = new DuplicateFilter(1 << 20, 0);
+        assertTrue(filter.accept(bytes("class A {}")));
+        assertTrue(filter.accept(bytes("class B {}")));
+        assertFalse(filter.accept(bytes("class A {}")));
+        assertTrue(filter.accept(bytes("class A { }")));
+        assertTrue(filter.accept(new byte[0]));
+        assertFalse(filter.accept(new byte[0]));
+        assertEquals(2, filter.exactDuplicates());
+        assertEquals(0, filter.nearDuplicates());
+    }
+
+    @Test
+    public void nearCopiesAreSkippedOnlyWhenAsked() {
+        Random rng = new Random(7);
+        String original = source(rng, 40);
+        // Reformatted, plus one extra method
+        String edited = original.replace("    ", "\t").replace("{\n", " {\n\n").replace("}\n}", "}\n    void extra() {}\n}");
+
+        DuplicateFilter exact = new DuplicateFilter(1 << 20, 0);
+        assertTrue(exact.accept(bytes(original)));
+        assertTrue(exact.accept(bytes(edited)));
+
+        DuplicateFilter near = new DuplicateFilter(1 << 20, 0.8);
+        assertTrue(near.accept(bytes(original)));
+        assertFalse(near.accept(bytes(edited)));
+        assertTrue(near.accept(bytes(source(rng, 40))));
+        assertEquals(1, near.nearDuplicates());
+    }
+
+    @Test
+    public void unrelatedFilesAreKept() {
+        Random rng = new Random(11);
+        DuplicateFilter filter = new DuplicateFilter(1 << 20, 0.85);
+        for (int i = 0; i < 500; i++)
+            assertTrue(filter.accept(bytes(source(rng, 10))));
+    }
+
+    @Test
+    public void fullFilterKeepsEverything() {
+        // Room for only a few files: the rest must get through, not be dropped
+        DuplicateFilter filter = new DuplicateFilter(0, 0.85);
+        Random rng = new Random(3);
+        for (int i = 0; i < 200; i++)
+            assertTrue(filter.accept(bytes(source(rng, 5))));
+        assertTrue(filter.report(1_000_000_000L).contains("memory cap reached"));
+    }
+}
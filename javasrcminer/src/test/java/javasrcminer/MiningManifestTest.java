@@ -0,0 +1,95 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MiningManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String hashOf(String contents) throws Exception {
+        return MiningManifest.hash(new MemoryInputFile("", "A.java", contents.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void hashDependsOnlyOnContents() throws Exception {
+        assertEquals(hashOf("class A {}"), hashOf("class A {}"));
+        assertNotEquals(hashOf("class A {}"), hashOf("class B {}"));
+        assertEquals(64, hashOf("").length());
+    }
+
+    @Test
+    public void reopenedManifestRemembersMinedFiles() throws Exception {
+        final Path dir = folder.newFolder().toPath();
+        try (MiningManifest manifest = MiningManifest.open(dir, 1000)) {
+            Files.write(dir.resolve("00000000.txt"), new byte[] { 'a' });
+            manifest.record("/src/A.java", "aaaa", "00000000.txt");
+            manifest.record("/src/B.java", "bbbb", null);
+        }
+        assertTrue(MiningManifest.existsIn(dir));
+
+        try (MiningManifest manifest = MiningManifest.open(dir, 1000)) {
+            assertTrue(manifest.isUpToDate("/src/A.java", "aaaa"));
+            assertTrue(manifest.isUpToDate("/src/B.java", "bbbb"));
+            assertFalse(manifest.isUpToDate("/src/A.java", "cccc"));
+            assertFalse(manifest.isUpToDate("/src/C.java", "aaaa"));
+            assertEquals(1, manifest.firstOutputNumber());
+        }
+        assertTrue(Files.exists(dir.resolve("00000000.txt")));
+    }
+
+    @Test
+    public void unrecordedOutputsAndTornLinesAreDropped() throws Exception {
+        final Path dir = folder.newFolder().toPath();
+        try (MiningManifest manifest = MiningManifest.open(dir, 1000)) {
+            Files.write(dir.resolve("00000000.txt"), new byte[] { 'a' });
+            manifest.record("/src/A.java", "aaaa", "00000000.txt");
+        }
+        // As if a run died after writing an output and half its manifest line
+        Files.write(dir.resolve("00000001.txt"), new byte[] { 'b' });
+        Files.write(dir.resolve("metrics.json"), new byte[] { '{', '}' });
+        Files.write(dir.resolve(MiningManifest.FILE_NAME), "bbbb\t00000001.t".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        try (MiningManifest manifest = MiningManifest.open(dir, 1000)) {
+            assertFalse(Files.exists(dir.resolve("00000001.txt")));
+            assertTrue(Files.exists(dir.resolve("metrics.json")));
+            assertEquals(1, manifest.firstOutputNumber());
+            manifest.record("/src/B.java", "bbbb", null);
+        }
+        try (MiningManifest manifest = MiningManifest.open(dir, 1000)) {
+            assertTrue(manifest.isUpToDate("/src/A.java", "aaaa"));
+            assertTrue(manifest.isUpToDate("/src/B.java", "bbbb"));
+        }
+    }
+
+    @Test
+    public void supersededOutputIsDeletedAtCheckpoint() throws Exception {
+        final Path dir = folder.newFolder().toPath();
+        try (MiningManifest manifest = MiningManifest.open(dir, 1000)) {
+            Files.write(dir.resolve("00000000.txt"), new byte[] { 'a' });
+            manifest.record("/src/A.java", "aaaa", "00000000.txt");
+            Files.write(dir.resolve("00000001.txt"), new byte[] { 'b' });
+            manifest.record("/src/A.java", "bbbb", "00000001.txt");
+            assertTrue(Files.exists(dir.resolve("00000000.txt")));
+            manifest.checkpoint();
+            assertFalse(Files.exists(dir.resolve("00000000.txt")));
+        }
+        try (MiningManifest manifest = MiningManifest.open(dir, 1000)) {
+            assertTrue(manifest.isUpToDate("/src/A.java", "bbbb"));
+            assertEquals(2, manifest.firstOutputNumber());
+        }
+    }
+}
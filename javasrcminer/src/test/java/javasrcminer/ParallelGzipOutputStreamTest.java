@@ -0,0 +1,62 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+    @Test
+    public void blocksReadBackAsOneGzipStream() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(4).nextBytes(data);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new ParallelGzipOutputStream(compressed, 6, 4096, 3)) {
+            out.write(data, 0, 5000);
+            out.flush();
+            out.write(data, 5000, data.length - 5000);
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertArrayEquals(data, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void closeClosesTheStreamEvenIfTheLastBlocksFail() throws Exception {
+        final boolean[] closed = {false};
+        OutputStream failing = new FilterOutputStream(new ByteArrayOutputStream()) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                throw new IOException("close failed too");
+            }
+        };
+        OutputStream out = new ParallelGzipOutputStream(failing, 6, 4096, 2);
+        out.write(new byte[100]);
+        try {
+            out.close();
+            fail("close hid the write failure");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+            assertEquals(1, e.getSuppressed().length);
+        }
+        assertTrue(closed[0]);
+    }
+}
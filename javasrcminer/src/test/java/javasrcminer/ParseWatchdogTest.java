@@ -0,0 +1,51 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class ParseWatchdogTest {
+
+    @Test
+    public void readerWorksUntilDeadlineExpires() throws Exception {
+        ParseWatchdog watchdog = new ParseWatchdog();
+        char[] buffer = new char[1 << 16];
+        try (ParseWatchdog.Deadline deadline = watchdog.start(50)) {
+            Reader reader = deadline.wrap(new StringReader(new String(new char[100000])));
+            int read = reader.read(buffer, 0, buffer.length);
+            assertTrue(read > 0 && read < buffer.length);
+
+            while (!deadline.expired())
+                Thread.sleep(5);
+            try {
+                reader.read(buffer, 0, buffer.length);
+                fail("read after the deadline");
+            } catch (InterruptedIOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void closedDeadlineNeverExpires() throws Exception {
+        ParseWatchdog watchdog = new ParseWatchdog();
+        ParseWatchdog.Deadline deadline = watchdog.start(20);
+        deadline.close();
+        Thread.sleep(100);
+        assertFalse(deadline.expired());
+    }
+
+    @Test(expected = ParseWatchdog.Expired.class)
+    public void checkFailsOnceDeadlineExpires() throws Exception {
+        try (ParseWatchdog.Deadline deadline = new ParseWatchdog().start(1)) {
+            while (!deadline.expired())
+                Thread.sleep(1);
+            deadline.check();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PipelineMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void bucketsCoverEveryValueInOrder() {
+        int previous = -1;
+        for (long v = 0; v < 100000; v++) {
+            int bucket = PipelineMetrics.Histogram.bucket(v);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            assertTrue(v <= PipelineMetrics.Histogram.upperBound(bucket));
+            if (bucket > 0)
+                assertTrue(v > PipelineMetrics.Histogram.upperBound(bucket - 1));
+            previous = bucket;
+        }
+        assertTrue(PipelineMetrics.Histogram.bucket(Long.MAX_VALUE) < 256);
+    }
+
+    @Test
+    public void percentilesAreWithinABucket() {
+        PipelineMetrics.Histogram h = new PipelineMetrics.Histogram();
+        for (long v = 1; v <= 1000; v++)
+            h.record(v * 1000);
+        assertEquals(1000, h.count.sum());
+        assertEquals(1000000, h.max.get());
+        long p50 = h.percentile(0.5);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 5 / 4);
+        long p99 = h.percentile(0.99);
+        assertTrue(p99 >= 990000 && p99 <= 1000000);
+        assertEquals(0, new PipelineMetrics.Histogram().percentile(0.5));
+    }
+
+    @Test
+    public void summaryCountsFailuresByCause() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics("test");
+        metrics.processed(100);
+        metrics.processed(50);
+        metrics.wrote(70);
+        metrics.record(PipelineMetrics.Stage.PARSE, 2000);
+        metrics.failed(new ParseHelper.ParseException("wrapped", new StackOverflowError()));
+        metrics.failed(new ParseHelper.BudgetExceededException("too slow"));
+        metrics.failed(new IOException("disk"));
+        metrics.failed(new IOException("disk again"));
+
+        Path json = folder.getRoot().toPath().resolve("metrics.json");
+        metrics.writeJson(json);
+        String text = new String(Files.readAllBytes(json), StandardCharsets.UTF_8);
+        assertTrue(text, text.contains("\"processed\": 2"));
+        assertTrue(text.contains("\"read\": 150"));
+        assertTrue(text.contains("\"written\": 70"));
+        assertTrue(text.contains("\"java.lang.StackOverflowError\": 1"));
+        assertTrue(text.contains("\"javasrcminer.ParseHelper$BudgetExceededException\": 1"));
+        assertTrue(text.contains("\"java.io.IOException\": 2"));
+        assertTrue(text.contains("\"failed\": 4"));
+        assertTrue(text.trim().startsWith("{") && text.trim().endsWith("}"));
+        assertTrue(metrics.toString().contains("parse"));
+        metrics.close();
+    }
+
+    @Test
+    public void timedReaderPassesCharactersThrough() throws Exception {
+        PipelineMetrics.TimedReader reader = new PipelineMetrics.TimedReader(new StringReader("hello world"));
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[4];
+        int read;
+        while ((read = reader.read(buffer, 0, buffer.length)) != -1)
+            sb.append(buffer, 0, read);
+        assertEquals("hello world", sb.toString());
+        assertTrue(reader.nanos() > 0);
+    }
+}
@@ -0,0 +1,115 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QuarantineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void quarantineIsRememberedAcrossRuns() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("quarantine.tsv");
+        try (Quarantine quarantine = Quarantine.open(path)) {
+            assertFalse(quarantine.contains("/src/Big.java"));
+            quarantine.add("/src/Big.java", "file is 9000000 bytes;\tthe limit is 8388608");
+            quarantine.add("/src/Big.java", "again");
+            assertTrue(quarantine.contains("/src/Big.java"));
+        }
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith("\t/src/Big.java"));
+
+        try (Quarantine quarantine = Quarantine.open(path)) {
+            assertTrue(quarantine.contains("/src/Big.java"));
+            quarantine.add("/src/Deep.java", "stack overflow during parse");
+        }
+        try (Quarantine quarantine = Quarantine.open(path)) {
+            assertEquals(2, quarantine.size());
+        }
+    }
+
+    @Test
+    public void overBudgetFilesAreQuarantinedUntilLimitsClose() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("quarantine.tsv");
+        File big = folder.newFile("Big.java");
+        Files.write(big.toPath(), new byte[2048]);
+        ParseHelper parseHelper = ParseHelper.getInstance();
+
+        ParseHelper.Limits limits = parseHelper.setLimits(1024, 0, Quarantine.open(path));
+        try {
+            for (String expected : new String[] {"the limit is 1024", "quarantined by an earlier run"}) {
+                try {
+                    parseHelper.parseAndVisit(big, lang -> null);
+                    fail("parsed a file over budget");
+                } catch (ParseHelper.BudgetExceededException e) {
+                    assertTrue(e.getMessage(), e.getMessage().contains(expected));
+                }
+            }
+            assertTrue(limits.toString().endsWith("quarantined 1 new files (1 in all)"));
+        } finally {
+            limits.close();
+        }
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith("\t" + big.getCanonicalPath()));
+
+        // Closing another run's limits doesn't lift the current ones
+        ParseHelper.Limits current = parseHelper.setLimits(1024, 0, null);
+        try {
+            limits.close();
+            parseHelper.parseAndVisit(big, lang -> null);
+            fail("limits were lifted by a stale handle");
+        } catch (ParseHelper.BudgetExceededException expected) {
+        } finally {
+            current.close();
+        }
+    }
+
+    @Test
+    public void oversizedTarballEntriesAreQuarantinedUnread() throws Exception {
+        Path tarball = folder.getRoot().toPath().resolve("corpus.tar.gz");
+        try (VFS out = new GzipTarballVFS(tarball)) {
+            out.writeFile("Big.java", new byte[2048]);
+        }
+        List<InputFile> files = new ArrayList<>();
+        try (VFS in = VFS.createVFSForReading(tarball, 1, 1024)) {
+            in.forEachFile(".java", files::add);
+        }
+        assertEquals(1, files.size());
+        InputFile big = files.get(0);
+        assertEquals(2048, big.size());
+        try {
+            big.openStream();
+            fail("read an entry over the limit");
+        } catch (IOException expected) {
+        }
+
+        Path path = folder.getRoot().toPath().resolve("quarantine.tsv");
+        ParseHelper parseHelper = ParseHelper.getInstance();
+        try (ParseHelper.Limits limits = parseHelper.setLimits(1024, 0, Quarantine.open(path))) {
+            parseHelper.parseAndVisit(big, lang -> null);
+            fail("parsed an entry over budget");
+        } catch (ParseHelper.BudgetExceededException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("the limit is 1024"));
+        }
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith("\t" + big.getCanonicalPath()));
+    }
+}
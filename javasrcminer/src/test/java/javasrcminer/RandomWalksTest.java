@@ -0,0 +1,56 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class RandomWalksTest {
+
+    private static BinaryTree tree(String sexpr) throws Exception {
+        return BinaryTree.wrap(ByteBuffer.wrap(BinaryTree.fromSexpr(sexpr, false).toBytes()));
+    }
+
+    private static String[] walk(RandomWalks walks, BinaryTree tree, long seed) {
+        Utf8Buffer out = new Utf8Buffer();
+        walks.walk(tree, new SplittableRandom(seed), out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+    }
+
+    @Test
+    public void testChainWalksVisitEveryNode() throws Exception {
+        BinaryTree chain = tree("(a (b (c)))");
+        for (String line : walk(new RandomWalks(50, 0), chain, 1))
+            assertTrue(line, line.equals("a b c") || line.equals("c b a"));
+    }
+
+    @Test
+    public void testSizeBoundsWalks() throws Exception {
+        BinaryTree chain = tree("(a (b (c (d (e)))))");
+        for (String line : walk(new RandomWalks(50, 3), chain, 2))
+            assertTrue(line, line.split(" ").length <= 3);
+        for (String line : walk(new RandomWalks(50, 1), chain, 3))
+            assertEquals(line, 1, line.split(" ").length);
+    }
+
+    @Test
+    public void testOnlyNodesWithSubtokensAreCentroids() throws Exception {
+        BinaryTree tree = tree("(() (x) ())");
+        for (String line : walk(new RandomWalks(20, 1), tree, 4))
+            assertEquals("x", line);
+    }
+
+    @Test
+    public void testWalksPerRootAndReproducible() throws Exception {
+        BinaryTree forest = tree("(a (b) (c d)) (e (f (g)))");
+        RandomWalks walks = new RandomWalks(7, 0);
+        String[] first = walk(walks, forest, 42);
+        assertEquals(14, first.length);
+        String[] again = walk(new RandomWalks(7, 0), forest, 42);
+        assertEquals(String.join("\n", first), String.join("\n", again));
+    }
+}
@@ -0,0 +1,72 @@
+package javasrcminer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The original regex-based Subtokenizer and OldSubtokenizer, kept as the
+ * reference for SubtokenScannerFuzzTest.
+ */
+final class RegexSubtokenizers {
+    private static Pattern leadingPattern = Pattern.compile("^(_+|[a-z]+)");
+    private static Pattern oldBodyTokenPattern = Pattern.compile("" +
+            "(_*)" +                  // Cross (later discard) leading underscores
+            "(?<subt>[A-Z]+(?=[^a-z]|$)" +
+            "|\\d+" +                 // Match any series of digits
+            "|[A-Z]{2,}(?=[A-Z][a-z])" +
+            "|[A-Z]?[a-z]+" +
+            "|[A-Z]+$)");
+    private static Pattern bodyTokenPattern = Pattern.compile("" +
+            "(_*)" +                                        // Cross (and discard) underscores
+            "(?<subt>[A-Z]+(?=[^a-z]|$)" +
+            "|\\.+|-+|:+|\\*+|\\&+|\\^+|[\"']+|[\\/]+|~+" + // Runs of some special characters
+            "|[<>]+|[\\[\\]]+|[\\(\\)]+" +                  // Runs of same-parens
+            "|\\d+" +                                       // Match any series of digits
+            "|[A-Z]{2,}(?=[A-Z][a-z])" +
+            "|[A-Z]?[a-z]+" +
+            "|[A-Z]+$)");
+
+    static final class Result {
+        final List<String> subtokens;
+        final boolean consumedAll;
+
+        Result(List<String> subtokens, boolean consumedAll) {
+            this.subtokens = subtokens;
+            this.consumedAll = consumedAll;
+        }
+    }
+
+    static Result subtokenize(String token, boolean specialRuns) {
+        if (token.length() == 0) {
+            throw new IllegalArgumentException("given zero-length token");
+        }
+        if (token.split("\\s").length != 1) {
+            throw new IllegalArgumentException("given token had whitespace");
+        }
+
+        ArrayList<String> subtokens = new ArrayList<String>();
+
+        Matcher leadingMatcher = leadingPattern.matcher(token);
+        boolean consumedAll = false;
+        int bodyStart = 0;
+        if (leadingMatcher.lookingAt()) {
+            bodyStart = leadingMatcher.end();
+            subtokens.add(leadingMatcher.group().toLowerCase());
+        }
+        if (bodyStart == token.length())
+            consumedAll = true;
+
+        Matcher bodyMatcher = (specialRuns ? bodyTokenPattern : oldBodyTokenPattern).matcher(token);
+        bodyMatcher.region(bodyStart, bodyMatcher.regionEnd());
+        while (bodyMatcher.lookingAt()) {
+            if (bodyMatcher.end() == token.length())
+                consumedAll = true;
+            subtokens.add(bodyMatcher.group("subt").toLowerCase());
+            bodyMatcher.region(bodyMatcher.end(), bodyMatcher.regionEnd());
+        }
+
+        return new Result(subtokens, consumedAll);
+    }
+}
@@ -0,0 +1,58 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import polyglot.ast.Node;
+
+public class SexprTreeVisitorTest {
+
+    private final ParseHelper.ParserContext context = new ParseHelper.ParserContext();
+    private final SubtokenCache subtokenCache = new SubtokenCache(OldSubtokenizer::subtokenize, 1 << 20);
+
+    // The tree's bytes, or why there's no tree, so malformed output must match too
+    private static String describe(BinaryTree.SexprReader reader) {
+        try {
+            return Arrays.toString(reader.finish().toBytes());
+        } catch (BinaryTree.InvalidTreeException e) {
+            return e.toString();
+        }
+    }
+
+    @Test
+    public void binaryOutputIsTree2binOfTextOutput() throws Exception {
+        for (String fixture : new String[] {"Small", "Medium"}) {
+            final Node root = TestAsts.parse(this.context, fixture, TestAsts.fixture(fixture));
+            for (boolean includeSyntax : new boolean[] {false, true}) {
+                final String text = TestAsts.sexpr(this.context, root, includeSyntax, false);
+                final BinaryTree.SexprReader binary = new BinaryTree.SexprReader(includeSyntax);
+                this.context.walker.visit(root, new SexprTreeVisitor(this.context.lang, binary, includeSyntax, this.subtokenCache));
+
+                assertEquals(fixture + ", includeSyntax=" + includeSyntax,
+                        describe(new BinaryTree.SexprReader(includeSyntax).append(text)), describe(binary));
+            }
+        }
+    }
+
+    @Test
+    public void identifiersAreSubtokensOfTheirParentWithoutSyntax() throws Exception {
+        final Node root = TestAsts.parse(this.context, "Point", "class Point { int xPos; }");
+        final BinaryTree.SexprReader binary = new BinaryTree.SexprReader(false);
+        this.context.walker.visit(root, new SexprTreeVisitor(this.context.lang, binary, false, this.subtokenCache));
+        final BinaryTree tree = BinaryTree.wrap(ByteBuffer.wrap(binary.finish().toBytes()));
+
+        assertEquals(1, tree.kindTableSize());
+        int found = 0;
+        for (int node = 0; node < tree.nodeCount(); node++) {
+            for (int j = 0; j + 1 < tree.subtokenCount(node); j++) {
+                if (tree.subtoken(node, j).equals("x") && tree.subtoken(node, j + 1).equals("pos"))
+                    found++;
+            }
+        }
+        assertEquals(1, found);
+    }
+}
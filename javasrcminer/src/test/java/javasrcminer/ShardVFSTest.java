@@ -0,0 +1,130 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardVFSTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] contents(int i) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < i % 17; j++)
+            sb.append("(tok").append(i).append(' ');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void filesComeBackInOrderAcrossShards() throws Exception {
+        Path root = this.folder.getRoot().toPath().resolve("trees.shards");
+        try (VFS out = VFS.createVFSForPath(root)) {
+            assertTrue(out instanceof ShardVFS);
+        }
+
+        try (ShardVFS out = new ShardVFS(root, 1000)) {
+            assertTrue(out.prepareOutputDirectory());
+            for (int i = 0; i < 200; i++) {
+                String name = String.format("%08d.%s", i, i % 3 == 0 ? "tree" : "txt");
+                if (i % 2 == 0) {
+                    out.writeFile(name, contents(i));
+                } else {
+                    byte[] bytes = contents(i);
+                    try (OutputStream stream = out.openFile(name, bytes.length)) {
+                        for (byte b : bytes)
+                            stream.write(b);
+                    }
+                }
+            }
+        }
+        assertTrue(Files.exists(root.resolve("shard-00005.bin")));
+
+        ShardVFS in = new ShardVFS(root);
+        List<String> names = new ArrayList<>();
+        in.forEachFile(".txt", file -> {
+            int i = Integer.parseInt(file.getPath().substring(0, 8));
+            assertArrayEquals(contents(i), ((MemoryInputFile) file).getContents());
+            names.add(file.getPath());
+        });
+        assertEquals(133, names.size());
+        for (int k = 1; k < names.size(); k++)
+            assertTrue(names.get(k - 1).compareTo(names.get(k)) < 0);
+
+        for (int i : new int[] {0, 1, 99, 198, 199}) {
+            ByteBuffer record = in.read(String.format("%08d.%s", i, i % 3 == 0 ? "tree" : "txt"));
+            byte[] bytes = new byte[record.remaining()];
+            record.get(bytes);
+            assertArrayEquals(contents(i), bytes);
+        }
+        assertNull(in.read("missing.txt"));
+    }
+
+    @Test
+    public void recordsMustBeWrittenToLength() throws Exception {
+        Path root = this.folder.getRoot().toPath().resolve("out.shards");
+        try (ShardVFS out = new ShardVFS(root)) {
+            out.prepareOutputDirectory();
+            OutputStream stream = out.openFile("short.txt", 10);
+            stream.write(new byte[4]);
+            try {
+                stream.close();
+                fail("short record accepted");
+            } catch (IOException expected) {
+            }
+        }
+        try (ShardVFS out = new ShardVFS(this.folder.getRoot().toPath().resolve("long.shards"))) {
+            out.prepareOutputDirectory();
+            try (OutputStream over = out.openFile("long.txt", 2)) {
+                over.write(new byte[3]);
+                fail("long record accepted");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void nothingIsWrittenAfterATornRecord() throws Exception {
+        Path root = this.folder.getRoot().toPath().resolve("out.shards");
+        try (ShardVFS out = new ShardVFS(root)) {
+            out.prepareOutputDirectory();
+            out.writeFile("whole.txt", contents(5));
+            try (OutputStream stream = out.openFile("torn.txt", 10)) {
+                stream.write(new byte[4]);
+            } catch (IOException expected) {
+            }
+            try {
+                out.writeFile("after.txt", contents(6));
+                fail("wrote a record after a torn one");
+            } catch (IllegalStateException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains("torn.txt"));
+            }
+        }
+
+        ShardVFS in = new ShardVFS(root);
+        assertArrayEquals(contents(5), toArray(in.read("whole.txt")));
+        assertNull(in.read("torn.txt"));
+        assertNull(in.read("after.txt"));
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
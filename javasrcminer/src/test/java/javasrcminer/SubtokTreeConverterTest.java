@@ -0,0 +1,94 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SubtokTreeConverterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // What toktree2subtoktree used to do, with the original subtokenizer (which never asserts)
+    private static byte[] reference(byte[] input) {
+        Pattern pattern = Pattern.compile("([\\(\\)\\]\\s]*)([^\\(\\)\\[\\]\\s]*)", Pattern.CASE_INSENSITIVE);
+        StringBuilder writer = new StringBuilder();
+        Matcher m = pattern.matcher(new String(input, StandardCharsets.UTF_8));
+        while (m.find()) {
+            writer.append(m.group(1));
+            if (m.group(2).length() > 0)
+                writer.append("[" + String.join(" ", RegexSubtokenizers.subtokenize(m.group(2), false).subtokens) + "]");
+        }
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] convert(byte[] input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SubtokTreeConverter().convert(ByteBuffer.wrap(input), out);
+        return out.toByteArray();
+    }
+
+    private static void assertConvertsLikeRegex(String input) throws Exception {
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        assertEquals(new String(reference(bytes), StandardCharsets.UTF_8), new String(convert(bytes), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void bracketsEveryTokensSubtokens() throws Exception {
+        assertEquals("([call] [get value] ([http server]))\n",
+                new String(convert("(Call getValue (HTTPServer))\n".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void matchesRegexOnTrickyInput() throws Exception {
+        assertConvertsLikeRegex("(Module (FunctionDef __init__ (arguments self)) [Name x_1])\n");
+        assertConvertsLikeRegex("  (a\t\u000Bb\fc\r\n)]] [[x] ");
+        assertConvertsLikeRegex("(Str \"héllo wörld\" café 名前 😀x snake_ça)");
+        assertConvertsLikeRegex("(Num 3.14 -1 +x a.b 0x1F)");
+        assertConvertsLikeRegex("");
+        assertConvertsLikeRegex("((((");
+    }
+
+    @Test
+    public void matchesRegexOnRandomInput() throws Exception {
+        Random rng = new Random(22);
+        String alphabet = "()[] \t\naZ_09.é😀";
+        for (int doc = 0; doc < 200; doc++) {
+            StringBuilder input = new StringBuilder();
+            for (int i = 0; i < 200; i++)
+                input.appendCodePoint(alphabet.codePointAt(alphabet.offsetByCodePoints(0, rng.nextInt(alphabet.codePointCount(0, alphabet.length())))));
+            assertConvertsLikeRegex(input.toString());
+        }
+        // Malformed UTF-8 decodes to replacement characters, which are never delimiters
+        byte[] bytes = new byte[5000];
+        rng.nextBytes(bytes);
+        assertArrayEquals(reference(bytes), convert(bytes));
+    }
+
+    @Test
+    public void convertsMappedFiles() throws Exception {
+        Random rng = new Random(5);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            input.append(rng.nextBoolean() ? "(Name " : "getX_").append(rng.nextInt(100)).append(rng.nextBoolean() ? ")\n" : " ");
+        byte[] bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+        Path in = folder.newFile("in.txt").toPath();
+        Files.write(in, bytes);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SubtokTreeConverter().convert(in, out);
+        assertArrayEquals(reference(bytes), out.toByteArray());
+    }
+}
@@ -0,0 +1,48 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class SubtokenCacheTest {
+    @Test
+    public void testHitsAndMisses() {
+        SubtokenCache cache = new SubtokenCache(OldSubtokenizer::subtokenize, 1 << 20);
+        assertEquals(Arrays.asList("to", "string"), cache.subtokenize("toString"));
+        assertEquals(Arrays.asList("to", "string"), cache.subtokenize("toString"));
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void testStaysUnderCap() {
+        final long cap = 256 << 10;
+        SubtokenCache cache = new SubtokenCache(OldSubtokenizer::subtokenize, cap);
+        for (int i = 0; i < 100000; i++)
+            cache.subtokenize("someIdentifier" + i);
+        assertTrue(cache.estimatedBytes() <= cap);
+        assertTrue(cache.evictions() > 0);
+    }
+
+    @Test
+    public void testFrequentIdentifiersSurviveFlood() {
+        SubtokenCache cache = new SubtokenCache(OldSubtokenizer::subtokenize, 256 << 10);
+        for (int i = 0; i < 100000; i++) {
+            cache.subtokenize("getValue");
+            cache.subtokenize("rareIdentifier" + i);
+        }
+        assertEquals(100000 + 1, cache.misses());
+    }
+
+    @Test
+    public void testDisabled() {
+        SubtokenCache cache = new SubtokenCache(OldSubtokenizer::subtokenize, 0);
+        cache.subtokenize("get");
+        cache.subtokenize("get");
+        assertEquals(0, cache.hits());
+        assertEquals(0, cache.estimatedBytes());
+    }
+}
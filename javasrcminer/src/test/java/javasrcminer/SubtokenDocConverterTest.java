@@ -0,0 +1,101 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SubtokenDocConverterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // What t2st used to do, line for line
+    private static String reference(String document) {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        try (Stream<String> lines = new BufferedReader(new StringReader(document)).lines()) {
+            lines
+                .map(line -> line.split("\\s+"))
+                .filter(toks -> toks.length > 0 && !toks[0].isEmpty())
+                .map(tokens -> {
+                    StringBuilder b = new StringBuilder(2056);
+                    int i = 0;
+                    for (String token : tokens) {
+                        for (String subtoken : OldSubtokenizer.subtokenize(token)) {
+                            if (i > 0)
+                                b.append(' ');
+                            b.append(subtoken);
+                            i++;
+                        }
+                    }
+                    return b.toString();
+                })
+                .forEachOrdered(writer::println);
+        }
+        writer.flush();
+        return out.toString();
+    }
+
+    private static String convert(String document) throws IOException {
+        StringWriter out = new StringWriter();
+        new SubtokenDocConverter().convert(new StringReader(document), out);
+        return out.toString();
+    }
+
+    @Test
+    public void matchesSplitOnTrickyLines() throws Exception {
+        String document = "FunctionDef getHTTPResponse self\n"
+                + "\n"
+                + "  leading spaces are dropped\n"
+                + "\tand leading tabs\n"
+                + "trailing whitespace \t \n"
+                + "tabs\tand\u000Bvertical\ftabs   between\r\n"
+                + "carriage\rreturns\r\n"
+                + "_private __dunder x1y2Z3 ABCDef snake_case_NAME\n"
+                + "last line without a newline";
+        assertEquals(reference(document), convert(document));
+    }
+
+    @Test
+    public void matchesSplitOnRandomLines() throws Exception {
+        Random rng = new Random(21);
+        // (Only characters the subtokenizer consumes whole, so it doesn't trip its assertion)
+        String alphabet = "aZb0 \t\u000B\fB\r\n";
+        StringBuilder document = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            document.append(alphabet.charAt(rng.nextInt(alphabet.length())));
+        assertEquals(reference(document.toString()), convert(document.toString()));
+    }
+
+    @Test
+    public void convertsFilesAndNeverOverwrites() throws Exception {
+        String document = "camelName snake_case\nfooBar\n";
+        Path in = folder.newFile("in.txt").toPath();
+        Files.write(in, document.getBytes(StandardCharsets.UTF_8));
+        Path out = folder.getRoot().toPath().resolve("out.txt");
+
+        SubtokenDocConverter converter = new SubtokenDocConverter();
+        converter.convert(in, out);
+        assertArrayEquals(reference(document).getBytes(StandardCharsets.UTF_8), Files.readAllBytes(out));
+        try {
+            converter.convert(in, out);
+            fail("overwrote an existing output");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SubtokenScannerFuzzTest {
+    private static final int ITERATIONS = 200000;
+
+    // Weighted towards identifier characters, with every class the scanner distinguishes
+    private static final String[] ALPHABET = {
+        "a", "b", "z", "q", "A", "B", "Z", "Q", "0", "7", "9", "_", "_",
+        ".", "-", ":", "*", "&", "^", "\"", "'", "/", "~", "<", ">", "[", "]", "(", ")",
+        "$", "#", "é", "É", "İ", "😄", " ", "\t", "\n", "\u000B",
+    };
+
+    @Test
+    public void testScannerMatchesRegexes() {
+        final Random random = new Random(0x5eed);
+        final SubtokenBuffer buffer = new SubtokenBuffer();
+        for (int i = 0; i < ITERATIONS; i++) {
+            final String token = randomToken(random);
+            checkMode(token, false, buffer);
+            checkMode(token, true, buffer);
+        }
+    }
+
+    @Test
+    public void testSubtokenizerMatchesRegex() {
+        final Random random = new Random(0xfeed);
+        for (int i = 0; i < ITERATIONS; i++) {
+            final String token = randomToken(random);
+            List<String> expected;
+            try {
+                RegexSubtokenizers.Result result = RegexSubtokenizers.subtokenize(token, true);
+                expected = result.consumedAll ? result.subtokens : Collections.singletonList(token);
+            } catch (IllegalArgumentException e) {
+                expectThrows(token, () -> Subtokenizer.subtokenize(token));
+                continue;
+            }
+            assertEquals("subtokens of \"" + token + "\"", expected, Subtokenizer.subtokenize(token));
+        }
+    }
+
+    private static void checkMode(String token, boolean specialRuns, SubtokenBuffer buffer) {
+        final RegexSubtokenizers.Result expected;
+        try {
+            expected = RegexSubtokenizers.subtokenize(token, specialRuns);
+        } catch (IllegalArgumentException e) {
+            expectThrows(token, () -> SubtokenScanner.scan(token, specialRuns, buffer));
+            return;
+        }
+        final boolean consumedAll = SubtokenScanner.scan(token, specialRuns, buffer);
+        final String desc = "\"" + token + "\" (specialRuns=" + specialRuns + ")";
+        assertEquals("subtokens of " + desc, expected.subtokens, buffer.toList());
+        assertEquals("consumedAll for " + desc, expected.consumedAll, consumedAll);
+    }
+
+    private static void expectThrows(String token, Runnable r) {
+        try {
+            r.run();
+            fail("expected IllegalArgumentException for \"" + token + "\"");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static String randomToken(Random random) {
+        final int length = random.nextInt(12);
+        final StringBuilder token = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            token.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        return token.toString();
+    }
+}
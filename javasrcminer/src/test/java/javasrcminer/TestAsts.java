@@ -0,0 +1,58 @@
+package javasrcminer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import polyglot.ast.Node;
+
+/**
+ * Parses sources into polyglot ASTs the way ParseHelper does, for tests
+ * that need real trees. The bench fixtures (Small and Medium) are on the
+ * test classpath as /fixtures/*.java.
+ */
+final class TestAsts {
+
+    private TestAsts() {
+    }
+
+    static String fixture(String name) throws IOException {
+        try (InputStream in = TestAsts.class.getResourceAsStream("/fixtures/" + name + ".java")) {
+            if (in == null)
+                throw new IOException("missing fixture " + name);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static Node parse(ParseHelper.ParserContext context, String name, String source) throws IOException {
+        final byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        final Node root;
+        try (InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)) {
+            root = context.extInfo.parser(reader, new MemoryFileObject("test", name + ".java", bytes),
+                    context.newErrorQueue()).parse();
+        }
+        if (root == null)
+            throw new IllegalStateException(name + " didn't parse");
+        return root;
+    }
+
+    /** The S-expression java2tree writes for root, walked by AstWalker or (recursively) by polyglot. */
+    static String sexpr(ParseHelper.ParserContext context, Node root, boolean includeSyntax, boolean recursive) {
+        final Utf8Buffer out = new Utf8Buffer();
+        final SexprTreeVisitor visitor = new SexprTreeVisitor(context.lang, out, includeSyntax,
+                new SubtokenCache(OldSubtokenizer::subtokenize, 1 << 20));
+        if (recursive)
+            root.visit(visitor);
+        else
+            context.walker.visit(root, visitor);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TokenIdStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void idsRoundTripThroughAFile() throws Exception {
+        Vocab vocab = new VocabFile(new StringReader("9\tget\n5\tvalue\n2\tto\n"));
+        String[] words = { "value", "get", "missing", "to", "get", "" };
+
+        TokenIdStream.Builder builder = new TokenIdStream.Builder();
+        for (String word : words)
+            builder.addVocabIndex(vocab.getWordIndex(word));
+        assertEquals(words.length, builder.size());
+
+        Path path = folder.getRoot().toPath().resolve("00000000.ids");
+        Files.write(path, builder.toBytes());
+        // int32, little-endian, vocab index + 1 and 0 for unknown words
+        assertArrayEquals(new byte[] {
+                2, 0, 0, 0,  1, 0, 0, 0,  0, 0, 0, 0,  3, 0, 0, 0,  1, 0, 0, 0,  0, 0, 0, 0
+        }, Files.readAllBytes(path));
+
+        IntBuffer ids = TokenIdStream.map(path);
+        assertEquals(words.length, ids.remaining());
+        for (int i = 0; i < words.length; i++) {
+            int index = TokenIdStream.toVocabIndex(ids.get(i));
+            assertEquals(words[i].equals("missing") || words[i].isEmpty() ? null : words[i],
+                    index == Vocab.UNKNOWN_INDEX ? null : vocab.getWord(index));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void partialIdsAreRejected() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("torn.ids");
+        Files.write(path, new byte[] { 1, 0, 0, 0, 2, 0 });
+        TokenIdStream.map(path);
+    }
+}
@@ -0,0 +1,55 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Utf8BufferTest {
+
+    @Test
+    public void testMatchesStringGetBytes() {
+        String[] cases = { "", "plain", "ä ö", "日本語", "😃 emoji", "lone \uD83D high", "lone \uDE03 low" };
+        Utf8Buffer buffer = new Utf8Buffer(16);
+        for (String s : cases) {
+            buffer.clear();
+            buffer.append(s);
+            assertArrayEquals(s, s.getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+        }
+    }
+
+    @Test
+    public void testRandomCharsMatchStringGetBytes() {
+        Random random = new Random(42);
+        Utf8Buffer buffer = new Utf8Buffer(16);
+        for (int i = 0; i < 10000; i++) {
+            char[] chars = new char[random.nextInt(40)];
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = (char) (random.nextBoolean() ? random.nextInt(0x80) : random.nextInt(0x10000));
+            String s = new String(chars);
+            buffer.clear();
+            if (random.nextBoolean()) {
+                buffer.append(s);
+            } else {
+                // Pairs split across append(char) calls can't be joined
+                for (int j = 0; j < chars.length; j++) {
+                    buffer.append(chars[j]);
+                    if (Character.isSurrogate(chars[j]))
+                        chars[j] = '?';
+                }
+                s = new String(chars);
+            }
+            assertArrayEquals(s, s.getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+        }
+    }
+
+    @Test
+    public void testAppendLong() {
+        Utf8Buffer buffer = new Utf8Buffer();
+        buffer.append('(').append(-42L).append(' ').append(Long.MAX_VALUE);
+        assertEquals("(-42 " + Long.MAX_VALUE, new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
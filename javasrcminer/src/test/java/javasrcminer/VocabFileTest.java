@@ -0,0 +1,45 @@
+package javasrcminer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class VocabFileTest {
+    private static final String TEXT = "9\tget\n5\tvalue\n5\tä\n2\tto\n";
+
+    @Test
+    public void testTextLookups() throws Exception {
+        VocabFile vocab = new VocabFile(new StringReader(TEXT));
+        assertEquals(4, vocab.size());
+        assertEquals(1, vocab.getWordIndex("value"));
+        assertEquals(Vocab.UNKNOWN_INDEX, vocab.getWordIndex("missing"));
+        assertEquals(9, vocab.getCount(0));
+    }
+
+    @Test
+    public void testBinaryMatchesText() throws Exception {
+        VocabFile text = new VocabFile(new StringReader(TEXT));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryVocabFile.write(text, out);
+        BinaryVocabFile binary = BinaryVocabFile.wrap(ByteBuffer.wrap(out.toByteArray()));
+
+        assertEquals(text.size(), binary.size());
+        for (int i = 0; i < text.size(); i++) {
+            assertEquals(text.getWord(i), binary.getWord(i));
+            assertEquals(text.getCount(i), binary.getCount(i));
+            assertEquals(i, binary.getWordIndex(text.getWord(i)));
+        }
+        assertEquals(Vocab.UNKNOWN_INDEX, binary.getWordIndex("missing"));
+        assertEquals(Vocab.UNKNOWN_INDEX, binary.getWordIndex(""));
+        assertEquals(Vocab.UNKNOWN_INDEX, binary.getWordIndex("zzz"));
+
+        StringWriter roundTrip = new StringWriter();
+        VocabFile.write(binary, roundTrip);
+        assertEquals(TEXT, roundTrip.toString());
+    }
+}
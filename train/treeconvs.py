@@ -6,6 +6,7 @@ import math
 import random
 import tarfile
 import argparse
+import struct
 import traceback
 from io import BytesIO
 from typing import Iterable, List, cast
@@ -78,6 +79,47 @@ def read_sfile(fo) -> Iterable[Node]:
     return _parse_paren(lines[0])
 
 
+def read_bfile(fo) -> Iterable[Node]:
+    """Reads a binary tree (java2tree --format binary) from a binary file object.
+
+    Each Node's subtoks holds its kind, if it has one, then its subtokens,
+    mirroring what read_sfile gives for --include-syntax text.
+    """
+    data = fo.read()
+    if data[:4] != b'CTRE':
+        raise ValueError("Not a binary tree file")
+    n, m, k, kind_bytes, s, subtok_bytes = struct.unpack_from('<6i', data, 4)
+    ints = struct.unpack_from('<%di' % (3 * n + 1 + m + k + 1 + s + 1), data, 28)
+    kinds, child_counts = ints[:n], ints[n:2 * n]
+    starts = ints[2 * n:3 * n + 1]
+    subtoks = ints[3 * n + 1:3 * n + 1 + m]
+    kind_offsets = ints[3 * n + 1 + m:3 * n + 1 + m + k + 1]
+    subtok_offsets = ints[3 * n + 1 + m + k + 1:]
+    blob_start = 28 + 4 * len(ints)
+
+    def table(offsets, base):
+        return [data[base + a:base + b].decode('utf-8')
+                for a, b in zip(offsets, offsets[1:])]
+    kind_table = table(kind_offsets, blob_start)
+    subtok_table = table(subtok_offsets, blob_start + kind_bytes)
+
+    # Preorder with child counts: keep a stack of (node, children still due)
+    stack: List[list] = []
+    for i in range(n):
+        node = Node(stack[-1][0] if stack else None)
+        if stack:
+            stack[-1][0].children.append(node)
+            stack[-1][1] -= 1
+        if kinds[i]:
+            node.subtoks.append(kind_table[kinds[i]])
+        node.subtoks.extend(subtok_table[j] for j in subtoks[starts[i]:starts[i + 1]])
+        stack.append([node, child_counts[i]])
+        while stack and stack[-1][1] == 0:
+            done = stack.pop()[0]
+            if not stack:
+                yield done
+
+
 def _parse_paren(expr) -> Iterable[Node]:
     stack: List[Node] = []
     pending_word = ''
@@ -186,9 +228,10 @@ def main():
                 ip = os.path.join(d, p)
                 op = os.path.join(args.out_path, p)
                 assert not os.path.exists(op)  # hacky; just prevent conflicts
-                with open(ip, 'r') as io:
+                binary = p.endswith('.tree')
+                with open(ip, 'rb' if binary else 'r') as io:
                     try:
-                        for root in read_sfile(io):
+                        for root in (read_bfile(io) if binary else read_sfile(io)):
                             nonempty = [n for n in root.nodes() if len(n.subtoks)]
                             if len(nonempty) == 0:
                                 continue